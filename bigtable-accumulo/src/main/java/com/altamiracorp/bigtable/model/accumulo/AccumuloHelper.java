@@ -1,18 +1,22 @@
 package com.altamiracorp.bigtable.model.accumulo;
 
+import com.altamiracorp.bigtable.model.CloseableIterable;
 import com.altamiracorp.bigtable.model.Column;
 import com.altamiracorp.bigtable.model.ColumnFamily;
+import com.altamiracorp.bigtable.model.CompactRow;
 import com.altamiracorp.bigtable.model.Row;
 import com.altamiracorp.bigtable.model.RowKey;
 import org.apache.accumulo.core.client.*;
 import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.user.RegExFilter;
-import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
 import org.apache.accumulo.core.util.PeekingIterator;
 
+import java.io.IOException;
 import java.util.*;
 
 public class AccumuloHelper {
@@ -50,11 +54,7 @@ public class AccumuloHelper {
     }
 
     private static void addColumnDeleteToMutation(Mutation mutation, Column column, String columnFamilyName) {
-        if (column.getVisibility() != null) {
-            mutation.putDelete(columnFamilyName, column.getName(), new ColumnVisibility(column.getVisibility()));
-        } else {
-            mutation.putDelete(columnFamilyName, column.getName());
-        }
+        mutation.putDelete(columnFamilyName, column.getName(), ColumnVisibilityCache.get(column.getVisibility()));
     }
 
     private static void addColumnToMutation(Mutation mutation, Column column, String columnFamilyName) {
@@ -64,14 +64,10 @@ public class AccumuloHelper {
             value = new Value(v.toBytes());
         }
 
-        if (column.getVisibility() != null) {
-            mutation.put(columnFamilyName, column.getName(), new ColumnVisibility(column.getVisibility()), value);
-        } else {
-            mutation.put(columnFamilyName, column.getName(), value);
-        }
+        mutation.put(columnFamilyName, column.getName(), ColumnVisibilityCache.get(column.getVisibility()), value);
     }
 
-    public static Iterable<Row> scannerToRows(final String tableName, final ScannerBase scanner) {
+    public static Iterable<Row> scannerToRows(final String tableName, final Iterable<Map.Entry<Key, Value>> scanner) {
         return new Iterable<Row>() {
             @Override
             public Iterator<Row> iterator() {
@@ -97,6 +93,108 @@ public class AccumuloHelper {
         };
     }
 
+    /**
+     * Converts the output of a batch scanner configured with a {@link WholeRowIterator} to rows. The
+     * batch scanner is closed once all of its rows have been read; callers that stop earlier must close
+     * the returned rows to release the scanner's query threads.
+     */
+    public static CloseableIterable<Row> batchScannerToRows(final String tableName, final BatchScanner scanner) {
+        return batchScannerToRows(tableName, scanner, 0);
+    }
+
+    /**
+     * Converts the output of a batch scanner configured with a {@link WholeRowIterator} to rows. The
+     * batch scanner is closed once all of its rows, or <code>limit</code> rows if limit is greater than 0,
+     * have been read, or when reading a row fails. Callers that stop earlier must close the returned rows
+     * to release the scanner's query threads. The rows can only be iterated once, because the scanner is
+     * closed after the first pass.
+     */
+    public static CloseableIterable<Row> batchScannerToRows(final String tableName, final BatchScanner scanner, final long limit) {
+        return new CloseableIterable<Row>() {
+            @Override
+            public Iterator<Row> iterator() {
+                final Iterator<Map.Entry<Key, Value>> it = scanner.iterator();
+                return new Iterator<Row>() {
+                    private long count = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        boolean hasNext = false;
+                        try {
+                            hasNext = (limit <= 0 || count < limit) && it.hasNext();
+                            return hasNext;
+                        } finally {
+                            if (!hasNext) {
+                                close();
+                            }
+                        }
+                    }
+
+                    @Override
+                    public Row next() {
+                        count++;
+                        Map.Entry<Key, Value> encodedRow = it.next();
+                        try {
+                            SortedMap<Key, Value> row = WholeRowIterator.decodeRow(encodedRow.getKey(), encodedRow.getValue());
+                            return accumuloRowToRow(tableName, row.entrySet().iterator());
+                        } catch (IOException e) {
+                            close();
+                            throw new RuntimeException("Could not decode row: " + encodedRow.getKey().getRow(), e);
+                        }
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("remove not supported");
+                    }
+                };
+            }
+
+            @Override
+            public void close() {
+                scanner.close();
+            }
+        };
+    }
+
+    /**
+     * Stops iterating the rows once <code>limit</code> rows have been returned so that no further
+     * batches are requested from the scanner. A limit of 0 or less returns every row.
+     */
+    public static Iterable<Row> limitRows(final Iterable<Row> rows, final long limit) {
+        if (limit <= 0) {
+            return rows;
+        }
+        return new Iterable<Row>() {
+            @Override
+            public Iterator<Row> iterator() {
+                final Iterator<Row> it = rows.iterator();
+                return new Iterator<Row>() {
+                    private long count = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return count < limit && it.hasNext();
+                    }
+
+                    @Override
+                    public Row next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        count++;
+                        return it.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        it.remove();
+                    }
+                };
+            }
+        };
+    }
+
     public static List<ColumnFamily> scannerToColumnFamiliesFilteredByRegex(Scanner scanner,
                                                                             long colFamOffset, long colFamLimit, String colFamRegex) {
         List<ColumnFamily> colFams = new ArrayList<ColumnFamily>();
@@ -137,26 +235,31 @@ public class AccumuloHelper {
         return colFam;
     }
 
+    /**
+     * Converts the cells of a row, in the order returned by a scanner, to a {@link CompactRow}. The cells
+     * are copied directly from the backing arrays of the keys and values.
+     *
+     * @return the row, or <code>null</code> if the row has no cells
+     */
     public static Row accumuloRowToRow(String tableName, Iterator<Map.Entry<Key, Value>> accumuloRow) {
-        Row<RowKey> row = null;
+        CompactRow.Builder row = null;
         while (accumuloRow.hasNext()) {
             Map.Entry<Key, Value> accumuloColumn = accumuloRow.next();
+            Key key = accumuloColumn.getKey();
             if (row == null) {
-                String rowKey = accumuloColumn.getKey().getRow().toString();
-                row = new Row<RowKey>(tableName, new RowKey(rowKey));
-            }
-            String columnFamilyString = accumuloColumn.getKey().getColumnFamily().toString();
-            ColumnFamily columnFamily = row.get(columnFamilyString);
-            if (columnFamily == null) {
-                row.addColumnFamily(new ColumnFamily(columnFamilyString));
-                columnFamily = row.get(columnFamilyString);
+                String rowKey = key.getRow().toString();
+                row = new CompactRow.Builder(tableName, new RowKey(rowKey));
             }
-
-            String columnNameString = accumuloColumn.getKey().getColumnQualifier().toString();
-            columnFamily.set(columnNameString, accumuloValueToObject(accumuloColumn.getValue()), accumuloColumn.getKey().getColumnVisibility().toString());
+            ByteSequence columnFamily = key.getColumnFamilyData();
+            ByteSequence columnQualifier = key.getColumnQualifierData();
+            ByteSequence columnVisibility = key.getColumnVisibilityData();
+            byte[] value = accumuloValueToObject(accumuloColumn.getValue());
+            row.add(columnFamily.getBackingArray(), columnFamily.offset(), columnFamily.length(),
+                    columnQualifier.getBackingArray(), columnQualifier.offset(), columnQualifier.length(),
+                    columnVisibility.getBackingArray(), columnVisibility.offset(), columnVisibility.length(),
+                    value, 0, value.length);
         }
-        row.setDirtyBits(false);
-        return row;
+        return row == null ? null : row.build();
     }
 
     private static byte[] accumuloValueToObject(Value value) {
@@ -3,16 +3,22 @@ package com.altamiracorp.bigtable.model.accumulo;
 import com.altamiracorp.bigtable.model.*;
 import com.altamiracorp.bigtable.model.exceptions.MutationsWriteException;
 import com.altamiracorp.bigtable.model.exceptions.TableDoesNotExistException;
+import com.altamiracorp.bigtable.model.metrics.SessionMetrics;
 import com.altamiracorp.bigtable.model.user.ModelUserContext;
+import com.altamiracorp.bigtable.model.user.ModelUserContextRegistry;
 import com.altamiracorp.bigtable.model.user.accumulo.AccumuloUserContext;
 import org.apache.accumulo.core.client.*;
 import org.apache.accumulo.core.client.Scanner;
 import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.FirstEntryInRowIterator;
 import org.apache.accumulo.core.iterators.user.RegExFilter;
 import org.apache.accumulo.core.iterators.user.RowDeletingIterator;
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.commons.lang.StringUtils;
@@ -21,7 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 public class AccumuloSession extends ModelSession {
     private static final Logger LOGGER = LoggerFactory.getLogger(AccumuloSession.class);
@@ -30,15 +36,41 @@ public class AccumuloSession extends ModelSession {
     private static final String ACCUMULO_USER = "bigtable.accumulo.username";
     private static final String ACCUMULO_PASSWORD = "bigtable.accumulo.password";
     private static final String ZK_SERVER_NAMES = "bigtable.accumulo.zookeeperServerNames";
+    private static final String BATCH_WRITER_PREFIX = "bigtable.accumulo.batchWriter.";
+    private static final String BATCH_WRITER_MAX_MEMORY = "maxMemory";
+    private static final String BATCH_WRITER_MAX_LATENCY = "maxLatency";
+    private static final String BATCH_WRITER_MAX_WRITE_THREADS = "maxWriteThreads";
+    private static final String ASYNC_FLUSH_INTERVAL = "bigtable.accumulo.asyncFlushIntervalMillis";
+    private static final long DEFAULT_ASYNC_FLUSH_INTERVAL_MILLIS = 10;
 
     private static final String ROW_DELETING_ITERATOR_NAME = RowDeletingIterator.class.getSimpleName();
     private static final int ROW_DELETING_ITERATOR_PRIORITY = 7;
+    private static final int WHOLE_ROW_ITERATOR_PRIORITY = 200;
+    private static final int ROW_COUNTING_ITERATOR_PRIORITY = 200;
+    private static final int FIRST_ENTRY_IN_ROW_ITERATOR_PRIORITY = 200;
+    private static final int DEFAULT_BATCH_SCANNER_THREADS = 10;
+    private static final int ROW_ESTIMATE_SAMPLE_ENTRIES = 1000;
+
+    private static final String METADATA_TABLE_NAME = "accumulo.metadata";
+    private static final Text METADATA_FILE_COLUMN_FAMILY = new Text("file");
+    private static final Text METADATA_TABLET_COLUMN_FAMILY = new Text("~tab");
+    private static final Text METADATA_PREV_ROW_COLUMN_QUALIFIER = new Text("~pr");
 
     private Connector connector;
-    private BatchWriterConfig batchWriterConfig = new BatchWriterConfig();
+    private volatile BatchWriterConfig batchWriterConfig = new BatchWriterConfig();
     private boolean autoflush = true;
-    private final Map<String, BatchWriter> batchWriters = new HashMap<String, BatchWriter>();
+    private final ConcurrentMap<String, BatchWriter> batchWriters = new ConcurrentHashMap<String, BatchWriter>();
+    private final ConcurrentMap<String, BatchWriterConfig> tableBatchWriterConfigs = new ConcurrentHashMap<String, BatchWriterConfig>();
+    private final Queue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<PendingWrite>();
+    private volatile ScheduledExecutorService asyncFlusher;
+    private long asyncFlushIntervalMillis = DEFAULT_ASYNC_FLUSH_INTERVAL_MILLIS;
     private final Set<String> rowDeletingIteratorAttachList = new HashSet<String>();
+    private final ModelUserContextRegistry<AccumuloUserContext> userContexts = new ModelUserContextRegistry<AccumuloUserContext>() {
+        @Override
+        protected AccumuloUserContext create(String[] authorizations) {
+            return new AccumuloUserContext(new Authorizations(authorizations));
+        }
+    };
 
     @Override
     public void init(Map<String, Object> properties) {
@@ -61,6 +93,13 @@ public class AccumuloSession extends ModelSession {
             if (autoflushObj != null) {
                 autoflush = Boolean.getBoolean(autoflushObj.toString());
             }
+
+            configureBatchWriters(properties);
+
+            Object asyncFlushIntervalObj = properties.get(ASYNC_FLUSH_INTERVAL);
+            if (asyncFlushIntervalObj != null) {
+                asyncFlushIntervalMillis = Long.parseLong(asyncFlushIntervalObj.toString());
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -78,6 +117,81 @@ public class AccumuloSession extends ModelSession {
         this.autoflush = autoflush;
     }
 
+    /**
+     * Reads the writer settings from properties of the form
+     * <code>bigtable.accumulo.batchWriter.&lt;setting&gt;</code> for the defaults and
+     * <code>bigtable.accumulo.batchWriter.&lt;tableName&gt;.&lt;setting&gt;</code> for a single table,
+     * where setting is maxMemory (bytes), maxLatency (milliseconds) or maxWriteThreads.
+     */
+    private void configureBatchWriters(Map<String, Object> properties) {
+        // table settings start from a copy of the defaults, so all the defaults have to be read first
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            String name = property.getKey();
+            if (name.startsWith(BATCH_WRITER_PREFIX) && name.lastIndexOf('.') < BATCH_WRITER_PREFIX.length()) {
+                setBatchWriterProperty(batchWriterConfig, name.substring(BATCH_WRITER_PREFIX.length()), property.getValue());
+            }
+        }
+
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            String name = property.getKey();
+            int settingIndex = name.lastIndexOf('.');
+            if (name.startsWith(BATCH_WRITER_PREFIX) && settingIndex >= BATCH_WRITER_PREFIX.length()) {
+                String tableName = name.substring(BATCH_WRITER_PREFIX.length(), settingIndex);
+                BatchWriterConfig tableConfig = tableBatchWriterConfigs.get(tableName);
+                if (tableConfig == null) {
+                    tableConfig = copyBatchWriterConfig(batchWriterConfig);
+                    tableBatchWriterConfigs.put(tableName, tableConfig);
+                }
+                setBatchWriterProperty(tableConfig, name.substring(settingIndex + 1), property.getValue());
+            }
+        }
+    }
+
+    private static void setBatchWriterProperty(BatchWriterConfig config, String setting, Object value) {
+        if (BATCH_WRITER_MAX_MEMORY.equals(setting)) {
+            config.setMaxMemory(Long.parseLong(value.toString()));
+        } else if (BATCH_WRITER_MAX_LATENCY.equals(setting)) {
+            config.setMaxLatency(Long.parseLong(value.toString()), TimeUnit.MILLISECONDS);
+        } else if (BATCH_WRITER_MAX_WRITE_THREADS.equals(setting)) {
+            config.setMaxWriteThreads(Integer.parseInt(value.toString()));
+        } else {
+            throw new IllegalStateException("Unknown batch writer setting: " + setting);
+        }
+    }
+
+    private static BatchWriterConfig copyBatchWriterConfig(BatchWriterConfig config) {
+        BatchWriterConfig copy = new BatchWriterConfig();
+        copy.setMaxMemory(config.getMaxMemory());
+        copy.setMaxLatency(config.getMaxLatency(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        copy.setMaxWriteThreads(config.getMaxWriteThreads());
+        return copy;
+    }
+
+    /**
+     * Sets the writer configuration used by tables that do not have their own configuration.
+     * Writers that have already been created keep their configuration.
+     *
+     * @param batchWriterConfig
+     */
+    public void setBatchWriterConfig(BatchWriterConfig batchWriterConfig) {
+        this.batchWriterConfig = batchWriterConfig;
+    }
+
+    /**
+     * Sets the writer configuration for a single table. Must be called before the first write to the table.
+     *
+     * @param tableName
+     * @param batchWriterConfig
+     */
+    public void setBatchWriterConfig(String tableName, BatchWriterConfig batchWriterConfig) {
+        tableBatchWriterConfigs.put(tableName, batchWriterConfig);
+    }
+
+    public BatchWriterConfig getBatchWriterConfig(String tableName) {
+        BatchWriterConfig tableConfig = tableBatchWriterConfigs.get(tableName);
+        return tableConfig == null ? batchWriterConfig : tableConfig;
+    }
+
     /**
      * @throws MutationsWriteException    Thrown if the Accumulo writer was unable to write mutations
      * @throws TableDoesNotExistException Thrown if an Accumulo writer cannot be setup for the row's table
@@ -88,21 +202,21 @@ public class AccumuloSession extends ModelSession {
         try {
             BatchWriter writer = getBatchWriter(row.getTableName());
             AccumuloHelper.addRowToWriter(writer, row);
-            flush(writer, flushFlag);
+            flush(row.getTableName(), writer, flushFlag);
         } catch (MutationsRejectedException e) {
             throw new MutationsWriteException("Error occured when writing mutation", e);
         }
     }
 
-    private void flush(BatchWriter writer, FlushFlag flushFlag) throws MutationsRejectedException {
+    private void flush(String tableName, BatchWriter writer, FlushFlag flushFlag) throws MutationsRejectedException {
         switch (flushFlag) {
             case DEFAULT:
                 if (autoflush) {
-                    writer.flush();
+                    flushWriter(tableName, writer);
                 }
                 break;
             case FLUSH:
-                writer.flush();
+                flushWriter(tableName, writer);
                 break;
             case NO_FLUSH:
                 break;
@@ -111,6 +225,38 @@ public class AccumuloSession extends ModelSession {
         }
     }
 
+    /**
+     * Flushes the writer, recording the time the flush took in the session metrics
+     */
+    private void flushWriter(String tableName, BatchWriter writer) throws MutationsRejectedException {
+        SessionMetrics metrics = getSessionMetrics();
+        if (metrics == null) {
+            writer.flush();
+            return;
+        }
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            writer.flush();
+            error = false;
+        } finally {
+            metrics.record(tableName, "batchWriterFlush", System.nanoTime() - start, 0, 0, error);
+        }
+    }
+
+    /**
+     * @return the entries of the scanner, counting the batches they are fetched in under "scanner" in the
+     * session metrics. Batch scanners are not counted: they fetch whole rows from several tablet servers at
+     * once and do not expose how many entries each fetch returned.
+     */
+    private Iterable<Map.Entry<Key, Value>> countBatches(String tableName, Scanner scanner) {
+        SessionMetrics metrics = getSessionMetrics();
+        if (metrics == null) {
+            return scanner;
+        }
+        return new BatchCountingIterable(scanner, scanner.getBatchSize(), metrics.getOperationStats(tableName, "scanner"));
+    }
+
     /**
      * @throws MutationsWriteException    Thrown if the Accumulo writer was unable to write mutations
      * @throws TableDoesNotExistException Thrown if an Accumulo writer cannot be setup for the row's table
@@ -127,61 +273,250 @@ public class AccumuloSession extends ModelSession {
                 AccumuloHelper.addRowToWriter(writer, row);
             }
             if (autoflush) {
-                writer.flush();
+                flushWriter(tableName, writer);
             }
         } catch (MutationsRejectedException e) {
             throw new MutationsWriteException("Error occured while writing batch of mutations", e);
         }
     }
 
+    /**
+     * Adds the row to the table's writer and returns without flushing. The returned future completes when
+     * the background flusher next flushes the writer, so concurrent callers share a single flush.
+     *
+     * @throws TableDoesNotExistException Thrown if an Accumulo writer cannot be setup for the row's table
+     */
+    @Override
+    public Future<Void> saveAsync(Row row) {
+        LOGGER.trace("saveAsync called with parameters: row=?", row);
+        WriteFuture future = new WriteFuture();
+        try {
+            BatchWriter writer = getBatchWriter(row.getTableName());
+            AccumuloHelper.addRowToWriter(writer, row);
+        } catch (MutationsRejectedException e) {
+            future.fail(new MutationsWriteException("Error occured when writing mutation", e));
+            return future;
+        }
+        addPendingWrite(row.getTableName(), future);
+        return future;
+    }
+
+    /**
+     * @throws TableDoesNotExistException Thrown if an Accumulo writer cannot be setup for the table
+     * @see #saveAsync(Row)
+     */
+    @Override
+    public Future<Void> saveManyAsync(String tableName, Collection<Row> rows) {
+        LOGGER.trace("saveManyAsync called with parameters: tableName=?, rows=?", tableName, rows);
+        WriteFuture future = new WriteFuture();
+        if (rows.size() == 0) {
+            future.complete();
+            return future;
+        }
+        try {
+            BatchWriter writer = getBatchWriter(tableName);
+            for (Row row : rows) {
+                AccumuloHelper.addRowToWriter(writer, row);
+            }
+        } catch (MutationsRejectedException e) {
+            future.fail(new MutationsWriteException("Error occured while writing batch of mutations", e));
+            return future;
+        }
+        addPendingWrite(tableName, future);
+        return future;
+    }
+
+    private void addPendingWrite(String tableName, WriteFuture future) {
+        // the mutations are already in the writer, so any flush after this point acknowledges them
+        pendingWrites.add(new PendingWrite(tableName, future));
+        if (asyncFlusher == null) {
+            startAsyncFlusher();
+        }
+    }
+
+    private synchronized void startAsyncFlusher() {
+        if (asyncFlusher != null) {
+            return;
+        }
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bigtable-async-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushPendingWrites();
+                } catch (Throwable e) {
+                    LOGGER.error("Could not flush pending writes", e);
+                }
+            }
+        }, asyncFlushIntervalMillis, asyncFlushIntervalMillis, TimeUnit.MILLISECONDS);
+        asyncFlusher = flusher;
+    }
+
+    /**
+     * Flushes every table with outstanding asynchronous writes once and completes their futures.
+     */
+    private void flushPendingWrites() {
+        Map<String, List<WriteFuture>> futuresByTable = new HashMap<String, List<WriteFuture>>();
+        PendingWrite pendingWrite;
+        while ((pendingWrite = pendingWrites.poll()) != null) {
+            List<WriteFuture> futures = futuresByTable.get(pendingWrite.tableName);
+            if (futures == null) {
+                futures = new ArrayList<WriteFuture>();
+                futuresByTable.put(pendingWrite.tableName, futures);
+            }
+            futures.add(pendingWrite.future);
+        }
+
+        for (Map.Entry<String, List<WriteFuture>> tableFutures : futuresByTable.entrySet()) {
+            RuntimeException failure = null;
+            try {
+                flushWriter(tableFutures.getKey(), batchWriters.get(tableFutures.getKey()));
+            } catch (MutationsRejectedException e) {
+                failure = new MutationsWriteException("Could not flush writer for table: " + tableFutures.getKey(), e);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            for (WriteFuture future : tableFutures.getValue()) {
+                if (failure == null) {
+                    future.complete();
+                } else {
+                    future.fail(failure);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param asyncFlushIntervalMillis time between the flushes of asynchronous writes. Only takes effect
+     *                                 before the first asynchronous write.
+     */
+    public void setAsyncFlushIntervalMillis(long asyncFlushIntervalMillis) {
+        this.asyncFlushIntervalMillis = asyncFlushIntervalMillis;
+    }
+
+    private static class PendingWrite {
+        private final String tableName;
+        private final WriteFuture future;
+
+        private PendingWrite(String tableName, WriteFuture future) {
+            this.tableName = tableName;
+            this.future = future;
+        }
+    }
+
     @Override
-    public Iterable<Row> findByRowKeyRange(String tableName, String rowKeyStart, String rowKeyEnd, ModelUserContext user) {
-        LOGGER.trace("findByRowKeyRange called with parameters: tableName=?, rowKeyStart=?, rowKeyEnd=?, user=?", tableName, rowKeyStart, rowKeyEnd, user);
+    public Iterable<Row> findByRowKeyRange(String tableName, String rowKeyStart, String rowKeyEnd, ScanOptions scanOptions, ModelUserContext user) {
+        LOGGER.trace("findByRowKeyRange called with parameters: tableName=?, rowKeyStart=?, rowKeyEnd=?, scanOptions=?, user=?", tableName, rowKeyStart, rowKeyEnd, scanOptions, user);
 
-        return scanTableRange(tableName, new Range(rowKeyStart, rowKeyEnd), user);
+        return scanTableRange(tableName, new Range(rowKeyStart, rowKeyEnd), scanOptions, user);
     }
 
     @Override
-    public Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, ModelUserContext user) {
+    public Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, ScanOptions scanOptions, ModelUserContext user) {
         LOGGER.trace(String.format("Scanning table (%s) key range with prefix: %s", tableName, rowKeyPrefix));
 
-        return scanTableRange(tableName, Range.prefix(rowKeyPrefix), user);
+        return scanTableRange(tableName, Range.prefix(rowKeyPrefix), scanOptions, user);
     }
 
-    private Iterable<Row> scanTableRange(final String tableName, final Range scannerRange, final ModelUserContext user) {
+    @Override
+    public CloseableIterable<Row> findByRowKeyRanges(String tableName, Collection<RowKeyRange> ranges, ScanOptions scanOptions, ModelUserContext user, int threads) {
+        LOGGER.trace("findByRowKeyRanges called with parameters: tableName=?, ranges=?, scanOptions=?, user=?, threads=?", tableName, ranges, scanOptions, user, threads);
+        if (ranges.size() == 0) {
+            return CloseableIterables.of(new ArrayList<Row>());
+        }
+
+        List<Range> accumuloRanges = new ArrayList<Range>(ranges.size());
+        for (RowKeyRange range : ranges) {
+            accumuloRanges.add(toRange(range));
+        }
+        try {
+            BatchScanner scanner = createWholeRowBatchScanner(tableName, user, threads);
+            scanner.setRanges(accumuloRanges);
+            fetchColumns(scanner, scanOptions.getColumnsToReturn());
+            if (scanOptions.getTimeoutMillis() > 0) {
+                scanner.setTimeout(scanOptions.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            }
+            return AccumuloHelper.batchScannerToRows(tableName, scanner, scanOptions.getLimit());
+        } catch (TableNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Range toRange(RowKeyRange range) {
+        if (range.isPrefix()) {
+            return Range.prefix(range.getPrefix());
+        }
+        Text start = range.getStart() == null ? null : new Text(range.getStart());
+        Text end = range.getEnd() == null ? null : new Text(range.getEnd());
+        return new Range(start, true, end, false);
+    }
+
+    private Iterable<Row> scanTableRange(final String tableName, final Range scannerRange, final ScanOptions scanOptions, final ModelUserContext user) {
         try {
             final Scanner scanner = createScanner(tableName, user);
             scanner.setRange(scannerRange);
+            applyScanOptions(scanner, scanOptions);
 
-            return AccumuloHelper.scannerToRows(tableName, scanner);
+            return AccumuloHelper.limitRows(AccumuloHelper.scannerToRows(tableName, countBatches(tableName, scanner)), scanOptions.getLimit());
         } catch (TableNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Configures the scanner so that small limits only ask the tablet servers for the entries that are needed.
+     * Without an explicit batch size the batch is sized to the limit, and read ahead is disabled so that no
+     * batches are fetched in the background that would be thrown away once the limit is reached.
+     */
+    private static void applyScanOptions(Scanner scanner, ScanOptions scanOptions) {
+        fetchColumns(scanner, scanOptions.getColumnsToReturn());
+        if (scanOptions.getBatchSize() > 0) {
+            scanner.setBatchSize(scanOptions.getBatchSize());
+        } else if (scanOptions.getLimit() > 0 && scanOptions.getLimit() < scanner.getBatchSize()) {
+            scanner.setBatchSize((int) scanOptions.getLimit());
+        }
+        if (scanOptions.getReadAheadThreshold() > 0) {
+            scanner.setReadaheadThreshold(scanOptions.getReadAheadThreshold());
+        } else if (scanOptions.getLimit() > 0) {
+            scanner.setReadaheadThreshold(Long.MAX_VALUE);
+        }
+        if (scanOptions.getTimeoutMillis() > 0) {
+            scanner.setTimeout(scanOptions.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
     @Override
-    public Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, ModelUserContext user) {
-        LOGGER.trace("findByRowKeyRegex called with parameters: tableName=?, rowKeyRegex=?, user=?", tableName, rowKeyRegex, user);
+    public Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, ScanOptions scanOptions, ModelUserContext user) {
+        LOGGER.trace("findByRowKeyRegex called with parameters: tableName=?, rowKeyRegex=?, scanOptions=?, user=?", tableName, rowKeyRegex, scanOptions, user);
         try {
             Scanner scanner = createScanner(tableName, user);
             scanner.setRange(new Range());
+            applyScanOptions(scanner, scanOptions);
 
             IteratorSetting iter = new IteratorSetting(15, "regExFilter", RegExFilter.class);
             RegExFilter.setRegexs(iter, rowKeyRegex, null, null, null, false);
             scanner.addScanIterator(iter);
 
-            return AccumuloHelper.scannerToRows(tableName, scanner);
+            return AccumuloHelper.limitRows(AccumuloHelper.scannerToRows(tableName, countBatches(tableName, scanner)), scanOptions.getLimit());
         } catch (TableNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public Iterable<Row> findAll(String tableName, ModelUserContext user) {
-        LOGGER.trace("findAll called with parameters: tableName=?, user=?", tableName, user);
+    public Iterable<Row> findAll(String tableName, ScanOptions scanOptions, ModelUserContext user) {
+        LOGGER.trace("findAll called with parameters: tableName=?, scanOptions=?, user=?", tableName, scanOptions, user);
         try {
             Scanner scanner = createScanner(tableName, user);
-            return AccumuloHelper.scannerToRows(tableName, scanner);
+            applyScanOptions(scanner, scanOptions);
+            return AccumuloHelper.limitRows(AccumuloHelper.scannerToRows(tableName, countBatches(tableName, scanner)), scanOptions.getLimit());
         } catch (TableNotFoundException e) {
             throw new RuntimeException(e);
         }
@@ -190,28 +525,179 @@ public class AccumuloSession extends ModelSession {
     @Override
     public long rowCount(String tableName, ModelUserContext user) {
         LOGGER.trace("rowCount called with parameters: tableName=?, user=?", tableName, user);
+        return rowCount(tableName, new Range(), user);
+    }
+
+    @Override
+    public long rowCount(String tableName, RowKeyRange range, ModelUserContext user) {
+        LOGGER.trace("rowCount called with parameters: tableName=?, range=?, user=?", tableName, range, user);
+        return rowCount(tableName, toRange(range), user);
+    }
+
+    /**
+     * Counts rows on the tablet servers. The batch scanner bins the range by tablet and the
+     * {@link RowCountingIterator} returns a single count for each tablet, so only the counts are sent to the client.
+     */
+    private long rowCount(String tableName, Range range, ModelUserContext user) {
         try {
-            // TODO this requires all rows to be returned to the client. It would be nice to have this run server side.
-            Scanner scanner = createScanner(tableName, user);
+            BatchScanner scanner = createBatchScanner(tableName, user, DEFAULT_BATCH_SCANNER_THREADS);
+            try {
+                scanner.setRanges(Collections.singletonList(range));
+                scanner.addScanIterator(new IteratorSetting(
+                        ROW_COUNTING_ITERATOR_PRIORITY,
+                        RowCountingIterator.class.getSimpleName(),
+                        RowCountingIterator.class
+                ));
+                long count = 0;
+                for (Map.Entry<Key, Value> tabletCount : scanner) {
+                    count += RowCountingIterator.decodeCount(tabletCount.getValue());
+                }
+                return count;
+            } finally {
+                scanner.close();
+            }
+        } catch (TableNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Estimates the size of a table from the data file sizes and entry counts the tablet servers record in the
+     * metadata table for each tablet. Tablets that only partially overlap the range are counted in full and data
+     * that has not been minor compacted yet is not included. Row counts are not recorded, so rows are estimated
+     * by dividing the entries by the average number of entries per row in a sample read from the start of the
+     * range, using the connector user's authorizations.
+     */
+    @Override
+    public TableStats estimateStats(String tableName, RowKeyRange range) {
+        LOGGER.trace("estimateStats called with parameters: tableName=?, range=?", tableName, range);
+        String tableId = connector.tableOperations().tableIdMap().get(tableName);
+        if (tableId == null) {
+            throw new TableDoesNotExistException("Could not find table: " + tableName, null);
+        }
+        Range rowRange = range == null ? new Range() : toRange(range);
+
+        try {
+            Scanner scanner = connector.createScanner(METADATA_TABLE_NAME, new Authorizations());
+            scanner.setRange(new Range(new Text(tableId + ";"), true, new Text(tableId + "<"), true));
+            scanner.fetchColumnFamily(METADATA_FILE_COLUMN_FAMILY);
+            scanner.fetchColumn(METADATA_TABLET_COLUMN_FAMILY, METADATA_PREV_ROW_COLUMN_QUALIFIER);
+
+            long entries = 0;
+            long bytes = 0;
+            int tablets = 0;
             RowIterator rowIterator = new RowIterator(scanner);
-            long count = 0;
             while (rowIterator.hasNext()) {
-                rowIterator.next();
-                count++;
+                Iterator<Map.Entry<Key, Value>> tablet = rowIterator.next();
+                Text endRow = null;
+                Text prevEndRow = null;
+                long tabletEntries = 0;
+                long tabletBytes = 0;
+                while (tablet.hasNext()) {
+                    Map.Entry<Key, Value> entry = tablet.next();
+                    Key key = entry.getKey();
+                    if (endRow == null) {
+                        endRow = decodeMetadataEndRow(key.getRow());
+                    }
+                    if (key.getColumnFamily().equals(METADATA_FILE_COLUMN_FAMILY)) {
+                        long[] sizeAndEntries = decodeMetadataDataFileValue(entry.getValue());
+                        tabletBytes += sizeAndEntries[0];
+                        tabletEntries += sizeAndEntries[1];
+                    } else {
+                        prevEndRow = decodeMetadataPrevEndRow(entry.getValue());
+                    }
+                }
+
+                if (rowRange.clip(new Range(prevEndRow, false, endRow, true), true) != null) {
+                    entries += tabletEntries;
+                    bytes += tabletBytes;
+                    tablets++;
+                }
             }
-            return count;
+            return new TableStats(estimateRows(tableName, rowRange, entries), entries, bytes, tablets, false);
         } catch (TableNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private long estimateRows(String tableName, Range rowRange, long entries) throws TableNotFoundException {
+        try {
+            Authorizations authorizations = connector.securityOperations().getUserAuthorizations(connector.whoami());
+            Scanner scanner = createScanner(tableName, new AccumuloUserContext(authorizations));
+            scanner.setRange(rowRange);
+            scanner.setBatchSize(ROW_ESTIMATE_SAMPLE_ENTRIES);
+
+            long sampleEntries = 0;
+            long sampleRows = 0;
+            ByteSequence lastRow = null;
+            Iterator<Map.Entry<Key, Value>> it = scanner.iterator();
+            while (sampleEntries < ROW_ESTIMATE_SAMPLE_ENTRIES && it.hasNext()) {
+                ByteSequence row = it.next().getKey().getRowData();
+                if (lastRow == null || !lastRow.equals(row)) {
+                    sampleRows++;
+                    lastRow = row;
+                }
+                sampleEntries++;
+            }
+            return estimateRows(entries, sampleEntries, sampleRows, !it.hasNext());
+        } catch (AccumuloSecurityException e) {
+            throw new RuntimeException(e);
+        } catch (AccumuloException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param sampleComplete true if the sample holds every entry of the range
+     */
+    static long estimateRows(long entries, long sampleEntries, long sampleRows, boolean sampleComplete) {
+        if (sampleComplete) {
+            return sampleRows;
+        }
+        if (sampleEntries == 0) {
+            return entries == 0 ? 0 : TableStats.UNKNOWN;
+        }
+        return Math.max(sampleRows, Math.round((double) entries * sampleRows / sampleEntries));
+    }
+
+    static Text decodeMetadataEndRow(Text metadataRow) {
+        String row = metadataRow.toString();
+        int separator = row.indexOf(';');
+        if (separator < 0) {
+            // the last tablet of a table is stored as "tableId<"
+            return null;
+        }
+        byte[] bytes = metadataRow.getBytes();
+        Text endRow = new Text();
+        endRow.set(bytes, separator + 1, metadataRow.getLength() - separator - 1);
+        return endRow;
+    }
+
+    /**
+     * @return the size and number of entries of a data file, from its metadata value "size,entries[,time]"
+     */
+    static long[] decodeMetadataDataFileValue(Value value) {
+        String[] sizeAndEntries = value.toString().split(",");
+        return new long[]{Long.parseLong(sizeAndEntries[0]), Long.parseLong(sizeAndEntries[1])};
+    }
+
+    static Text decodeMetadataPrevEndRow(Value value) {
+        byte[] bytes = value.get();
+        if (bytes.length == 0 || bytes[0] == 0) {
+            return null;
+        }
+        Text prevEndRow = new Text();
+        prevEndRow.set(bytes, 1, bytes.length - 1);
+        return prevEndRow;
+    }
+
     @Override
     public Row findByRowKey(String tableName, String rowKey, ModelUserContext user) {
         LOGGER.trace("findByRowKey called with parameters: tableName=?, rowKey=?, user=?", tableName, rowKey, user);
         try {
             Scanner scanner = createScanner(tableName, user);
             scanner.setRange(new Range(rowKey));
-            Iterator<Row> rows = AccumuloHelper.scannerToRows(tableName, scanner).iterator();
+            Iterator<Row> rows = AccumuloHelper.scannerToRows(tableName, countBatches(tableName, scanner)).iterator();
             if (!rows.hasNext()) {
                 return null;
             }
@@ -238,6 +724,32 @@ public class AccumuloSession extends ModelSession {
         return scanner;
     }
 
+    private BatchScanner createBatchScanner(String tableName, ModelUserContext user, int threads) throws TableNotFoundException {
+        ensureRowDeletingIteratorIsAttached(tableName);
+
+        BatchScanner scanner = connector.createBatchScanner(tableName, ((AccumuloUserContext) user).getAuthorizations(), threads);
+        scanner.addScanIterator(new IteratorSetting(
+                100,
+                RowDeletingIterator.class.getSimpleName(),
+                RowDeletingIterator.class
+        ));
+        return scanner;
+    }
+
+    /**
+     * Creates a batch scanner that returns each row as a single encoded entry, since a batch scanner
+     * may otherwise interleave the entries of rows coming from different tablets.
+     */
+    private BatchScanner createWholeRowBatchScanner(String tableName, ModelUserContext user, int threads) throws TableNotFoundException {
+        BatchScanner scanner = createBatchScanner(tableName, user, threads);
+        scanner.addScanIterator(new IteratorSetting(
+                WHOLE_ROW_ITERATOR_PRIORITY,
+                WholeRowIterator.class.getSimpleName(),
+                WholeRowIterator.class
+        ));
+        return scanner;
+    }
+
     private void ensureRowDeletingIteratorIsAttached(String tableName) {
         try {
             if (rowDeletingIteratorAttachList.contains(tableName)) {
@@ -260,14 +772,8 @@ public class AccumuloSession extends ModelSession {
         try {
             Scanner scanner = createScanner(tableName, user);
             scanner.setRange(new Range(rowKey));
-            for (Map.Entry<String, String> columnFamilyAndColumnQualifier : columnsToReturn.entrySet()) {
-                if (columnFamilyAndColumnQualifier.getValue().equals("*")) {
-                    scanner.fetchColumnFamily(new Text(columnFamilyAndColumnQualifier.getKey()));
-                } else {
-                    scanner.fetchColumn(new Text(columnFamilyAndColumnQualifier.getKey()), new Text(columnFamilyAndColumnQualifier.getValue()));
-                }
-            }
-            Iterator<Row> rows = AccumuloHelper.scannerToRows(tableName, scanner).iterator();
+            fetchColumns(scanner, columnsToReturn);
+            Iterator<Row> rows = AccumuloHelper.scannerToRows(tableName, countBatches(tableName, scanner)).iterator();
             if (!rows.hasNext()) {
                 return null;
             }
@@ -281,6 +787,52 @@ public class AccumuloSession extends ModelSession {
         }
     }
 
+    @Override
+    public Map<String, Row> findByRowKeys(String tableName, Collection<String> rowKeys, Map<String, String> columnsToReturn, ModelUserContext user) {
+        LOGGER.trace("findByRowKeys called with parameters: tableName=?, rowKeys=?, columnsToReturn=?, user=?", tableName, rowKeys, columnsToReturn, user);
+        Map<String, Row> results = new HashMap<String, Row>();
+        if (rowKeys.size() == 0) {
+            return results;
+        }
+
+        List<Range> ranges = new ArrayList<Range>(rowKeys.size());
+        for (String rowKey : rowKeys) {
+            ranges.add(new Range(rowKey));
+        }
+        try {
+            BatchScanner scanner = createWholeRowBatchScanner(tableName, user, DEFAULT_BATCH_SCANNER_THREADS);
+            scanner.setRanges(ranges);
+            fetchColumns(scanner, columnsToReturn);
+            CloseableIterable<Row> rows = AccumuloHelper.batchScannerToRows(tableName, scanner, 0);
+            try {
+                for (Row row : rows) {
+                    results.put(row.getRowKey().toString(), row);
+                }
+            } finally {
+                rows.close();
+            }
+            return results;
+        } catch (TableNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Restricts the scanner to the requested columns so that the other columns are filtered on the tablet servers
+     */
+    private static void fetchColumns(ScannerBase scanner, Map<String, String> columnsToReturn) {
+        if (columnsToReturn == null) {
+            return;
+        }
+        for (Map.Entry<String, String> columnFamilyAndColumnQualifier : columnsToReturn.entrySet()) {
+            if (columnFamilyAndColumnQualifier.getValue().equals("*")) {
+                scanner.fetchColumnFamily(new Text(columnFamilyAndColumnQualifier.getKey()));
+            } else {
+                scanner.fetchColumn(new Text(columnFamilyAndColumnQualifier.getKey()), new Text(columnFamilyAndColumnQualifier.getValue()));
+            }
+        }
+    }
+
     @Override
     public void initializeTable(String tableName, ModelUserContext user) {
         LOGGER.trace("initializeTable called with parameters: tableName=?, user=?", tableName, user);
@@ -317,31 +869,143 @@ public class AccumuloSession extends ModelSession {
     }
 
     @Override
-    public void deleteRow(String tableName, RowKey rowKey) {
-        LOGGER.trace("deleteRow called with parameters: tableName=?, rowKey=?", tableName, rowKey);
+    public void deleteRow(String tableName, RowKey rowKey, FlushFlag flushFlag) {
+        LOGGER.trace("deleteRow called with parameters: tableName=?, rowKey=?, flushFlag=?", tableName, rowKey, flushFlag);
+        deleteRows(tableName, Collections.singletonList(rowKey), flushFlag);
+    }
+
+    /**
+     * @throws MutationsWriteException    Thrown if the Accumulo writer was unable to write mutations
+     * @throws TableDoesNotExistException Thrown if an Accumulo writer cannot be setup for the table
+     */
+    @Override
+    public void deleteRows(String tableName, Collection<RowKey> rowKeys, FlushFlag flushFlag) {
+        LOGGER.trace("deleteRows called with parameters: tableName=?, rowKeys=?, flushFlag=?", tableName, rowKeys, flushFlag);
+        if (rowKeys.size() == 0) {
+            return;
+        }
         // In most instances (e.g., when reading is not necessary), the
         // RowDeletingIterator gives better performance than the deleting
         // mutation. This is due to the fact that Deleting mutations marks each
         // entry with a delete marker. Using the iterator marks a whole row with
         // a single mutation.
         try {
-            BatchWriter writer = connector.createBatchWriter(tableName, batchWriterConfig);
-            try {
+            BatchWriter writer = getBatchWriter(tableName);
+            for (RowKey rowKey : rowKeys) {
                 Mutation mutation = new Mutation(rowKey.toString());
                 mutation.put(new byte[0], new byte[0], RowDeletingIterator.DELETE_ROW_VALUE.get());
                 writer.addMutation(mutation);
-                if (autoflush) {
-                    writer.flush();
+            }
+            flush(tableName, writer, flushFlag);
+        } catch (MutationsRejectedException e) {
+            throw new MutationsWriteException("Error occured while deleting rows", e);
+        }
+    }
+
+    /**
+     * Tablets that lie entirely within the range are removed on the tablet servers with
+     * {@link org.apache.accumulo.core.client.admin.TableOperations#deleteRows(String, Text, Text)}. The rows
+     * in the partially covered tablets at either end of the range are found with a batch scan using the
+     * connector user's authorizations and deleted with row delete mutations. Rows in those tablets that the
+     * connector user cannot see any cell of are not found and so are not deleted; give the connector user
+     * every authorization used in the table to delete them as well.
+     *
+     * @throws TableDoesNotExistException Thrown if the table does not exist
+     */
+    @Override
+    public void deleteRange(String tableName, String rowKeyStart, String rowKeyEnd) {
+        LOGGER.trace("deleteRange called with parameters: tableName=?, rowKeyStart=?, rowKeyEnd=?", tableName, rowKeyStart, rowKeyEnd);
+        Text start = rowKeyStart == null ? null : new Text(rowKeyStart);
+        Text end = rowKeyEnd == null ? null : new Text(rowKeyEnd);
+        deleteRange(tableName, start, end);
+    }
+
+    /**
+     * @see #deleteRange(String, String, String)
+     */
+    @Override
+    public void deleteByPrefix(String tableName, String rowKeyPrefix) {
+        LOGGER.trace("deleteByPrefix called with parameters: tableName=?, rowKeyPrefix=?", tableName, rowKeyPrefix);
+        Text start = new Text(rowKeyPrefix);
+        deleteRange(tableName, start, Range.followingPrefix(start));
+    }
+
+    /**
+     * @param start first row to delete or <code>null</code> to delete from the beginning of the table
+     * @param end   row after the last row to delete or <code>null</code> to delete to the end of the table
+     */
+    private void deleteRange(String tableName, Text start, Text end) {
+        try {
+            // find the splits in [start, end); the tablets between the first and last of them are fully covered
+            Text firstSplit = null;
+            Text lastSplit = null;
+            for (Text split : connector.tableOperations().listSplits(tableName)) {
+                if (start != null && split.compareTo(start) < 0) {
+                    continue;
                 }
-            } catch (AccumuloException ae) {
-                throw new RuntimeException(ae);
-            } finally {
-                writer.close();
+                if (end != null && split.compareTo(end) >= 0) {
+                    break;
+                }
+                if (firstSplit == null) {
+                    firstSplit = split;
+                }
+                lastSplit = split;
             }
-        } catch (MutationsRejectedException mre) {
-            throw new RuntimeException(mre);
-        } catch (TableNotFoundException tnfe) {
-            throw new RuntimeException(tnfe);
+
+            // deleteRows removes the rows in (tabletsStart, tabletsEnd], null being unbounded
+            Text tabletsStart = start == null ? null : firstSplit;
+            Text tabletsEnd = end == null ? null : lastSplit;
+            boolean deleteTablets = (start == null || firstSplit != null)
+                    && (end == null || lastSplit != null)
+                    && (tabletsStart == null || tabletsEnd == null || tabletsStart.compareTo(tabletsEnd) < 0);
+
+            List<Range> edgeRanges = new ArrayList<Range>();
+            if (deleteTablets) {
+                LOGGER.debug("deleteRange: deleting tablets of " + tableName + " in (" + tabletsStart + ", " + tabletsEnd + "]");
+                connector.tableOperations().deleteRows(tableName, tabletsStart, tabletsEnd);
+                if (start != null) {
+                    edgeRanges.add(new Range(start, true, tabletsStart, true));
+                }
+                if (end != null) {
+                    edgeRanges.add(new Range(tabletsEnd, false, end, false));
+                }
+            } else {
+                edgeRanges.add(new Range(start, true, end, false));
+            }
+
+            if (edgeRanges.size() > 0) {
+                deleteRowsInRanges(tableName, edgeRanges);
+            }
+        } catch (TableNotFoundException e) {
+            throw new TableDoesNotExistException("Could not find table: " + tableName, e);
+        } catch (MutationsRejectedException e) {
+            throw new MutationsWriteException("Error occured while deleting rows", e);
+        } catch (AccumuloSecurityException e) {
+            throw new RuntimeException(e);
+        } catch (AccumuloException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void deleteRowsInRanges(String tableName, List<Range> ranges) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+        Authorizations authorizations = connector.securityOperations().getUserAuthorizations(connector.whoami());
+        BatchScanner scanner = createBatchScanner(tableName, new AccumuloUserContext(authorizations), DEFAULT_BATCH_SCANNER_THREADS);
+        try {
+            scanner.setRanges(ranges);
+            scanner.addScanIterator(new IteratorSetting(
+                    FIRST_ENTRY_IN_ROW_ITERATOR_PRIORITY,
+                    FirstEntryInRowIterator.class.getSimpleName(),
+                    FirstEntryInRowIterator.class
+            ));
+            BatchWriter writer = getBatchWriter(tableName);
+            for (Map.Entry<Key, Value> firstEntry : scanner) {
+                Mutation mutation = new Mutation(firstEntry.getKey().getRow());
+                mutation.put(new byte[0], new byte[0], RowDeletingIterator.DELETE_ROW_VALUE.get());
+                writer.addMutation(mutation);
+            }
+            flushWriter(tableName, writer);
+        } finally {
+            scanner.close();
         }
     }
 
@@ -350,10 +1014,10 @@ public class AccumuloSession extends ModelSession {
         try {
             BatchWriter writer = getBatchWriter(tableName);
             Mutation mutation = createMutationFromRow(row);
-            mutation.putDelete(new Text(columnFamily), new Text(columnQualifier), new ColumnVisibility(columnVisibility));
+            mutation.putDelete(new Text(columnFamily), new Text(columnQualifier), ColumnVisibilityCache.get(columnVisibility));
             writer.addMutation(mutation);
             if (autoflush) {
-                writer.flush();
+                flushWriter(tableName, writer);
             }
         } catch (AccumuloException ae) {
             throw new RuntimeException(ae);
@@ -371,9 +1035,17 @@ public class AccumuloSession extends ModelSession {
      */
     @Override
     public void close() {
+        ScheduledExecutorService flusher = asyncFlusher;
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(asyncFlushIntervalMillis * 10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         flush();
-        ArrayList<Map.Entry<String, BatchWriter>> localBatchWriters = createCopyOfBatchWriters();
-        for (Map.Entry<String, BatchWriter> writer : localBatchWriters) {
+        for (Map.Entry<String, BatchWriter> writer : batchWriters.entrySet()) {
             try {
                 writer.getValue().close();
             } catch (MutationsRejectedException e) {
@@ -382,49 +1054,47 @@ public class AccumuloSession extends ModelSession {
         }
     }
 
-    private ArrayList<Map.Entry<String, BatchWriter>> createCopyOfBatchWriters() {
-        ArrayList<Map.Entry<String, BatchWriter>> localBatchWriters;
-        synchronized (batchWriters) {
-            localBatchWriters = new ArrayList<Map.Entry<String, BatchWriter>>(batchWriters.entrySet());
-        }
-        return localBatchWriters;
-    }
-
     /**
      * @throws MutationsWriteException Thrown if the Accumulo writer was unable to write mutations while flushing
      */
     @Override
     public void flush() {
-        ArrayList<Map.Entry<String, BatchWriter>> localBatchWriters = createCopyOfBatchWriters();
-        for (Map.Entry<String, BatchWriter> writer : localBatchWriters) {
+        flushPendingWrites();
+        for (Map.Entry<String, BatchWriter> writer : batchWriters.entrySet()) {
             try {
-                writer.getValue().flush();
+                flushWriter(writer.getKey(), writer.getValue());
             } catch (MutationsRejectedException e) {
                 throw new MutationsWriteException("Could not flush writer for table: " + writer.getKey(), e);
             }
         }
     }
 
+    /**
+     * Returns the context shared by every caller with the same authorizations, in any order
+     */
     @Override
     public ModelUserContext createModelUserContext(String... authorizations) {
-        if (authorizations.length == 1 && authorizations[0].length() == 0) {
-            return new AccumuloUserContext(new Authorizations());
-        }
-        return new AccumuloUserContext(new Authorizations(authorizations));
+        return userContexts.get(authorizations);
     }
 
     private BatchWriter getBatchWriter(String tableName) {
+        BatchWriter writer = batchWriters.get(tableName);
+        if (writer != null) {
+            return writer;
+        }
         try {
-            synchronized (batchWriters) {
-                BatchWriter writer = batchWriters.get(tableName);
-                if (writer == null) {
-                    writer = connector.createBatchWriter(tableName, batchWriterConfig);
-                    batchWriters.put(tableName, writer);
-                }
-                return writer;
+            // a writer that loses the race has not been written to, so it can simply be closed
+            writer = connector.createBatchWriter(tableName, getBatchWriterConfig(tableName));
+            BatchWriter existingWriter = batchWriters.putIfAbsent(tableName, writer);
+            if (existingWriter != null) {
+                writer.close();
+                return existingWriter;
             }
+            return writer;
         } catch (TableNotFoundException e) {
             throw new TableDoesNotExistException("Could not find table: " + tableName, e);
+        } catch (MutationsRejectedException e) {
+            throw new MutationsWriteException("Could not close writer for table: " + tableName, e);
         }
     }
 
@@ -443,7 +1113,7 @@ public class AccumuloSession extends ModelSession {
                     if (mutation == null) {
                         mutation = new Mutation(row.getRowKey().toString());
                     }
-                    mutation.put(columnFamily.getColumnFamilyName(), column.getName(), new ColumnVisibility(column.getVisibility()), value);
+                    mutation.put(columnFamily.getColumnFamilyName(), column.getName(), ColumnVisibilityCache.get(column.getVisibility()), value);
                 }
             }
         }
@@ -468,25 +1138,107 @@ public class AccumuloSession extends ModelSession {
         }
     }
 
+    /**
+     * Deletes each matching column and puts it back with the new visibility in a single mutation, so
+     * readers never see the row without the column and the other columns of the row are not rewritten.
+     *
+     * @throws MutationsWriteException Thrown if the Accumulo writer was unable to write mutations
+     */
     @Override
-    public void alterColumnsVisibility(Row row, String matchVisibility,  String newVisibility, FlushFlag flushFlag) {
+    public void alterColumnsVisibility(Row row, String matchVisibility, String newVisibility, FlushFlag flushFlag) {
+        LOGGER.trace("alterColumnsVisibility called with parameters: row=?, matchVisibility=?, newVisibility=?, flushFlag=?", row, matchVisibility, newVisibility, flushFlag);
+        if (matchVisibility.equals(newVisibility)) {
+            return;
+        }
         String tableName = row.getTableName();
-        Row copyRow = new Row(tableName, row.getRowKey());
+        ColumnVisibility matchColumnVisibility = ColumnVisibilityCache.get(matchVisibility);
+        ColumnVisibility newColumnVisibility = ColumnVisibilityCache.get(newVisibility);
+        Mutation mutation = new Mutation(row.getRowKey().toString());
         Collection<ColumnFamily> columnFamilies = row.getColumnFamilies();
         for (ColumnFamily columnFamily : columnFamilies) {
-            ColumnFamily copyColumnFamily = new ColumnFamily(columnFamily.getColumnFamilyName());
             for (Column column : columnFamily.getColumns()) {
-                if (column.getVisibility().equals(matchVisibility)) {
-                    Column copyColumn = new Column(column.getName(), column.getValue(), newVisibility);
-                    copyColumnFamily.addColumn(copyColumn);
-                } else {
-                    copyColumnFamily.addColumn(column);
+                if (matchVisibility.equals(column.getVisibility())) {
+                    mutation.putDelete(columnFamily.getColumnFamilyName(), column.getName(), matchColumnVisibility);
+                    mutation.put(columnFamily.getColumnFamilyName(), column.getName(), newColumnVisibility, new Value(column.getValue().toBytes()));
+                }
+            }
+        }
+        if (mutation.size() == 0) {
+            return;
+        }
+        try {
+            BatchWriter writer = getBatchWriter(tableName);
+            writer.addMutation(mutation);
+            flush(tableName, writer, flushFlag);
+        } catch (MutationsRejectedException e) {
+            throw new MutationsWriteException("Error occured when writing mutation", e);
+        }
+    }
+
+    /**
+     * Scans the range with a batch scanner, which reads the tablets in parallel, using the authorizations
+     * of the connector's user so that every column the session can read is considered. Each column with the
+     * matching visibility is deleted and put back with the new visibility while the scan continues; the
+     * batch writer sends the mutations in the background.
+     *
+     * @throws TableDoesNotExistException Thrown if the table does not exist
+     * @throws MutationsWriteException    Thrown if the Accumulo writer was unable to write mutations
+     */
+    @Override
+    public long alterColumnsVisibility(String tableName, RowKeyRange range, String matchVisibility, String newVisibility) {
+        LOGGER.trace("alterColumnsVisibility called with parameters: tableName=?, range=?, matchVisibility=?, newVisibility=?", tableName, range, matchVisibility, newVisibility);
+        if (matchVisibility.equals(newVisibility)) {
+            return 0;
+        }
+        ColumnVisibility matchColumnVisibility = ColumnVisibilityCache.get(matchVisibility);
+        byte[] matchVisibilityBytes = matchColumnVisibility.getExpression();
+        ColumnVisibility newColumnVisibility = ColumnVisibilityCache.get(newVisibility);
+        try {
+            Authorizations authorizations = connector.securityOperations().getUserAuthorizations(connector.whoami());
+            BatchScanner scanner = createBatchScanner(tableName, new AccumuloUserContext(authorizations), DEFAULT_BATCH_SCANNER_THREADS);
+            try {
+                scanner.setRanges(Collections.singletonList(toRange(range)));
+                BatchWriter writer = getBatchWriter(tableName);
+                long count = 0;
+                for (Map.Entry<Key, Value> entry : scanner) {
+                    Key key = entry.getKey();
+                    if (!bytesEqual(key.getColumnVisibilityData(), matchVisibilityBytes)) {
+                        continue;
+                    }
+                    byte[] columnFamily = key.getColumnFamilyData().toArray();
+                    byte[] columnQualifier = key.getColumnQualifierData().toArray();
+                    Mutation mutation = new Mutation(key.getRowData().toArray());
+                    mutation.putDelete(columnFamily, columnQualifier, matchColumnVisibility);
+                    mutation.put(columnFamily, columnQualifier, newColumnVisibility, entry.getValue().get());
+                    writer.addMutation(mutation);
+                    count++;
                 }
+                flushWriter(tableName, writer);
+                return count;
+            } finally {
+                scanner.close();
             }
-            copyRow.addColumnFamily(copyColumnFamily);
+        } catch (TableNotFoundException e) {
+            throw new TableDoesNotExistException("Could not find table: " + tableName, e);
+        } catch (MutationsRejectedException e) {
+            throw new MutationsWriteException("Error occured when writing mutation", e);
+        } catch (AccumuloSecurityException e) {
+            throw new RuntimeException(e);
+        } catch (AccumuloException e) {
+            throw new RuntimeException(e);
         }
-        deleteRow(tableName, row.getRowKey());
-        save(copyRow, flushFlag);
     }
 
+    private static boolean bytesEqual(ByteSequence bytes, byte[] other) {
+        if (bytes.length() != other.length) {
+            return false;
+        }
+        byte[] backingArray = bytes.getBackingArray();
+        for (int i = 0; i < other.length; i++) {
+            if (backingArray[bytes.offset() + i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,54 @@
+package com.altamiracorp.bigtable.model.accumulo;
+
+import com.altamiracorp.bigtable.model.metrics.OperationStats;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Counts the batches a {@link org.apache.accumulo.core.client.Scanner} fetches from the tablet servers. The
+ * scanner API does not expose its fetches, but a scanner fetches up to its batch size of entries per request,
+ * so the entries read are counted in windows of the batch size and each window started counts as one batch.
+ * A fetch that ends early at a tablet boundary is not counted, so the count is a lower bound.
+ */
+class BatchCountingIterable implements Iterable<Map.Entry<Key, Value>> {
+    private final Iterable<Map.Entry<Key, Value>> entries;
+    private final int batchSize;
+    private final OperationStats stats;
+
+    BatchCountingIterable(Iterable<Map.Entry<Key, Value>> entries, int batchSize, OperationStats stats) {
+        this.entries = entries;
+        this.batchSize = batchSize;
+        this.stats = stats;
+    }
+
+    @Override
+    public Iterator<Map.Entry<Key, Value>> iterator() {
+        final Iterator<Map.Entry<Key, Value>> it = entries.iterator();
+        return new Iterator<Map.Entry<Key, Value>>() {
+            private long count = 0;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Map.Entry<Key, Value> next() {
+                Map.Entry<Key, Value> entry = it.next();
+                if (count % batchSize == 0) {
+                    stats.recordBatches(1);
+                }
+                count++;
+                return entry;
+            }
+
+            @Override
+            public void remove() {
+                it.remove();
+            }
+        };
+    }
+}
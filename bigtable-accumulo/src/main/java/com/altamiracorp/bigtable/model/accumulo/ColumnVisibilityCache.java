@@ -0,0 +1,45 @@
+package com.altamiracorp.bigtable.model.accumulo;
+
+import org.apache.accumulo.core.security.ColumnVisibility;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Parsed column visibilities shared by every writer, so that the few visibility expressions an application
+ * uses are parsed once instead of for every cell written. The cache is bounded: once it holds
+ * {@link #MAX_SIZE} expressions it is cleared and refills with the expressions still in use.
+ */
+public final class ColumnVisibilityCache {
+    public static final int MAX_SIZE = 10000;
+
+    private static final ColumnVisibility EMPTY = new ColumnVisibility();
+    private static final ConcurrentMap<String, ColumnVisibility> columnVisibilities = new ConcurrentHashMap<String, ColumnVisibility>();
+
+    private ColumnVisibilityCache() {
+    }
+
+    /**
+     * @param expression visibility expression, <code>null</code> or empty for no visibility
+     * @return the parsed visibility, which must not be modified
+     * @throws IllegalArgumentException if the expression is not valid; invalid expressions are not cached
+     */
+    public static ColumnVisibility get(String expression) {
+        if (expression == null || expression.length() == 0) {
+            return EMPTY;
+        }
+        ColumnVisibility columnVisibility = columnVisibilities.get(expression);
+        if (columnVisibility == null) {
+            columnVisibility = new ColumnVisibility(expression);
+            if (columnVisibilities.size() >= MAX_SIZE) {
+                columnVisibilities.clear();
+            }
+            columnVisibilities.put(expression, columnVisibility);
+        }
+        return columnVisibility;
+    }
+
+    static int size() {
+        return columnVisibilities.size();
+    }
+}
@@ -0,0 +1,87 @@
+package com.altamiracorp.bigtable.model.accumulo;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.WrappingIterator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Scan time iterator that counts the rows in the seeked range on the tablet server and returns a single
+ * entry holding the count. The key of the entry is the last key read so that a re-seek by the tablet server
+ * continues after the rows already counted. The bigtable-accumulo jar must be on the tablet server classpath.
+ */
+public class RowCountingIterator extends WrappingIterator {
+    private Key topKey;
+    private Value topValue;
+
+    public RowCountingIterator() {
+    }
+
+    private RowCountingIterator(RowCountingIterator other, IteratorEnvironment env) {
+        setSource(other.getSource().deepCopy(env));
+    }
+
+    public static long decodeCount(Value value) {
+        return ByteBuffer.wrap(value.get()).getLong();
+    }
+
+    @Override
+    public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
+        super.seek(range, columnFamilies, inclusive);
+        topKey = null;
+        topValue = null;
+
+        SortedKeyValueIterator<Key, Value> source = getSource();
+        ByteSequence lastRow = null;
+        Key lastKey = null;
+        long count = 0;
+        while (source.hasTop()) {
+            // copy the key since the source is free to reuse it after next() is called
+            lastKey = new Key(source.getTopKey());
+            ByteSequence row = lastKey.getRowData();
+            if (lastRow == null || !lastRow.equals(row)) {
+                count++;
+                lastRow = row;
+            }
+            source.next();
+        }
+
+        if (count > 0) {
+            topKey = lastKey;
+            topValue = new Value(ByteBuffer.allocate(8).putLong(count).array());
+        }
+    }
+
+    @Override
+    public boolean hasTop() {
+        return topKey != null;
+    }
+
+    @Override
+    public void next() throws IOException {
+        topKey = null;
+        topValue = null;
+    }
+
+    @Override
+    public Key getTopKey() {
+        return topKey;
+    }
+
+    @Override
+    public Value getTopValue() {
+        return topValue;
+    }
+
+    @Override
+    public SortedKeyValueIterator<Key, Value> deepCopy(IteratorEnvironment env) {
+        return new RowCountingIterator(this, env);
+    }
+}
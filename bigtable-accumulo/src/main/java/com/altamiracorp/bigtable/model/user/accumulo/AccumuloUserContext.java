@@ -12,7 +12,13 @@ public class AccumuloUserContext implements ModelUserContext {
 
     @Override
     public int hashCode() {
-        return accumuloAuthorizations == null ? 0 : accumuloAuthorizations.hashCode();
+        // the authorizations never change, so the hash of contexts used as cache keys is only computed once
+        int hashCode = this.hashCode;
+        if (hashCode == 0 && accumuloAuthorizations != null) {
+            hashCode = accumuloAuthorizations.hashCode();
+            this.hashCode = hashCode;
+        }
+        return hashCode;
     }
 
     @Override
@@ -40,6 +46,7 @@ public class AccumuloUserContext implements ModelUserContext {
     }
 
     private Authorizations accumuloAuthorizations;
+    private transient int hashCode;
 
     public AccumuloUserContext() {
         accumuloAuthorizations = new Authorizations();
@@ -3,8 +3,11 @@ package com.altamiracorp.bigtable.model.accumulo;
 import com.altamiracorp.bigtable.model.Column;
 import com.altamiracorp.bigtable.model.*;
 import com.altamiracorp.bigtable.model.Value;
+import com.altamiracorp.bigtable.model.cache.CachingModelSession;
 import com.altamiracorp.bigtable.model.exceptions.MutationsWriteException;
 import com.altamiracorp.bigtable.model.exceptions.TableDoesNotExistException;
+import com.altamiracorp.bigtable.model.metrics.MetricsModelSession;
+import com.altamiracorp.bigtable.model.metrics.SessionMetrics;
 import com.altamiracorp.bigtable.model.user.accumulo.AccumuloUserContext;
 import com.beust.jcommander.internal.Lists;
 import com.beust.jcommander.internal.Maps;
@@ -16,6 +19,7 @@ import org.apache.accumulo.core.client.security.SecurityErrorCode;
 import org.apache.accumulo.core.client.security.tokens.PasswordToken;
 import org.apache.accumulo.core.data.*;
 import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.junit.Assert;
 import org.junit.Before;
@@ -28,6 +32,9 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import org.powermock.reflect.Whitebox;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
@@ -100,7 +107,7 @@ public class AccumuloSessionTest {
         doThrow(mutationException).when(mockWriter).flush();
         when(mockConnector.createBatchWriter(anyString(), any(BatchWriterConfig.class))).thenReturn(mockWriter);
 
-        final Map<String, BatchWriter> writers = Maps.newHashMap();
+        final Map<String, BatchWriter> writers = new ConcurrentHashMap<String, BatchWriter>();
         writers.put("foo", mockWriter);
 
         Whitebox.setInternalState(session, "batchWriters", writers);
@@ -131,6 +138,86 @@ public class AccumuloSessionTest {
         return new MutationsRejectedException(cvsList, (HashMap<KeyExtent, Set<SecurityErrorCode>>) authFailuresMap, serverErrorList, -1, new Throwable());
     }
 
+    @Test
+    public void testSaveWithTableBatchWriterConfig() throws TableNotFoundException {
+        BatchWriterConfig tableConfig = new BatchWriterConfig();
+        tableConfig.setMaxMemory(1024L);
+        tableConfig.setMaxWriteThreads(1);
+        accumuloSession.setBatchWriterConfig(TEST_TABLE_NAME, tableConfig);
+        assertSame(tableConfig, accumuloSession.getBatchWriterConfig(TEST_TABLE_NAME));
+        assertNotSame(tableConfig, accumuloSession.getBatchWriterConfig("otherTable"));
+
+        Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("testRowKey1"));
+        ColumnFamily columnFamily = new ColumnFamily("testColumnFamily1");
+        columnFamily.set("testColumn1", "testValue1");
+        row.addColumnFamily(columnFamily);
+        accumuloSession.save(row);
+
+        assertNotNull(accumuloSession.findByRowKey(TEST_TABLE_NAME, "testRowKey1", queryUser));
+    }
+
+    @Test
+    public void testSaveAsync() throws Exception {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 0; i < 5; i++) {
+            Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("testRowKey" + i));
+            ColumnFamily columnFamily = new ColumnFamily("testColumnFamily1");
+            columnFamily.set("testColumn1", "testValue" + i);
+            row.addColumnFamily(columnFamily);
+            futures.add(accumuloSession.saveAsync(row));
+        }
+        for (Future<Void> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+            assertTrue(future.isDone());
+        }
+
+        assertEquals(5, accumuloSession.rowCount(TEST_TABLE_NAME, queryUser));
+        assertTrue(accumuloSession.saveManyAsync(TEST_TABLE_NAME, new ArrayList<Row>()).isDone());
+    }
+
+    @Test
+    public void testMetricsModelSession() {
+        MetricsModelSession metricsSession = new MetricsModelSession(accumuloSession, new SessionMetrics());
+        Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("testRowKey1"));
+        ColumnFamily columnFamily = new ColumnFamily("testColumnFamily1");
+        columnFamily.set("testColumn1", "testValue1");
+        row.addColumnFamily(columnFamily);
+        metricsSession.save(row, FlushFlag.FLUSH);
+        for (Row foundRow : metricsSession.findAll(TEST_TABLE_NAME, queryUser)) {
+            assertEquals("testRowKey1", foundRow.getRowKey().toString());
+        }
+
+        SessionMetrics metrics = metricsSession.getSessionMetrics();
+        assertEquals(1, metrics.getOperationStats(TEST_TABLE_NAME, "save").getCount());
+        assertEquals(1, metrics.getOperationStats(TEST_TABLE_NAME, "save").getRows());
+        assertEquals(1, metrics.getOperationStats(TEST_TABLE_NAME, "findAll").getRows());
+        assertEquals(1, metrics.getOperationStats(TEST_TABLE_NAME, "batchWriterFlush").getCount());
+        assertEquals(0, metrics.getOperationStats(TEST_TABLE_NAME, "scanner").getCount());
+        assertEquals(1, metrics.getOperationStats(TEST_TABLE_NAME, "scanner").getBatches());
+    }
+
+    @Test
+    public void testCachingModelSession() {
+        CachingModelSession cachingSession = new CachingModelSession(accumuloSession, 1000000L, 60000L);
+        Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("testRowKey1"));
+        ColumnFamily columnFamily = new ColumnFamily("testColumnFamily1");
+        columnFamily.set("testColumn1", "testValue1");
+        row.addColumnFamily(columnFamily);
+        cachingSession.save(row, FlushFlag.FLUSH);
+
+        assertEquals("testValue1", cachingSession.findByRowKey(TEST_TABLE_NAME, "testRowKey1", queryUser).get("testColumnFamily1").get("testColumn1").toString());
+        assertEquals("testValue1", cachingSession.findByRowKey(TEST_TABLE_NAME, "testRowKey1", queryUser).get("testColumnFamily1").get("testColumn1").toString());
+        assertEquals(1, cachingSession.getCacheStats().getHits());
+        assertEquals(1, cachingSession.getCacheStats().getMisses());
+
+        columnFamily.set("testColumn1", "testValue2");
+        cachingSession.save(row, FlushFlag.FLUSH);
+        assertEquals("testValue2", cachingSession.findByRowKey(TEST_TABLE_NAME, "testRowKey1", queryUser).get("testColumnFamily1").get("testColumn1").toString());
+
+        cachingSession.deleteRow(TEST_TABLE_NAME, new RowKey("testRowKey1"), FlushFlag.FLUSH);
+        assertNull(cachingSession.findByRowKey(TEST_TABLE_NAME, "testRowKey1", queryUser));
+    }
+
     @Test
     public void testSave() throws TableNotFoundException {
         Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("testRowKey1"));
@@ -227,6 +314,57 @@ public class AccumuloSessionTest {
         assertEquals("2testValue1", testColumnFamily2.get("2testColumn1").toString());
     }
 
+    @Test
+    public void testUpdateFoundRow() throws TableNotFoundException, MutationsRejectedException {
+        BatchWriter writer = connector.createBatchWriter(TEST_TABLE_NAME, maxMemory, maxLatency, maxWriteThreads);
+        Mutation mutation = new Mutation("testRowKey");
+        mutation.put("testColumnFamily1", "testColumn1", "testValue1");
+        mutation.put("testColumnFamily1", "testColumn3", "testValue3");
+        writer.addMutation(mutation);
+        writer.close();
+
+        Row row = accumuloSession.findByRowKey(TEST_TABLE_NAME, "testRowKey", queryUser);
+        ColumnFamily testColumnFamily1 = row.get("testColumnFamily1");
+        assertNull(testColumnFamily1.get("testColumn2"));
+        testColumnFamily1.set("testColumn2", "testValue2");
+        assertFalse(testColumnFamily1.getColumn("testColumn1").isDirty());
+        assertTrue(testColumnFamily1.getColumn("testColumn2").isDirty());
+        row.addColumnFamily(new ColumnFamily("testColumnFamily2").set("testColumn1", "testValue4"));
+        accumuloSession.save(row);
+
+        row = accumuloSession.findByRowKey(TEST_TABLE_NAME, "testRowKey", queryUser);
+        assertEquals(2, row.getColumnFamilies().size());
+        testColumnFamily1 = row.get("testColumnFamily1");
+        assertEquals(3, testColumnFamily1.getColumns().size());
+        assertEquals("testValue2", testColumnFamily1.get("testColumn2").toString());
+        assertEquals("testValue3", testColumnFamily1.get("testColumn3").toString());
+        assertEquals("testValue4", row.get("testColumnFamily2").get("testColumn1").toString());
+    }
+
+    @Test
+    public void testFindByRowKeys()throws TableNotFoundException, MutationsRejectedException {
+        BatchWriter writer = connector.createBatchWriter(TEST_TABLE_NAME, maxMemory, maxLatency, maxWriteThreads);
+        for (String rowKey : new String[]{"testRowKey1", "testRowKey2", "testRowKey3"}) {
+            Mutation mutation = new Mutation(rowKey);
+            mutation.put("testColumnFamily1", "testColumn1", "1" + rowKey);
+            mutation.put("testColumnFamily2", "testColumn2", "2" + rowKey);
+            writer.addMutation(mutation);
+        }
+        writer.close();
+
+        Map<String, Row> rows = accumuloSession.findByRowKeys(TEST_TABLE_NAME, Arrays.asList("testRowKey1", "testRowKey3", "missing"), queryUser);
+        assertEquals(2, rows.size());
+        assertEquals("1testRowKey1", rows.get("testRowKey1").get("testColumnFamily1").get("testColumn1").toString());
+        assertEquals("2testRowKey3", rows.get("testRowKey3").get("testColumnFamily2").get("testColumn2").toString());
+        assertNull(rows.get("missing"));
+
+        Map<String, String> columnsToReturn = new HashMap<String, String>();
+        columnsToReturn.put("testColumnFamily2", "*");
+        rows = accumuloSession.findByRowKeys(TEST_TABLE_NAME, Arrays.asList("testRowKey2"), columnsToReturn, queryUser);
+        assertEquals(1, rows.get("testRowKey2").getColumnFamilies().size());
+        assertNull(rows.get("testRowKey2").get("testColumnFamily1"));
+    }
+
     @Test
     public void testFindByRowStartsWith() throws TableNotFoundException, MutationsRejectedException {
         BatchWriter writer = connector.createBatchWriter(TEST_TABLE_NAME, maxMemory, maxLatency, maxWriteThreads);
@@ -252,6 +390,31 @@ public class AccumuloSessionTest {
         assertEquals("testRowKeyzSample", row.get(1).getRowKey().toString());
     }
 
+    @Test
+    public void testFindByRowKeyRanges() throws TableNotFoundException, MutationsRejectedException {
+        BatchWriter writer = connector.createBatchWriter(TEST_TABLE_NAME, maxMemory, maxLatency, maxWriteThreads);
+        for (String rowKey : new String[]{"a1", "a2", "b1", "c1", "c2", "d1"}) {
+            Mutation mutation = new Mutation(rowKey);
+            mutation.put("testColumnFamily1", "testColumn1", "value" + rowKey);
+            mutation.put("testColumnFamily2", "testColumn2", "value" + rowKey);
+            writer.addMutation(mutation);
+        }
+        writer.close();
+
+        List<RowKeyRange> ranges = new ArrayList<RowKeyRange>();
+        ranges.add(RowKeyRange.prefix("a"));
+        ranges.add(new RowKeyRange("c1", "d1"));
+        List<Row> rows = toList(accumuloSession.findByRowKeyRanges(TEST_TABLE_NAME, ranges, queryUser, 4));
+        Collections.sort(rows, new RowKeyComparator());
+        assertEquals(4, rows.size());
+        assertEquals("a1", rows.get(0).getRowKey().toString());
+        assertEquals("a2", rows.get(1).getRowKey().toString());
+        assertEquals("c1", rows.get(2).getRowKey().toString());
+        assertEquals("c2", rows.get(3).getRowKey().toString());
+        assertEquals(2, rows.get(2).getColumnFamilies().size());
+        assertEquals("valuec1", rows.get(2).get("testColumnFamily1").get("testColumn1").toString());
+    }
+
     @Test
     public void testFindAll() throws TableNotFoundException, MutationsRejectedException {
         BatchWriter writer = connector.createBatchWriter(TEST_TABLE_NAME, maxMemory, maxLatency, maxWriteThreads);
@@ -297,6 +460,59 @@ public class AccumuloSessionTest {
         assertEquals("testValue2", row2.get("testColumnFamily2").get("testColumn2").toString());
     }
 
+    @Test
+    public void testFindByRowKeyRangeWithColumnsToReturn() throws TableNotFoundException, MutationsRejectedException {
+        BatchWriter writer = connector.createBatchWriter(TEST_TABLE_NAME, maxMemory, maxLatency, maxWriteThreads);
+        for (String rowKey : new String[]{"testRowKey1", "testRowKey2"}) {
+            Mutation mutation = new Mutation(rowKey);
+            mutation.put("testColumnFamily1", "testColumn1", "testValue1");
+            mutation.put("testColumnFamily1", "testColumn2", "testValue2");
+            mutation.put("testColumnFamily2", "testColumn3", "testValue3");
+            writer.addMutation(mutation);
+        }
+        writer.close();
+
+        Map<String, String> columnsToReturn = new HashMap<String, String>();
+        columnsToReturn.put("testColumnFamily1", "testColumn2");
+        List<Row> rows = toList(accumuloSession.findByRowKeyRange(TEST_TABLE_NAME, "testRowKey", "testRowKeyZ", columnsToReturn, queryUser));
+        assertEquals(2, rows.size());
+        for (Row row : rows) {
+            assertEquals(1, row.getColumnFamilies().size());
+            ColumnFamily columnFamily = row.get("testColumnFamily1");
+            assertEquals(1, columnFamily.getColumns().size());
+            assertEquals("testValue2", columnFamily.get("testColumn2").toString());
+        }
+
+        columnsToReturn.clear();
+        columnsToReturn.put("testColumnFamily2", "*");
+        rows = toList(accumuloSession.findAll(TEST_TABLE_NAME, columnsToReturn, queryUser));
+        assertEquals(2, rows.size());
+        assertNull(rows.get(0).get("testColumnFamily1"));
+        assertEquals("testValue3", rows.get(0).get("testColumnFamily2").get("testColumn3").toString());
+    }
+
+    @Test
+    public void testFindByRowKeyRangeWithLimit() throws TableNotFoundException, MutationsRejectedException {
+        BatchWriter writer = connector.createBatchWriter(TEST_TABLE_NAME, maxMemory, maxLatency, maxWriteThreads);
+        for (int i = 0; i < 10; i++) {
+            Mutation mutation = new Mutation("testRowKey" + i);
+            mutation.put("testColumnFamily1", "testColumn1", "testValue" + i);
+            mutation.put("testColumnFamily1", "testColumn2", "testValue" + i);
+            writer.addMutation(mutation);
+        }
+        writer.close();
+
+        ScanOptions scanOptions = new ScanOptions().setLimit(3);
+        List<Row> rows = toList(accumuloSession.findByRowKeyRange(TEST_TABLE_NAME, "testRowKey", "testRowKeyZ", scanOptions, queryUser));
+        assertEquals(3, rows.size());
+        assertEquals("testRowKey0", rows.get(0).getRowKey().toString());
+        assertEquals("testRowKey2", rows.get(2).getRowKey().toString());
+        assertEquals(2, rows.get(2).get("testColumnFamily1").getColumns().size());
+
+        rows = toList(accumuloSession.findAll(TEST_TABLE_NAME, new ScanOptions().setLimit(20), queryUser));
+        assertEquals(10, rows.size());
+    }
+
     @Test
     public void testFindByRowKeyRegex() throws TableNotFoundException, MutationsRejectedException {
         BatchWriter writer = connector.createBatchWriter(TEST_TABLE_NAME, maxMemory, maxLatency, maxWriteThreads);
@@ -319,6 +535,26 @@ public class AccumuloSessionTest {
         assertEquals("testValue1", row1.get("testColumnFamily1").get("testColumn1").toString());
     }
 
+    @Test
+    public void testRowCount() throws TableNotFoundException, MutationsRejectedException {
+        assertEquals(0, accumuloSession.rowCount(TEST_TABLE_NAME, queryUser));
+
+        BatchWriter writer = connector.createBatchWriter(TEST_TABLE_NAME, maxMemory, maxLatency, maxWriteThreads);
+        for (String rowKey : new String[]{"a1", "a2", "b1", "c1"}) {
+            Mutation mutation = new Mutation(rowKey);
+            mutation.put("testColumnFamily1", "testColumn1", "testValue1");
+            mutation.put("testColumnFamily1", "testColumn2", "testValue2");
+            mutation.put("testColumnFamily2", "testColumn1", "testValue3");
+            writer.addMutation(mutation);
+        }
+        writer.close();
+        accumuloSession.deleteRow(TEST_TABLE_NAME, new RowKey("b1"));
+
+        assertEquals(3, accumuloSession.rowCount(TEST_TABLE_NAME, queryUser));
+        assertEquals(2, accumuloSession.rowCount(TEST_TABLE_NAME, RowKeyRange.prefix("a"), queryUser));
+        assertEquals(2, accumuloSession.rowCount(TEST_TABLE_NAME, new RowKeyRange("a2", "d"), queryUser));
+    }
+
     private List<Row> toList(Iterable<Row> rows) {
         List<Row> result = new ArrayList<Row>();
         for (Row row : rows) {
@@ -345,6 +581,80 @@ public class AccumuloSessionTest {
         assertNull("row should be deleted", row);
     }
 
+    @Test
+    public void testDeleteRows() {
+        List<RowKey> rowKeys = new ArrayList<RowKey>();
+        for (int i = 0; i < 5; i++) {
+            Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("testRowKey" + i));
+            ColumnFamily columnFamily = new ColumnFamily("testColumnFamily1");
+            columnFamily.set("testColumn1", "testValue" + i);
+            row.addColumnFamily(columnFamily);
+            accumuloSession.save(row);
+            if (i % 2 == 0) {
+                rowKeys.add(row.getRowKey());
+            }
+        }
+
+        accumuloSession.deleteRows(TEST_TABLE_NAME, rowKeys, FlushFlag.FLUSH);
+
+        List<Row> rows = toList(accumuloSession.findAll(TEST_TABLE_NAME, queryUser));
+        assertEquals(2, rows.size());
+        assertEquals("testRowKey1", rows.get(0).getRowKey().toString());
+        assertEquals("testRowKey3", rows.get(1).getRowKey().toString());
+    }
+
+    @Test
+    public void testDeleteRange() throws Exception {
+        SortedSet<Text> splits = new TreeSet<Text>();
+        splits.add(new Text("testRowKey2"));
+        splits.add(new Text("testRowKey4"));
+        splits.add(new Text("testRowKey6"));
+        connector.tableOperations().addSplits(TEST_TABLE_NAME, splits);
+        for (int i = 0; i < 9; i++) {
+            Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("testRowKey" + i));
+            ColumnFamily columnFamily = new ColumnFamily("testColumnFamily1");
+            columnFamily.set("testColumn1", "testValue" + i);
+            row.addColumnFamily(columnFamily);
+            accumuloSession.save(row);
+        }
+
+        accumuloSession.deleteRange(TEST_TABLE_NAME, "testRowKey1", "testRowKey7");
+
+        List<Row> rows = toList(accumuloSession.findAll(TEST_TABLE_NAME, queryUser));
+        assertEquals(3, rows.size());
+        assertEquals("testRowKey0", rows.get(0).getRowKey().toString());
+        assertEquals("testRowKey7", rows.get(1).getRowKey().toString());
+        assertEquals("testRowKey8", rows.get(2).getRowKey().toString());
+
+        accumuloSession.deleteByPrefix(TEST_TABLE_NAME, "testRowKey0");
+
+        rows = toList(accumuloSession.findAll(TEST_TABLE_NAME, queryUser));
+        assertEquals(2, rows.size());
+        assertEquals("testRowKey7", rows.get(0).getRowKey().toString());
+    }
+
+    @Test
+    public void testDeleteRangeOnlyFindsRowsVisibleToConnectorUser() throws Exception {
+        connector.securityOperations().changeUserAuthorizations("testUser", new Authorizations("B"));
+        for (int i = 0; i < 3; i++) {
+            Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("testRowKey" + i));
+            ColumnFamily columnFamily = new ColumnFamily("testColumnFamily1");
+            columnFamily.set("testColumn1", "testValue" + i, i == 1 ? "A" : "B");
+            row.addColumnFamily(columnFamily);
+            accumuloSession.save(row);
+        }
+
+        // without splits the whole range is found with a scan, which cannot see the row with visibility A
+        accumuloSession.deleteRange(TEST_TABLE_NAME, "testRowKey0", "testRowKey9");
+        List<Row> rows = toList(accumuloSession.findAll(TEST_TABLE_NAME, adminUser));
+        assertEquals(1, rows.size());
+        assertEquals("testRowKey1", rows.get(0).getRowKey().toString());
+
+        connector.securityOperations().changeUserAuthorizations("testUser", new Authorizations("A", "B"));
+        accumuloSession.deleteRange(TEST_TABLE_NAME, "testRowKey0", "testRowKey9");
+        assertEquals(0, toList(accumuloSession.findAll(TEST_TABLE_NAME, adminUser)).size());
+    }
+
     @Test
     public void testColumnVisibility() {
         AccumuloUserContext queryUserWithAuth = new AccumuloUserContext(new Authorizations("B"));
@@ -428,6 +738,7 @@ public class AccumuloSessionTest {
         columnFamily.set("testColumn3", new Value("testValue3"), "C");
         columnFamily.set("testColumn4", new Value("testValue4"), "C");
         row.addColumnFamily(columnFamily);
+        accumuloSession.save(row, FlushFlag.FLUSH);
 
         accumuloSession.alterColumnsVisibility(row, "A", "B", FlushFlag.FLUSH);
         assertNull(accumuloSession.findByRowKey(row.getTableName(), row.getRowKey().toString(), queryUserWithAuthA));
@@ -444,4 +755,76 @@ public class AccumuloSessionTest {
         assertNotNull(accumuloSession.findByRowKey(row.getTableName(), row.getRowKey().toString(), queryUserWithAuthA));
         assertNotNull(accumuloSession.findByRowKey(row.getTableName(), row.getRowKey().toString(), queryUserWithAuthB));
     }
+
+    @Test
+    public void testAlterColumnsVisibilityInRange() throws AccumuloSecurityException, AccumuloException {
+        connector.securityOperations().changeUserAuthorizations("testUser", new Authorizations("A", "B", "C"));
+        for (int i = 0; i < 4; i++) {
+            Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("testRowKey" + i));
+            ColumnFamily columnFamily = new ColumnFamily("testColumnFamily1");
+            columnFamily.set("testColumn1", new Value("testValue1"), "A");
+            columnFamily.set("testColumn2", new Value("testValue2"), "C");
+            row.addColumnFamily(columnFamily);
+            accumuloSession.save(row);
+        }
+
+        assertEquals(2, accumuloSession.alterColumnsVisibility(TEST_TABLE_NAME, new RowKeyRange("testRowKey1", "testRowKey3"), "A", "B"));
+
+        AccumuloUserContext queryUserWithAuthBandC = new AccumuloUserContext(new Authorizations("B", "C"));
+        List<Row> rows = toList(accumuloSession.findAll(TEST_TABLE_NAME, queryUserWithAuthBandC));
+        assertEquals(4, rows.size());
+        for (Row row : rows) {
+            String rowKey = row.getRowKey().toString();
+            boolean altered = rowKey.equals("testRowKey1") || rowKey.equals("testRowKey2");
+            ColumnFamily columnFamily = row.get("testColumnFamily1");
+            assertEquals(altered ? 2 : 1, columnFamily.getColumns().size());
+            assertEquals("C", columnFamily.getColumn("testColumn2").getVisibility());
+            if (altered) {
+                assertEquals("B", columnFamily.getColumn("testColumn1").getVisibility());
+                assertEquals("testValue1", columnFamily.get("testColumn1").toString());
+            }
+        }
+
+        assertEquals(1, accumuloSession.alterColumnsVisibility(TEST_TABLE_NAME, RowKeyRange.prefix("testRowKey0"), "A", "B"));
+        assertEquals(3, toList(accumuloSession.findAll(TEST_TABLE_NAME, new AccumuloUserContext(new Authorizations("B")))).size());
+    }
+
+    @Test
+    public void testCreateModelUserContext() {
+        AccumuloUserContext user = (AccumuloUserContext) accumuloSession.createModelUserContext("B", "A", "B");
+        assertSame(user, accumuloSession.createModelUserContext("A", " B"));
+        assertEquals(new Authorizations("A", "B"), user.getAuthorizations());
+        assertEquals(adminUser, user);
+        assertSame(accumuloSession.createModelUserContext(), accumuloSession.createModelUserContext(""));
+        assertTrue(((AccumuloUserContext) accumuloSession.createModelUserContext("")).getAuthorizations().isEmpty());
+    }
+
+    @Test
+    public void testDecodeMetadataEntries() {
+        long[] sizeAndEntries = AccumuloSession.decodeMetadataDataFileValue(new org.apache.accumulo.core.data.Value("2048,17,1400000000000".getBytes()));
+        assertEquals(2048, sizeAndEntries[0]);
+        assertEquals(17, sizeAndEntries[1]);
+        sizeAndEntries = AccumuloSession.decodeMetadataDataFileValue(new org.apache.accumulo.core.data.Value("512,3".getBytes()));
+        assertEquals(512, sizeAndEntries[0]);
+        assertEquals(3, sizeAndEntries[1]);
+
+        assertEquals(new Text("rowM"), AccumuloSession.decodeMetadataEndRow(new Text("2a;rowM")));
+        assertNull(AccumuloSession.decodeMetadataEndRow(new Text("2a<")));
+
+        byte[] prevEndRow = new byte[]{1, 'r', 'o', 'w', 'C'};
+        assertEquals(new Text("rowC"), AccumuloSession.decodeMetadataPrevEndRow(new org.apache.accumulo.core.data.Value(prevEndRow)));
+        assertNull(AccumuloSession.decodeMetadataPrevEndRow(new org.apache.accumulo.core.data.Value(new byte[]{0})));
+    }
+
+    @Test
+    public void testEstimateRows() {
+        // 1000 sampled entries in 250 rows is 4 entries per row
+        assertEquals(2500, AccumuloSession.estimateRows(10000, 1000, 250, false));
+        // a sample that read the whole range is exact
+        assertEquals(42, AccumuloSession.estimateRows(0, 84, 42, true));
+        // never fewer rows than were sampled
+        assertEquals(250, AccumuloSession.estimateRows(100, 1000, 250, false));
+        assertEquals(0, AccumuloSession.estimateRows(0, 0, 0, false));
+        assertEquals(TableStats.UNKNOWN, AccumuloSession.estimateRows(100, 0, 0, false));
+    }
 }
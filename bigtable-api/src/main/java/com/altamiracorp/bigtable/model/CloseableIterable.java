@@ -0,0 +1,15 @@
+package com.altamiracorp.bigtable.model;
+
+import java.io.Closeable;
+
+/**
+ * Rows that hold resources, such as scanner threads, until they have been iterated to the end. Callers that
+ * stop iterating early must close them.
+ */
+public interface CloseableIterable<T> extends Iterable<T>, Closeable {
+    /**
+     * Releases the resources held by the rows. Closing more than once has no effect.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,25 @@
+package com.altamiracorp.bigtable.model;
+
+import java.util.Iterator;
+
+public final class CloseableIterables {
+    private CloseableIterables() {
+    }
+
+    /**
+     * @return the iterable as a {@link CloseableIterable} whose close does nothing, for rows that hold no
+     * resources
+     */
+    public static <T> CloseableIterable<T> of(final Iterable<T> iterable) {
+        return new CloseableIterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return iterable.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -9,15 +9,22 @@ public class Column {
 
     public Column(String name, Object value) {
         this.name = name;
-        this.value = new Value(value);
+        this.value = toValue(value);
     }
 
     public Column(String name, Object value, String visibility) {
         this.name = name;
-        this.value = new Value(value);
+        this.value = toValue(value);
         this.visibility = visibility;
     }
 
+    private static Value toValue(Object value) {
+        if (value instanceof Value) {
+            return (Value) value;
+        }
+        return new Value(value);
+    }
+
     public String getName() {
         return name;
     }
@@ -4,17 +4,21 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 
 public class ColumnFamily {
     private final String columnFamilyName;
-    private final HashMap<String, Column> columns = new HashMap<String, Column>();
+    private HashMap<String, Column> columns;
 
     public ColumnFamily(String columnFamilyName) {
         this.columnFamilyName = columnFamilyName;
     }
 
     public void addColumn(Column column) {
+        if (this.columns == null) {
+            this.columns = new HashMap<String, Column>();
+        }
         this.columns.put(column.getName(), column);
         column.setDirty(true);
     }
@@ -27,7 +31,7 @@ public class ColumnFamily {
     }
 
     public Value get(String columnName) {
-        Column column = this.columns.get(columnName);
+        Column column = getColumn(columnName);
         if (column == null) {
             return null;
         }
@@ -35,11 +39,10 @@ public class ColumnFamily {
     }
 
     public Column getColumn (String columnName) {
-        Column column = this.columns.get(columnName);
-        if (column == null) {
+        if (this.columns == null) {
             return null;
         }
-        return column;
+        return this.columns.get(columnName);
     }
 
     public ColumnFamily set(String columnName, Object value) {
@@ -57,6 +60,9 @@ public class ColumnFamily {
     }
 
     public Collection<Column> getColumns() {
+        if (this.columns == null) {
+            return Collections.emptyList();
+        }
         return this.columns.values();
     }
 
@@ -0,0 +1,83 @@
+package com.altamiracorp.bigtable.model;
+
+import java.util.Collection;
+
+/**
+ * Column family of a {@link CompactRow}, a range of the cells of the row. Values read by column name are
+ * views of the buffer of the row. The columns are only created once a column is requested, the column
+ * family is modified or all of its columns are listed.
+ */
+class CompactColumnFamily extends ColumnFamily {
+    private CompactRow.Cells cells;
+    private final int start;
+    private final int end;
+
+    CompactColumnFamily(String columnFamilyName, CompactRow.Cells cells, int start, int end) {
+        super(columnFamilyName);
+        this.cells = cells;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return true if the columns were not created yet, so the column family cannot have been modified
+     */
+    boolean isCompact() {
+        return cells != null;
+    }
+
+    /**
+     * Copies the cells to the map of {@link ColumnFamily}
+     */
+    private void materialize() {
+        CompactRow.Cells compactCells = cells;
+        if (compactCells == null) {
+            return;
+        }
+        cells = null;
+        for (int cell = start; cell < end; cell++) {
+            Column column = compactCells.createColumn(cell);
+            super.addColumn(column);
+            column.setDirty(false);
+        }
+    }
+
+    @Override
+    public void addColumn(Column column) {
+        materialize();
+        super.addColumn(column);
+    }
+
+    @Override
+    public Value get(String columnName) {
+        CompactRow.Cells compactCells = cells;
+        if (compactCells == null) {
+            return super.get(columnName);
+        }
+        int cell = compactCells.find(columnName.getBytes(CompactRow.UTF_8), start, end);
+        if (cell < 0) {
+            return null;
+        }
+        return compactCells.getValue(cell);
+    }
+
+    @Override
+    public Column getColumn(String columnName) {
+        materialize();
+        return super.getColumn(columnName);
+    }
+
+    @Override
+    public Collection<Column> getColumns() {
+        materialize();
+        return super.getColumns();
+    }
+
+    @Override
+    public void setDirtyBit(boolean val) {
+        if (val || cells == null) {
+            materialize();
+            super.setDirtyBit(val);
+        }
+    }
+}
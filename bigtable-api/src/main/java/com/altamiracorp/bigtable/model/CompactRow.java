@@ -0,0 +1,380 @@
+package com.altamiracorp.bigtable.model;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Row read from storage that keeps its cells in flat arrays sorted by column family and column name,
+ * referencing a single byte buffer, instead of a map of column families holding a map of columns.
+ * Column families requested through {@link #get(String)} and columns read through
+ * {@link ColumnFamily#get(String)} are found with a binary search of the buffer, and values are views of the
+ * buffer rather than copies. A column family is only decoded when it is first requested, so consumers that
+ * read a few column families of a wide row never pay for the others. The maps of {@link Row} and
+ * {@link ColumnFamily} are only created once the row or a column family is modified or its columns are
+ * listed.
+ * <p/>
+ * Rows are created with a {@link Builder} from cells in storage order.
+ */
+public class CompactRow extends Row<RowKey> {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Cells cells;
+    private CompactColumnFamily[] columnFamilies;
+
+    private CompactRow(String tableName, RowKey rowKey, Cells cells) {
+        super(tableName, rowKey);
+        this.cells = cells;
+        this.columnFamilies = new CompactColumnFamily[cells.getColumnFamilyCount()];
+    }
+
+    private CompactColumnFamily getColumnFamily(int index) {
+        CompactColumnFamily columnFamily = columnFamilies[index];
+        if (columnFamily == null) {
+            columnFamily = cells.createColumnFamily(index);
+            columnFamilies[index] = columnFamily;
+        }
+        return columnFamily;
+    }
+
+    /**
+     * Copies the compact column families to the maps of {@link Row}
+     */
+    private void materialize() {
+        if (cells == null) {
+            return;
+        }
+        for (int i = 0; i < columnFamilies.length; i++) {
+            super.addColumnFamily(getColumnFamily(i));
+        }
+        cells = null;
+        columnFamilies = null;
+    }
+
+    @Override
+    public void addColumnFamily(ColumnFamily columnFamily) {
+        materialize();
+        super.addColumnFamily(columnFamily);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends ColumnFamily> T get(String columnFamilyName) {
+        if (cells == null) {
+            return super.get(columnFamilyName);
+        }
+        int index = cells.findColumnFamily(columnFamilyName.getBytes(UTF_8));
+        if (index < 0) {
+            return null;
+        }
+        return (T) getColumnFamily(index);
+    }
+
+    @Override
+    public Collection<ColumnFamily> getColumnFamilies() {
+        if (cells == null) {
+            return super.getColumnFamilies();
+        }
+        for (int i = 0; i < columnFamilies.length; i++) {
+            getColumnFamily(i);
+        }
+        return Collections.<ColumnFamily>unmodifiableList(Arrays.<ColumnFamily>asList(columnFamilies));
+    }
+
+    /**
+     * @return true if neither the row nor the column families read from it were modified since it was built,
+     * so that its cells still describe it completely
+     */
+    public boolean isCompact() {
+        if (cells == null) {
+            return false;
+        }
+        for (CompactColumnFamily columnFamily : columnFamilies) {
+            if (columnFamily != null && !columnFamily.isCompact()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes of the column family names and of the names, visibilities and values of
+     * the cells, without decoding them, or -1 if the row is no longer compact
+     */
+    public int getEncodedSize() {
+        return isCompact() ? cells.getDataLength() : -1;
+    }
+
+    /**
+     * @return a row sharing the cells of this row, which may be modified without affecting this row
+     * @throws IllegalStateException if the row is no longer compact
+     */
+    public CompactRow copy() {
+        if (!isCompact()) {
+            throw new IllegalStateException("Row was modified: " + getRowKey());
+        }
+        return new CompactRow(getTableName(), getRowKey(), cells);
+    }
+
+    /**
+     * The cells of a compact row are never dirty, so clearing the dirty bits only visits the column
+     * families that were already decoded
+     */
+    @Override
+    public void setDirtyBits(boolean val) {
+        if (cells == null || val) {
+            super.setDirtyBits(val);
+            return;
+        }
+        for (CompactColumnFamily columnFamily : columnFamilies) {
+            if (columnFamily != null) {
+                columnFamily.setDirtyBit(false);
+            }
+        }
+    }
+
+    /**
+     * Collects the cells of a row in storage order: sorted by column family and column name, as returned by
+     * an Accumulo scanner. Cells are copied into a single buffer as they are added. A later cell with the
+     * same column family and name replaces the earlier one. Cells added out of order are supported, but
+     * produce a regular {@link Row}.
+     */
+    public static class Builder {
+        private static final int CELL_SIZE = 6;
+        private static final int COLUMN_FAMILY_SIZE = 3;
+
+        private final String tableName;
+        private final RowKey rowKey;
+        private byte[] data = new byte[256];
+        private int dataLength;
+        private int[] cells = new int[CELL_SIZE * 8];
+        private int cellCount;
+        private int[] columnFamilies = new int[COLUMN_FAMILY_SIZE * 2];
+        private int columnFamilyCount;
+        private boolean sorted = true;
+
+        public Builder(String tableName, RowKey rowKey) {
+            this.tableName = tableName;
+            this.rowKey = rowKey;
+        }
+
+        public Builder add(String columnFamily, String columnName, String visibility, byte[] value) {
+            byte[] columnFamilyBytes = columnFamily.getBytes(UTF_8);
+            byte[] columnNameBytes = columnName.getBytes(UTF_8);
+            byte[] visibilityBytes = visibility == null ? new byte[0] : visibility.getBytes(UTF_8);
+            return add(columnFamilyBytes, 0, columnFamilyBytes.length,
+                    columnNameBytes, 0, columnNameBytes.length,
+                    visibilityBytes, 0, visibilityBytes.length,
+                    value, 0, value.length);
+        }
+
+        /**
+         * Adds a cell from slices of byte arrays, which are copied and may be reused by the caller
+         */
+        public Builder add(byte[] columnFamily, int columnFamilyOffset, int columnFamilyLength,
+                           byte[] columnName, int columnNameOffset, int columnNameLength,
+                           byte[] visibility, int visibilityOffset, int visibilityLength,
+                           byte[] value, int valueOffset, int valueLength) {
+            int lastColumnFamily = (columnFamilyCount - 1) * COLUMN_FAMILY_SIZE;
+            int familyCompare = columnFamilyCount == 0 ? 1 : compare(columnFamily, columnFamilyOffset, columnFamilyLength, data, columnFamilies[lastColumnFamily], columnFamilies[lastColumnFamily + 1]);
+            if (familyCompare != 0) {
+                if (familyCompare < 0) {
+                    sorted = false;
+                }
+                if (columnFamilyCount * COLUMN_FAMILY_SIZE == columnFamilies.length) {
+                    columnFamilies = Arrays.copyOf(columnFamilies, columnFamilies.length * 2);
+                }
+                int family = columnFamilyCount * COLUMN_FAMILY_SIZE;
+                columnFamilies[family] = append(columnFamily, columnFamilyOffset, columnFamilyLength);
+                columnFamilies[family + 1] = columnFamilyLength;
+                columnFamilies[family + 2] = cellCount;
+                columnFamilyCount++;
+            } else if (cellCount > columnFamilies[lastColumnFamily + 2]) {
+                int last = (cellCount - 1) * CELL_SIZE;
+                int nameCompare = compare(columnName, columnNameOffset, columnNameLength, data, cells[last], cells[last + 1]);
+                if (nameCompare == 0) {
+                    cellCount--;
+                } else if (nameCompare < 0) {
+                    sorted = false;
+                }
+            }
+
+            if (cellCount * CELL_SIZE == cells.length) {
+                cells = Arrays.copyOf(cells, cells.length * 2);
+            }
+            int cell = cellCount * CELL_SIZE;
+            cells[cell] = append(columnName, columnNameOffset, columnNameLength);
+            cells[cell + 1] = columnNameLength;
+            cells[cell + 2] = append(visibility, visibilityOffset, visibilityLength);
+            cells[cell + 3] = visibilityLength;
+            cells[cell + 4] = append(value, valueOffset, valueLength);
+            cells[cell + 5] = valueLength;
+            cellCount++;
+            return this;
+        }
+
+        private int append(byte[] bytes, int offset, int length) {
+            if (dataLength + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + length));
+            }
+            System.arraycopy(bytes, offset, data, dataLength, length);
+            int start = dataLength;
+            dataLength += length;
+            return start;
+        }
+
+        /**
+         * @return the row, or <code>null</code> if no cells were added
+         */
+        public Row build() {
+            if (cellCount == 0) {
+                return null;
+            }
+            Cells rowCells = new Cells(
+                    Arrays.copyOf(data, dataLength),
+                    Arrays.copyOf(cells, cellCount * CELL_SIZE),
+                    Arrays.copyOf(columnFamilies, columnFamilyCount * COLUMN_FAMILY_SIZE));
+            if (!sorted) {
+                return buildRow(rowCells);
+            }
+            return new CompactRow(tableName, rowKey, rowCells);
+        }
+
+        private Row buildRow(Cells rowCells) {
+            Row row = new Row<RowKey>(tableName, rowKey);
+            for (int i = 0; i < rowCells.getColumnFamilyCount(); i++) {
+                String columnFamilyName = rowCells.getColumnFamilyName(i);
+                ColumnFamily columnFamily = row.get(columnFamilyName);
+                if (columnFamily == null) {
+                    columnFamily = new ColumnFamily(columnFamilyName);
+                    row.addColumnFamily(columnFamily);
+                }
+                for (int cell = rowCells.getStart(i); cell < rowCells.getEnd(i); cell++) {
+                    columnFamily.addColumn(rowCells.createColumn(cell));
+                }
+            }
+            row.setDirtyBits(false);
+            return row;
+        }
+    }
+
+    /**
+     * Compares byte arrays as unsigned bytes, the order of Accumulo keys
+     */
+    static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            int result = (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * The buffer of a row with the offsets and lengths of the names of its column families and of the
+     * name, visibility and value of every cell
+     */
+    static class Cells {
+        private final byte[] data;
+        private final int[] cells;
+        private final int[] columnFamilies;
+
+        Cells(byte[] data, int[] cells, int[] columnFamilies) {
+            this.data = data;
+            this.cells = cells;
+            this.columnFamilies = columnFamilies;
+        }
+
+        int getDataLength() {
+            return data.length;
+        }
+
+        int getColumnFamilyCount() {
+            return columnFamilies.length / Builder.COLUMN_FAMILY_SIZE;
+        }
+
+        String getColumnFamilyName(int index) {
+            int family = index * Builder.COLUMN_FAMILY_SIZE;
+            return new String(data, columnFamilies[family], columnFamilies[family + 1], UTF_8);
+        }
+
+        int getStart(int index) {
+            return columnFamilies[index * Builder.COLUMN_FAMILY_SIZE + 2];
+        }
+
+        int getEnd(int index) {
+            if (index + 1 < getColumnFamilyCount()) {
+                return getStart(index + 1);
+            }
+            return cells.length / Builder.CELL_SIZE;
+        }
+
+        CompactColumnFamily createColumnFamily(int index) {
+            return new CompactColumnFamily(getColumnFamilyName(index), this, getStart(index), getEnd(index));
+        }
+
+        /**
+         * @return the index of the column family with the name, or -1
+         */
+        int findColumnFamily(byte[] name) {
+            int low = 0;
+            int high = getColumnFamilyCount() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int family = mid * Builder.COLUMN_FAMILY_SIZE;
+                int result = compare(data, columnFamilies[family], columnFamilies[family + 1], name, 0, name.length);
+                if (result < 0) {
+                    low = mid + 1;
+                } else if (result > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the index of the cell with the name between start (inclusive) and end (exclusive), or -1
+         */
+        int find(byte[] name, int start, int end) {
+            int low = start;
+            int high = end - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cell = mid * Builder.CELL_SIZE;
+                int result = compare(data, cells[cell], cells[cell + 1], name, 0, name.length);
+                if (result < 0) {
+                    low = mid + 1;
+                } else if (result > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        String getName(int cell) {
+            return new String(data, cells[cell * Builder.CELL_SIZE], cells[cell * Builder.CELL_SIZE + 1], UTF_8);
+        }
+
+        String getVisibility(int cell) {
+            return new String(data, cells[cell * Builder.CELL_SIZE + 2], cells[cell * Builder.CELL_SIZE + 3], UTF_8);
+        }
+
+        /**
+         * @return a view of the value in the buffer of the row
+         */
+        Value getValue(int cell) {
+            return new Value(data, cells[cell * Builder.CELL_SIZE + 4], cells[cell * Builder.CELL_SIZE + 5]);
+        }
+
+        Column createColumn(int cell) {
+            return new Column(getName(cell), getValue(cell), getVisibility(cell));
+        }
+    }
+}
@@ -4,10 +4,22 @@ package com.altamiracorp.bigtable.model;
 import com.altamiracorp.bigtable.model.user.ModelUserContext;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.regex.Pattern;
 
+/**
+ * In-memory session for tests and local development. Each table is a sorted map of row key to row, so
+ * point and range lookups are O(log n), and saves merge into the stored row like they do in Accumulo.
+ * Stored rows are never modified in place; every save replaces the row with a merged copy, and reads
+ * return copies, so concurrent readers and writers are safe.
+ */
 public class MockSession extends ModelSession {
-    public HashMap<String, List<Row>> tables = new HashMap<String, List<Row>>();
+    private static final ModelUserContext MOCK_USER_CONTEXT = new MockModelUserContext();
+
+    public final ConcurrentMap<String, ConcurrentNavigableMap<String, Row>> tables = new ConcurrentHashMap<String, ConcurrentNavigableMap<String, Row>>();
 
     @Override
     public void init(Map<String, Object> properties) {
@@ -15,11 +27,65 @@ public class MockSession extends ModelSession {
 
     @Override
     public void save(Row row, FlushFlag flushFlag) {
-        List<Row> table = tables.get(row.getTableName());
+        ConcurrentNavigableMap<String, Row> table = tables.get(row.getTableName());
         if (table == null) {
             throw new NullPointerException("Could not find table with name: " + row.getTableName());
         }
-        table.add(row);
+        String rowKey = row.getRowKey().toString();
+        while (true) {
+            Row existingRow = table.get(rowKey);
+            Row mergedRow = mergeRow(existingRow, row);
+            if (existingRow == null) {
+                if (mergedRow == null || table.putIfAbsent(rowKey, mergedRow) == null) {
+                    return;
+                }
+            } else if (mergedRow == null ? table.remove(rowKey, existingRow) : table.replace(rowKey, existingRow, mergedRow)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies the dirty and deleted columns of the row to a copy of the existing row, the same columns
+     * Accumulo would write. Returns <code>null</code> if the resulting row has no columns.
+     */
+    private Row mergeRow(Row existingRow, Row row) {
+        Map<String, Map<String, Column>> columnFamilies = new HashMap<String, Map<String, Column>>();
+        if (existingRow != null) {
+            for (ColumnFamily columnFamily : (Collection<ColumnFamily>) existingRow.getColumnFamilies()) {
+                Map<String, Column> columns = new HashMap<String, Column>();
+                for (Column column : columnFamily.getColumns()) {
+                    columns.put(column.getName(), column);
+                }
+                columnFamilies.put(columnFamily.getColumnFamilyName(), columns);
+            }
+        }
+        for (ColumnFamily columnFamily : (Collection<ColumnFamily>) row.getColumnFamilies()) {
+            Map<String, Column> columns = columnFamilies.get(columnFamily.getColumnFamilyName());
+            if (columns == null) {
+                columns = new HashMap<String, Column>();
+                columnFamilies.put(columnFamily.getColumnFamilyName(), columns);
+            }
+            for (Column column : columnFamily.getColumns()) {
+                if (column.isDelete()) {
+                    columns.remove(column.getName());
+                } else if (column.isDirty()) {
+                    columns.put(column.getName(), new Column(column.getName(), column.getValue(), column.getVisibility()));
+                }
+            }
+        }
+
+        Row mergedRow = new Row(row.getTableName(), row.getRowKey());
+        for (Map.Entry<String, Map<String, Column>> columns : columnFamilies.entrySet()) {
+            if (columns.getValue().size() > 0) {
+                mergedRow.addColumnFamily(new ColumnFamily(columns.getKey()).addColumns(columns.getValue().values()));
+            }
+        }
+        if (mergedRow.getColumnFamilies().size() == 0) {
+            return null;
+        }
+        mergedRow.setDirtyBits(false);
+        return mergedRow;
     }
 
     @Override
@@ -29,86 +95,187 @@ public class MockSession extends ModelSession {
         }
     }
 
-    @Override
-    public Iterable<Row> findByRowKeyRange(String tableName, String keyStart, String keyEnd, ModelUserContext user) {
-        List<Row> rows = this.tables.get(tableName);
-        ArrayList<Row> results = new ArrayList<Row>();
+    private ConcurrentNavigableMap<String, Row> getTable(String tableName) {
+        ConcurrentNavigableMap<String, Row> table = this.tables.get(tableName);
+        if (table == null) {
+            throw new RuntimeException("Unable to find table " + tableName + ". Did you remember to call initializeTable() in Session.initialieTables()?");
+        }
+        return table;
+    }
+
+    private ConcurrentNavigableMap<String, Row> getTableRange(String tableName, RowKeyRange range) {
+        ConcurrentNavigableMap<String, Row> table = getTable(tableName);
+        String start = range.getStart();
+        String end = range.isPrefix() ? followingPrefix(range.getPrefix()) : range.getEnd();
+        if (start == null && end == null) {
+            return table;
+        }
+        if (start == null) {
+            return table.headMap(end, false);
+        }
+        if (end == null) {
+            return table.tailMap(start, true);
+        }
+        if (start.compareTo(end) > 0) {
+            return new ConcurrentSkipListMap<String, Row>();
+        }
+        return table.subMap(start, true, end, false);
+    }
+
+    /**
+     * @return the first string that sorts after every string starting with the prefix, or
+     * <code>null</code> if there is none
+     */
+    private static String followingPrefix(String prefix) {
+        int i = prefix.length() - 1;
+        while (i >= 0 && prefix.charAt(i) == Character.MAX_VALUE) {
+            i--;
+        }
+        if (i < 0) {
+            return null;
+        }
+        return prefix.substring(0, i) + (char) (prefix.charAt(i) + 1);
+    }
+
+    /**
+     * Copies and projects the rows in order, stopping once the limit in the scan options is reached
+     */
+    private List<Row> scanRows(Iterable<Row> rows, ScanOptions scanOptions) {
+        List<Row> results = new ArrayList<Row>();
         for (Row row : rows) {
-            String rowKey = row.getRowKey().toString();
-            if (rowKey.compareTo(keyStart) >= 0 && rowKey.compareTo(keyEnd) < 0) {
-                results.add(row);
+            if (scanOptions.getLimit() > 0 && results.size() >= scanOptions.getLimit()) {
+                break;
+            }
+            Row projectedRow = projectRow(row, scanOptions.getColumnsToReturn());
+            if (projectedRow != null) {
+                results.add(projectedRow);
             }
         }
-        Collections.sort(results, new RowKeyComparator());
         return results;
     }
 
     @Override
-    public Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, ModelUserContext user) {
-        List<Row> rows = this.tables.get(tableName);
-        ArrayList<Row> results = new ArrayList<Row>();
-        for (Row row : rows) {
-            String rowKey = row.getRowKey().toString();
-            if (rowKey.startsWith(rowKeyPrefix)) {
-                results.add(row);
-            }
+    public Iterable<Row> findByRowKeyRange(String tableName, String keyStart, String keyEnd, ScanOptions scanOptions, ModelUserContext user) {
+        return scanRows(getTableRange(tableName, new RowKeyRange(keyStart, keyEnd)).values(), scanOptions);
+    }
+
+    @Override
+    public Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, ScanOptions scanOptions, ModelUserContext user) {
+        return scanRows(getTableRange(tableName, RowKeyRange.prefix(rowKeyPrefix)).values(), scanOptions);
+    }
+
+    @Override
+    public CloseableIterable<Row> findByRowKeyRanges(String tableName, Collection<RowKeyRange> ranges, ScanOptions scanOptions, ModelUserContext user, int threads) {
+        Map<String, Row> rows = new LinkedHashMap<String, Row>();
+        for (RowKeyRange range : ranges) {
+            rows.putAll(getTableRange(tableName, range));
         }
-        Collections.sort(results, new RowKeyComparator());
-        return results;
+        return CloseableIterables.of(scanRows(rows.values(), scanOptions));
     }
 
     @Override
-    public Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, ModelUserContext user) {
-        List<Row> rows = this.tables.get(tableName);
-        if (rows == null) {
-            throw new RuntimeException("Unable to find table " + tableName + ". Did you remember to call initializeTable() in Session.initialieTables()?");
+    public Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, ScanOptions scanOptions, ModelUserContext user) {
+        Pattern pattern = Pattern.compile(rowKeyRegex);
+        List<Row> rows = new ArrayList<Row>();
+        for (Map.Entry<String, Row> row : getTable(tableName).entrySet()) {
+            if (pattern.matcher(row.getKey()).matches()) {
+                rows.add(row.getValue());
+            }
         }
+        return scanRows(rows, scanOptions);
+    }
 
-        List<Row> result = new ArrayList<Row>();
-        for (Row row : rows) {
-            if (!Pattern.matches(rowKeyRegex, row.getRowKey().toString())) {
-                result.add(row);
+    @Override
+    public Iterable<Row> findAll(String tableName, ScanOptions scanOptions, ModelUserContext user) {
+        return scanRows(getTable(tableName).values(), scanOptions);
+    }
+
+    /**
+     * Returns a copy of the row with only the requested columns, or every column if columnsToReturn is
+     * <code>null</code>. Returns <code>null</code> if none of the requested columns are in the row.
+     */
+    private Row projectRow(Row row, Map<String, String> columnsToReturn) {
+        Row result = new Row(row.getTableName(), row.getRowKey());
+        for (ColumnFamily columnFamily : (Collection<ColumnFamily>) row.getColumnFamilies()) {
+            String columnsInFamily = columnsToReturn == null ? "*" : columnsToReturn.get(columnFamily.getColumnFamilyName());
+            if (columnsInFamily == null) {
+                continue;
+            }
+            ColumnFamily resultColumnFamily = new ColumnFamily(columnFamily.getColumnFamilyName());
+            for (Column column : columnFamily.getColumns()) {
+                if (columnsInFamily.equals("*") || columnsInFamily.equals(column.getName())) {
+                    resultColumnFamily.addColumn(new Column(column.getName(), column.getValue(), column.getVisibility()));
+                }
             }
+            if (resultColumnFamily.getColumns().size() > 0) {
+                result.addColumnFamily(resultColumnFamily);
+            }
+        }
+        if (result.getColumnFamilies().size() == 0) {
+            return null;
         }
+        result.setDirtyBits(false);
         return result;
     }
 
     @Override
-    public Iterable<Row> findAll(String tableName, ModelUserContext user) {
-        return this.tables.get(tableName);
+    public long rowCount(String tableName, ModelUserContext user) {
+        return getTable(tableName).size();
     }
 
     @Override
-    public long rowCount(String tableName, ModelUserContext user) {
-        List<Row> rows = this.tables.get(tableName);
-        if (rows == null) {
-            throw new RuntimeException("Unable to find table " + tableName + ". Did you remember to call initializeTable() in Session.initialieTables()?");
-        }
-        return rows.size();
+    public long rowCount(String tableName, RowKeyRange range, ModelUserContext user) {
+        return getTableRange(tableName, range).size();
     }
 
     @Override
-    public Row findByRowKey(String tableName, String rowKey, ModelUserContext user) {
-        List<Row> rows = this.tables.get(tableName);
-        if (rows == null) {
-            throw new RuntimeException("Unable to find table " + tableName + ". Did you remember to call initializeTable() in Session.initialieTables()?");
-        }
-        for (Row row : rows) {
-            if (row.getRowKey().toString().equals(rowKey)) {
-                return row;
+    public TableStats estimateStats(String tableName, RowKeyRange range) {
+        Map<String, Row> rows = range == null ? getTable(tableName) : getTableRange(tableName, range);
+        long rowCount = 0;
+        long entries = 0;
+        long bytes = 0;
+        for (Row row : rows.values()) {
+            String rowKey = row.getRowKey().toString();
+            rowCount++;
+            for (ColumnFamily columnFamily : (Collection<ColumnFamily>) row.getColumnFamilies()) {
+                for (Column column : columnFamily.getColumns()) {
+                    entries++;
+                    bytes += rowKey.length() + columnFamily.getColumnFamilyName().length() + column.getName().length() + column.getValue().length();
+                }
             }
         }
-        return null;
+        return new TableStats(rowCount, entries, bytes, 1, true);
+    }
+
+    @Override
+    public Row findByRowKey(String tableName, String rowKey, ModelUserContext user) {
+        return findByRowKey(tableName, rowKey, null, user);
     }
 
     @Override
     public Row findByRowKey(String tableName, String rowKey, Map<String, String> columnsToReturn, ModelUserContext user) {
-        return findByRowKey(tableName, rowKey, user);
+        Row row = getTable(tableName).get(rowKey);
+        if (row == null) {
+            return null;
+        }
+        return projectRow(row, columnsToReturn);
+    }
+
+    @Override
+    public Map<String, Row> findByRowKeys(String tableName, Collection<String> rowKeys, Map<String, String> columnsToReturn, ModelUserContext user) {
+        Map<String, Row> results = new LinkedHashMap<String, Row>();
+        for (String rowKey : rowKeys) {
+            Row row = findByRowKey(tableName, rowKey, columnsToReturn, user);
+            if (row != null) {
+                results.put(rowKey, row);
+            }
+        }
+        return results;
     }
 
     @Override
     public void initializeTable(String tableName, ModelUserContext user) {
-        this.tables.put(tableName, new ArrayList<Row>());
+        this.tables.put(tableName, new ConcurrentSkipListMap<String, Row>());
     }
 
     @Override
@@ -117,31 +284,36 @@ public class MockSession extends ModelSession {
     }
 
     @Override
-    public void deleteRow(String tableName, RowKey rowKey) {
-        String rowKeyStr = rowKey.toString();
-        List<Row> rows = this.tables.get(tableName);
-        for (int i = 0; i < rows.size(); i++) {
-            if (rowKeyStr.equals(rows.get(i).getRowKey().toString())) {
-                rows.remove(i);
-                return;
-            }
+    public void deleteRows(String tableName, Collection<RowKey> rowKeys, FlushFlag flushFlag) {
+        for (RowKey rowKey : rowKeys) {
+            deleteRow(tableName, rowKey, flushFlag);
         }
     }
 
+    @Override
+    public void deleteRange(String tableName, String rowKeyStart, String rowKeyEnd) {
+        getTableRange(tableName, new RowKeyRange(rowKeyStart, rowKeyEnd)).clear();
+    }
+
+    @Override
+    public void deleteByPrefix(String tableName, String rowKeyPrefix) {
+        getTableRange(tableName, RowKeyRange.prefix(rowKeyPrefix)).clear();
+    }
+
+    @Override
+    public void deleteRow(String tableName, RowKey rowKey, FlushFlag flushFlag) {
+        getTable(tableName).remove(rowKey.toString());
+    }
+
     @Override
     public void deleteColumn(Row row, String tableName, String columnFamily, String columnQualifier, String columnVisibility) {
-        List<ColumnFamily> columnFamilies = (List<ColumnFamily>) row.getColumnFamilies();
-        for (int i = 0; i < columnFamilies.size(); i++) {
-            if (columnFamilies.get(i).getColumnFamilyName().equals(columnFamily)) {
-                List<Column> columns = (List<Column>) columnFamilies.get(i).getColumns();
-                for (int j = 0; j < columns.size(); j++) {
-                    if (columns.get(j).getName().equals(columnQualifier) && columns.get(j).getVisibility().equals(columnVisibility)) {
-                        columns.remove(j);
-                        return;
-                    }
-                }
-            }
-        }
+        Column column = new Column(columnQualifier, new byte[0], columnVisibility);
+        column.setDelete(true);
+        ColumnFamily deleteColumnFamily = new ColumnFamily(columnFamily);
+        deleteColumnFamily.addColumn(column);
+        Row deleteRow = new Row(tableName, row.getRowKey());
+        deleteRow.addColumnFamily(deleteColumnFamily);
+        save(deleteRow);
     }
 
     @Override
@@ -160,27 +332,52 @@ public class MockSession extends ModelSession {
 
     @Override
     public ModelUserContext createModelUserContext(String... authorizations) {
-        return new MockModelUserContext();
+        return MOCK_USER_CONTEXT;
     }
 
     @Override
-    public void alterColumnsVisibility (Row row, String matchVisibility, String newVisibility, FlushFlag flushFlag) {
-        String tableName = row.getTableName();
-        Row copyRow = new Row (tableName, row.getRowKey());
-        List<ColumnFamily> columnFamilies = (List<ColumnFamily>) row.getColumnFamilies();
-        for (ColumnFamily columnFamily : columnFamilies) {
-            ColumnFamily copyColumnFamily = new ColumnFamily(columnFamily.getColumnFamilyName());
+    public void alterColumnsVisibility(Row row, String matchVisibility, String newVisibility, FlushFlag flushFlag) {
+        Row alteredRow = alterColumnsVisibility(row, matchVisibility, newVisibility);
+        if (alteredRow != null) {
+            save(alteredRow, flushFlag);
+        }
+    }
+
+    @Override
+    public long alterColumnsVisibility(String tableName, RowKeyRange range, String matchVisibility, String newVisibility) {
+        long count = 0;
+        for (Row row : getTableRange(tableName, range).values()) {
+            Row alteredRow = alterColumnsVisibility(row, matchVisibility, newVisibility);
+            if (alteredRow != null) {
+                save(alteredRow);
+                for (ColumnFamily columnFamily : (Collection<ColumnFamily>) alteredRow.getColumnFamilies()) {
+                    count += columnFamily.getColumns().size();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return a row with the matching columns of the row with the new visibility, or <code>null</code> if
+     * no columns match
+     */
+    private static Row alterColumnsVisibility(Row row, String matchVisibility, String newVisibility) {
+        Row alteredRow = new Row(row.getTableName(), row.getRowKey());
+        for (ColumnFamily columnFamily : (Collection<ColumnFamily>) row.getColumnFamilies()) {
+            ColumnFamily alteredColumnFamily = new ColumnFamily(columnFamily.getColumnFamilyName());
             for (Column column : columnFamily.getColumns()) {
-                if (column.getVisibility().equals(matchVisibility)) {
-                    Column copyColumn = new Column(column.getName(), column.getValue(), newVisibility);
-                    copyColumnFamily.addColumn(copyColumn);
-                } else {
-                    copyColumnFamily.addColumn(column);
+                if (matchVisibility.equals(column.getVisibility())) {
+                    alteredColumnFamily.addColumn(new Column(column.getName(), column.getValue(), newVisibility));
                 }
             }
-            copyRow.addColumnFamily(copyColumnFamily);
+            if (alteredColumnFamily.getColumns().size() > 0) {
+                alteredRow.addColumnFamily(alteredColumnFamily);
+            }
+        }
+        if (alteredRow.getColumnFamilies().size() == 0) {
+            return null;
         }
-        deleteRow(tableName, row.getRowKey());
-        save(copyRow, flushFlag);
+        return alteredRow;
     }
 }
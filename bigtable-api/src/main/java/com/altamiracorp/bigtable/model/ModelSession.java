@@ -1,16 +1,37 @@
 package com.altamiracorp.bigtable.model;
 
+import com.altamiracorp.bigtable.model.metrics.SessionMetrics;
 import com.altamiracorp.bigtable.model.user.ModelUserContext;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 public abstract class ModelSession {
     protected static final String CONFIG_AUTOFLUSH = "bigtable.autoflush";
+    private volatile SessionMetrics sessionMetrics;
 
     public abstract void init(Map<String, Object> properties);
 
+    /**
+     * Sets the metrics that the implementation records its internal events to, like the flushes of its
+     * write buffers. Operation latencies are recorded by wrapping the session in a
+     * {@link com.altamiracorp.bigtable.model.metrics.MetricsModelSession}.
+     *
+     * @param sessionMetrics
+     */
+    public void setSessionMetrics(SessionMetrics sessionMetrics) {
+        this.sessionMetrics = sessionMetrics;
+    }
+
+    /**
+     * @return the metrics to record internal events to or <code>null</code> if metrics are disabled
+     */
+    public SessionMetrics getSessionMetrics() {
+        return sessionMetrics;
+    }
+
     /**
      * Save a row
      *
@@ -36,6 +57,44 @@ public abstract class ModelSession {
      */
     public abstract void saveMany(String tableName, Collection<Row> rows);
 
+    /**
+     * Save a row without waiting for it to be written. The default implementation writes the row
+     * synchronously; implementations with write buffers should group the flushes of concurrent writers.
+     *
+     * @param row
+     * @return a future that completes when the row has been flushed to storage
+     */
+    public Future<Void> saveAsync(Row row) {
+        try {
+            save(row, FlushFlag.FLUSH);
+            return WriteFuture.completed();
+        } catch (RuntimeException e) {
+            WriteFuture future = new WriteFuture();
+            future.fail(e);
+            return future;
+        }
+    }
+
+    /**
+     * Save a collection of rows without waiting for them to be written.
+     *
+     * @param tableName
+     * @param rows
+     * @return a future that completes when all of the rows have been flushed to storage
+     * @see #saveAsync(Row)
+     */
+    public Future<Void> saveManyAsync(String tableName, Collection<Row> rows) {
+        try {
+            saveMany(tableName, rows);
+            flush();
+            return WriteFuture.completed();
+        } catch (RuntimeException e) {
+            WriteFuture future = new WriteFuture();
+            future.fail(e);
+            return future;
+        }
+    }
+
     /**
      * Find rows in a range of specified row keys
      *
@@ -45,7 +104,36 @@ public abstract class ModelSession {
      * @param user
      * @return
      */
-    public abstract Iterable<Row> findByRowKeyRange(String tableName, String keyStart, String keyEnd, ModelUserContext user);
+    public Iterable<Row> findByRowKeyRange(String tableName, String keyStart, String keyEnd, ModelUserContext user) {
+        return findByRowKeyRange(tableName, keyStart, keyEnd, new ScanOptions(), user);
+    }
+
+    /**
+     * Find rows in a range of specified row keys, with only the columns specified
+     *
+     * @param tableName
+     * @param keyStart
+     * @param keyEnd
+     * @param columnsToReturn map of column family to column qualifier, or "*" for every column in the family.
+     *                        <code>null</code> returns every column
+     * @param user
+     * @return
+     */
+    public Iterable<Row> findByRowKeyRange(String tableName, String keyStart, String keyEnd, Map<String, String> columnsToReturn, ModelUserContext user) {
+        return findByRowKeyRange(tableName, keyStart, keyEnd, new ScanOptions().setColumnsToReturn(columnsToReturn), user);
+    }
+
+    /**
+     * Find rows in a range of specified row keys
+     *
+     * @param tableName
+     * @param keyStart
+     * @param keyEnd
+     * @param scanOptions
+     * @param user
+     * @return
+     */
+    public abstract Iterable<Row> findByRowKeyRange(String tableName, String keyStart, String keyEnd, ScanOptions scanOptions, ModelUserContext user);
 
     /**
      * Find rows based on the prefix of the row keys
@@ -55,7 +143,76 @@ public abstract class ModelSession {
      * @param user
      * @return
      */
-    public abstract Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, ModelUserContext user);
+    public Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, ModelUserContext user) {
+        return findByRowStartsWith(tableName, rowKeyPrefix, new ScanOptions(), user);
+    }
+
+    /**
+     * Find rows based on the prefix of the row keys, with only the columns specified
+     *
+     * @param tableName
+     * @param rowKeyPrefix
+     * @param columnsToReturn see {@link #findByRowKeyRange(String, String, String, Map, ModelUserContext)}
+     * @param user
+     * @return
+     */
+    public Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, Map<String, String> columnsToReturn, ModelUserContext user) {
+        return findByRowStartsWith(tableName, rowKeyPrefix, new ScanOptions().setColumnsToReturn(columnsToReturn), user);
+    }
+
+    /**
+     * Find rows based on the prefix of the row keys
+     *
+     * @param tableName
+     * @param rowKeyPrefix
+     * @param scanOptions
+     * @param user
+     * @return
+     */
+    public abstract Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, ScanOptions scanOptions, ModelUserContext user);
+
+    /**
+     * Find rows in any of the provided row key ranges. The ranges are scanned in parallel so the
+     * rows are not guaranteed to be returned in row key order.
+     *
+     * @param tableName
+     * @param ranges
+     * @param user
+     * @param threads number of threads used to scan the ranges
+     * @return
+     */
+    public CloseableIterable<Row> findByRowKeyRanges(String tableName, Collection<RowKeyRange> ranges, ModelUserContext user, int threads) {
+        return findByRowKeyRanges(tableName, ranges, new ScanOptions(), user, threads);
+    }
+
+    /**
+     * Find rows in any of the provided row key ranges, with only the columns specified
+     *
+     * @param tableName
+     * @param ranges
+     * @param columnsToReturn see {@link #findByRowKeyRange(String, String, String, Map, ModelUserContext)}
+     * @param user
+     * @param threads number of threads used to scan the ranges
+     * @return
+     */
+    public CloseableIterable<Row> findByRowKeyRanges(String tableName, Collection<RowKeyRange> ranges, Map<String, String> columnsToReturn, ModelUserContext user, int threads) {
+        return findByRowKeyRanges(tableName, ranges, new ScanOptions().setColumnsToReturn(columnsToReturn), user, threads);
+    }
+
+    /**
+     * Find rows in any of the provided row key ranges. The ranges are scanned in parallel so the
+     * rows are not guaranteed to be returned in row key order. The scan holds its threads until the rows
+     * have been iterated to the end, so callers that stop earlier must close the returned rows. The rows can
+     * only be iterated once, because the scan is released after the first pass.
+     *
+     * @param tableName
+     * @param ranges
+     * @param scanOptions
+     * @param user
+     * @param threads number of threads used to scan the ranges
+     * @return
+     */
+    public abstract CloseableIterable<Row> findByRowKeyRanges(String tableName, Collection<RowKeyRange> ranges, ScanOptions scanOptions, ModelUserContext user, int threads);
 
     /**
      * Find rows with the group of row keys that match the provided regular expression
@@ -65,12 +222,82 @@ public abstract class ModelSession {
      * @param user
      * @return
      */
-    public abstract Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, ModelUserContext user);
+    public Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, ModelUserContext user) {
+        return findByRowKeyRegex(tableName, rowKeyRegex, new ScanOptions(), user);
+    }
 
-    public abstract Iterable<Row> findAll(String tableName, ModelUserContext user);
+    /**
+     * Find rows with the group of row keys that match the provided regular expression, with only the columns specified
+     *
+     * @param tableName
+     * @param rowKeyRegex
+     * @param columnsToReturn see {@link #findByRowKeyRange(String, String, String, Map, ModelUserContext)}
+     * @param user
+     * @return
+     */
+    public Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, Map<String, String> columnsToReturn, ModelUserContext user) {
+        return findByRowKeyRegex(tableName, rowKeyRegex, new ScanOptions().setColumnsToReturn(columnsToReturn), user);
+    }
+
+    /**
+     * Find rows with the group of row keys that match the provided regular expression
+     *
+     * @param tableName
+     * @param rowKeyRegex
+     * @param scanOptions
+     * @param user
+     * @return
+     */
+    public abstract Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, ScanOptions scanOptions, ModelUserContext user);
+
+    public Iterable<Row> findAll(String tableName, ModelUserContext user) {
+        return findAll(tableName, new ScanOptions(), user);
+    }
+
+    /**
+     * Find all rows, with only the columns specified
+     *
+     * @param tableName
+     * @param columnsToReturn see {@link #findByRowKeyRange(String, String, String, Map, ModelUserContext)}
+     * @param user
+     * @return
+     */
+    public Iterable<Row> findAll(String tableName, Map<String, String> columnsToReturn, ModelUserContext user) {
+        return findAll(tableName, new ScanOptions().setColumnsToReturn(columnsToReturn), user);
+    }
+
+    /**
+     * Find all rows
+     *
+     * @param tableName
+     * @param scanOptions
+     * @param user
+     * @return
+     */
+    public abstract Iterable<Row> findAll(String tableName, ScanOptions scanOptions, ModelUserContext user);
 
     public abstract long rowCount(String tableName, ModelUserContext user);
 
+    /**
+     * Counts the rows in a range of row keys. Use {@link RowKeyRange#prefix(String)} to count the rows
+     * that start with a prefix.
+     *
+     * @param tableName
+     * @param range
+     * @param user
+     * @return
+     */
+    public abstract long rowCount(String tableName, RowKeyRange range, ModelUserContext user);
+
+    /**
+     * Returns size statistics for a table without scanning it. The returned numbers may be estimates.
+     *
+     * @param tableName
+     * @param range range of rows or <code>null</code> for the whole table
+     * @return
+     */
+    public abstract TableStats estimateStats(String tableName, RowKeyRange range);
+
     /**
      * Returns an entire row with the specified row key
      *
@@ -92,6 +319,29 @@ public abstract class ModelSession {
      */
     public abstract Row findByRowKey(String tableName, String rowKey, Map<String, String> columnsToReturn, ModelUserContext user);
 
+    /**
+     * Returns the rows with the specified row keys, fetched in a single batch
+     *
+     * @param tableName
+     * @param rowKeys
+     * @param user
+     * @return the rows that were found, keyed by row key
+     */
+    public Map<String, Row> findByRowKeys(String tableName, Collection<String> rowKeys, ModelUserContext user) {
+        return findByRowKeys(tableName, rowKeys, null, user);
+    }
+
+    /**
+     * Returns the rows, with only the columns specified, with the specified row keys, fetched in a single batch
+     *
+     * @param tableName
+     * @param rowKeys
+     * @param columnsToReturn columns to return or <code>null</code> to return every column
+     * @param user
+     * @return the rows that were found, keyed by row key
+     */
+    public abstract Map<String, Row> findByRowKeys(String tableName, Collection<String> rowKeys, Map<String, String> columnsToReturn, ModelUserContext user);
+
     /**
      * Initialize a table
      *
@@ -114,7 +364,57 @@ public abstract class ModelSession {
      * @param tableName
      * @param rowKey
      */
-    public abstract void deleteRow(String tableName, RowKey rowKey);
+    public void deleteRow(String tableName, RowKey rowKey) {
+        deleteRow(tableName, rowKey, FlushFlag.DEFAULT);
+    }
+
+    /**
+     * Delete a row with the specified row key
+     *
+     * @param tableName
+     * @param rowKey
+     * @param flushFlag
+     */
+    public abstract void deleteRow(String tableName, RowKey rowKey, FlushFlag flushFlag);
+
+    /**
+     * Delete the rows with the specified row keys
+     *
+     * @param tableName
+     * @param rowKeys
+     */
+    public void deleteRows(String tableName, Collection<RowKey> rowKeys) {
+        deleteRows(tableName, rowKeys, FlushFlag.DEFAULT);
+    }
+
+    /**
+     * Delete the rows with the specified row keys
+     *
+     * @param tableName
+     * @param rowKeys
+     * @param flushFlag
+     */
+    public abstract void deleteRows(String tableName, Collection<RowKey> rowKeys, FlushFlag flushFlag);
+
+    /**
+     * Delete all rows in a range of row keys. Where supported the rows are deleted on the server
+     * without being read by the client. Implementations that have to find some of the rows may only
+     * delete the rows visible to the session's own user.
+     *
+     * @param tableName
+     * @param rowKeyStart first row key to delete (inclusive) or <code>null</code> for the start of the table
+     * @param rowKeyEnd   last row key to delete (exclusive) or <code>null</code> for the end of the table
+     */
+    public abstract void deleteRange(String tableName, String rowKeyStart, String rowKeyEnd);
+
+    /**
+     * Delete all rows whose row keys start with the prefix
+     *
+     * @param tableName
+     * @param rowKeyPrefix
+     * @see #deleteRange(String, String, String)
+     */
+    public abstract void deleteByPrefix(String tableName, String rowKeyPrefix);
 
     /**
      * Delete a specific column on the provided row
@@ -146,15 +446,18 @@ public abstract class ModelSession {
     public abstract void flush();
 
     /**
-     * Creates ModelUserContext from a list of authorizations.
+     * Creates ModelUserContext from a list of authorizations. Implementations should return the same context
+     * for the same authorizations, in any order, so that scanners and caches can reuse it; see
+     * {@link com.altamiracorp.bigtable.model.user.ModelUserContextRegistry}.
      *
      * @param authorizations list of authorizations
-     * @return The new module user context
+     * @return The module user context
      */
     public abstract ModelUserContext createModelUserContext(String... authorizations);
 
     /**
      * Alter columns that match a particular column visibility of the provided row to the provided visibility.
+     * Only the matching columns are rewritten; the other columns of the row are left as they are.
      *
      * @param row
      * @param matchVisibility
@@ -162,4 +465,17 @@ public abstract class ModelSession {
      * @param flushFlag
      */
     public abstract void alterColumnsVisibility(Row row, String matchVisibility,  String newVisibility, FlushFlag flushFlag);
+
+    /**
+     * Alter every column in a range of rows that matches a particular column visibility to the provided
+     * visibility, without the caller reading the rows. Where supported the range is scanned and rewritten
+     * in parallel.
+     *
+     * @param tableName
+     * @param range           rows to alter
+     * @param matchVisibility
+     * @param newVisibility
+     * @return the number of columns altered
+     */
+    public abstract long alterColumnsVisibility(String tableName, RowKeyRange range, String matchVisibility, String newVisibility);
 }
@@ -3,6 +3,7 @@ package com.altamiracorp.bigtable.model;
 import com.altamiracorp.bigtable.model.user.ModelUserContext;
 
 import java.util.*;
+import java.util.concurrent.Future;
 
 public abstract class Repository<T extends Row> {
     private ModelSession modelSession;
@@ -37,6 +38,21 @@ public abstract class Repository<T extends Row> {
         return r;
     }
 
+    public Map<String, T> findByRowKeys(Collection<String> rowKeys, ModelUserContext user) {
+        return findByRowKeys(rowKeys, null, user);
+    }
+
+    public Map<String, T> findByRowKeys(Collection<String> rowKeys, Map<String, String> columnsToReturn, ModelUserContext user) {
+        Map<String, Row> rows = modelSession.findByRowKeys(getTableName(), rowKeys, columnsToReturn, user);
+        Map<String, T> results = new LinkedHashMap<String, T>();
+        for (Map.Entry<String, Row> row : rows.entrySet()) {
+            T r = fromRow(row.getValue());
+            r.setDirtyBits(false);
+            results.put(row.getKey(), r);
+        }
+        return results;
+    }
+
     public Iterable<T> findByRowStartsWith(String rowKeyPrefix, ModelUserContext user) {
         return fromRows(modelSession.findByRowStartsWith(getTableName(), rowKeyPrefix, user));
     }
@@ -45,6 +61,14 @@ public abstract class Repository<T extends Row> {
         return fromRows(modelSession.findAll(getTableName(), user));
     }
 
+    public Iterable<T> findByRowStartsWith(String rowKeyPrefix, Map<String, String> columnsToReturn, ModelUserContext user) {
+        return fromRows(modelSession.findByRowStartsWith(getTableName(), rowKeyPrefix, columnsToReturn, user));
+    }
+
+    public Iterable<T> findAll(Map<String, String> columnsToReturn, ModelUserContext user) {
+        return fromRows(modelSession.findAll(getTableName(), columnsToReturn, user));
+    }
+
     public void save(T obj) {
         save(obj, FlushFlag.DEFAULT);
     }
@@ -67,6 +91,36 @@ public abstract class Repository<T extends Row> {
         modelSession.saveMany(tableName, rows);
     }
 
+    public Future<Void> saveAsync(T obj) {
+        return modelSession.saveAsync(toRow(obj));
+    }
+
+    public Future<Void> saveManyAsync(Collection<T> objs) {
+        List<Row> rows = new ArrayList<Row>();
+        for (T obj : objs) {
+            rows.add(toRow(obj));
+        }
+        return modelSession.saveManyAsync(getTableName(), rows);
+    }
+
+    /**
+     * Converts the rows like {@link #fromRows(Iterable)}, keeping them closeable
+     */
+    public CloseableIterable<T> fromRows(final CloseableIterable<Row> rows) {
+        final Iterable<T> objs = fromRows((Iterable<Row>) rows);
+        return new CloseableIterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return objs.iterator();
+            }
+
+            @Override
+            public void close() {
+                rows.close();
+            }
+        };
+    }
+
     public Iterable<T> fromRows(final Iterable<Row> rows) {
         return new Iterable<T>() {
             @Override
@@ -99,6 +153,26 @@ public abstract class Repository<T extends Row> {
         modelSession.deleteRow(getTableName(), rowKey);
     }
 
+    public void delete(RowKey rowKey, FlushFlag flushFlag) {
+        modelSession.deleteRow(getTableName(), rowKey, flushFlag);
+    }
+
+    public void deleteRows(Collection<RowKey> rowKeys) {
+        modelSession.deleteRows(getTableName(), rowKeys);
+    }
+
+    public void deleteRows(Collection<RowKey> rowKeys, FlushFlag flushFlag) {
+        modelSession.deleteRows(getTableName(), rowKeys, flushFlag);
+    }
+
+    public void deleteRange(String rowKeyStart, String rowKeyEnd) {
+        modelSession.deleteRange(getTableName(), rowKeyStart, rowKeyEnd);
+    }
+
+    public void deleteByPrefix(String rowKeyPrefix) {
+        modelSession.deleteByPrefix(getTableName(), rowKeyPrefix);
+    }
+
     protected ModelSession getModelSession() {
         return modelSession;
     }
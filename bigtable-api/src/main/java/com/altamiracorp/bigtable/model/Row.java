@@ -4,11 +4,12 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 
 public class Row<TRowKey extends RowKey> {
     private TRowKey rowKey;
-    private HashMap<String, ColumnFamily> columnFamilies = new HashMap<String, ColumnFamily>();
+    private HashMap<String, ColumnFamily> columnFamilies;
     private String tableName;
 
     public Row(String tableName, TRowKey rowKey) {
@@ -25,15 +26,24 @@ public class Row<TRowKey extends RowKey> {
     }
 
     public void addColumnFamily(ColumnFamily columnFamily) {
+        if (this.columnFamilies == null) {
+            this.columnFamilies = new HashMap<String, ColumnFamily>();
+        }
         this.columnFamilies.put(columnFamily.getColumnFamilyName(), columnFamily);
     }
 
     @SuppressWarnings("unchecked")
 	public <T extends ColumnFamily> T get(String columnFamilyName) {
+        if (this.columnFamilies == null) {
+            return null;
+        }
         return (T) this.columnFamilies.get(columnFamilyName);
     }
 
     public Collection<ColumnFamily> getColumnFamilies() {
+        if (this.columnFamilies == null) {
+            return Collections.emptyList();
+        }
         return this.columnFamilies.values();
     }
 
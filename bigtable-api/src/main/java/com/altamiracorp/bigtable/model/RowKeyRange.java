@@ -0,0 +1,68 @@
+package com.altamiracorp.bigtable.model;
+
+/**
+ * A contiguous range of row keys. The start key is inclusive and the end key is exclusive;
+ * a <code>null</code> start or end leaves that side of the range unbounded.
+ */
+public class RowKeyRange {
+    private final String start;
+    private final String end;
+    private final String prefix;
+
+    public RowKeyRange(String start, String end) {
+        this(start, end, null);
+    }
+
+    private RowKeyRange(String start, String end, String prefix) {
+        this.start = start;
+        this.end = end;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Creates a range covering every row key that starts with the provided prefix
+     *
+     * @param rowKeyPrefix
+     * @return
+     */
+    public static RowKeyRange prefix(String rowKeyPrefix) {
+        if (rowKeyPrefix == null) {
+            throw new NullPointerException("rowKeyPrefix cannot be null");
+        }
+        return new RowKeyRange(rowKeyPrefix, null, rowKeyPrefix);
+    }
+
+    public String getStart() {
+        return start;
+    }
+
+    public String getEnd() {
+        return end;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public boolean isPrefix() {
+        return prefix != null;
+    }
+
+    public boolean contains(String rowKey) {
+        if (isPrefix()) {
+            return rowKey.startsWith(prefix);
+        }
+        if (start != null && rowKey.compareTo(start) < 0) {
+            return false;
+        }
+        return end == null || rowKey.compareTo(end) < 0;
+    }
+
+    @Override
+    public String toString() {
+        if (isPrefix()) {
+            return "RowKeyRange [prefix=" + prefix + "]";
+        }
+        return "RowKeyRange [start=" + start + ", end=" + end + "]";
+    }
+}
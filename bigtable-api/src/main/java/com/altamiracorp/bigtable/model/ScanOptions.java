@@ -0,0 +1,81 @@
+package com.altamiracorp.bigtable.model;
+
+import java.util.Map;
+
+/**
+ * Options that control how a scan is executed. Options that are not set (0 or <code>null</code>)
+ * use the defaults of the underlying implementation.
+ */
+public class ScanOptions {
+    private Map<String, String> columnsToReturn;
+    private long limit;
+    private int batchSize;
+    private long readAheadThreshold;
+    private long timeoutMillis;
+
+    public Map<String, String> getColumnsToReturn() {
+        return columnsToReturn;
+    }
+
+    /**
+     * @param columnsToReturn map of column family to column qualifier, or "*" for every column in the family
+     */
+    public ScanOptions setColumnsToReturn(Map<String, String> columnsToReturn) {
+        this.columnsToReturn = columnsToReturn;
+        return this;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit maximum number of rows to return. The scan is stopped once the limit is reached.
+     */
+    public ScanOptions setLimit(long limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize number of entries fetched from the server in each round trip
+     */
+    public ScanOptions setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public long getReadAheadThreshold() {
+        return readAheadThreshold;
+    }
+
+    /**
+     * @param readAheadThreshold number of batches to read before fetching the following batches in the background
+     */
+    public ScanOptions setReadAheadThreshold(long readAheadThreshold) {
+        this.readAheadThreshold = readAheadThreshold;
+        return this;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @param timeoutMillis time to keep retrying an unavailable server before the scan fails
+     */
+    public ScanOptions setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanOptions [columnsToReturn=" + columnsToReturn + ", limit=" + limit + ", batchSize=" + batchSize
+                + ", readAheadThreshold=" + readAheadThreshold + ", timeoutMillis=" + timeoutMillis + "]";
+    }
+}
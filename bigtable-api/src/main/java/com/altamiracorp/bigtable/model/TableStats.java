@@ -0,0 +1,60 @@
+package com.altamiracorp.bigtable.model;
+
+/**
+ * Size statistics for a table or a range of a table. Depending on the implementation the numbers
+ * may be estimates, see {@link #isExact()}.
+ */
+public class TableStats {
+    public static final long UNKNOWN = -1;
+
+    private final long rows;
+    private final long entries;
+    private final long bytes;
+    private final int tablets;
+    private final boolean exact;
+
+    public TableStats(long rows, long entries, long bytes, int tablets, boolean exact) {
+        this.rows = rows;
+        this.entries = entries;
+        this.bytes = bytes;
+        this.tablets = tablets;
+        this.exact = exact;
+    }
+
+    /**
+     * @return number of rows or {@link #UNKNOWN} if the implementation cannot estimate rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return number of key/value entries
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return number of bytes used to store the entries
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return number of tablets (or partitions) the statistics were gathered from
+     */
+    public int getTablets() {
+        return tablets;
+    }
+
+    public boolean isExact() {
+        return exact;
+    }
+
+    @Override
+    public String toString() {
+        return "TableStats [rows=" + rows + ", entries=" + entries + ", bytes=" + bytes + ", tablets=" + tablets + ", exact=" + exact + "]";
+    }
+}
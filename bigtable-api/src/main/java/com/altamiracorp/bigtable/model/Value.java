@@ -1,40 +1,91 @@
 package com.altamiracorp.bigtable.model;
 
+import com.altamiracorp.bigtable.model.codec.Bytes;
+import com.altamiracorp.bigtable.model.codec.ValueCodec;
+import com.altamiracorp.bigtable.model.codec.ValueCodecs;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONString;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class Value implements JSONString {
     private final byte[] value;
+    private final int offset;
+    private final int length;
 
     public Value(Object value) {
         if (value == null) {
             throw new NullPointerException("Value cannot be null");
         }
         this.value = toBytes(value);
+        this.offset = 0;
+        this.length = this.value.length;
     }
 
+    /**
+     * Creates a value that is a view of a range of the array, which is not copied. The array must not be
+     * modified while the value is in use.
+     */
+    public Value(byte[] value, int offset, int length) {
+        if (value == null) {
+            throw new NullPointerException("Value cannot be null");
+        }
+        if (offset < 0 || length < 0 || offset + length > value.length) {
+            throw new IndexOutOfBoundsException("Invalid range " + offset + "+" + length + " of " + value.length + " bytes");
+        }
+        this.value = value;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Encodes the value with the codec, which does not need to be registered
+     */
+    public <T> Value(T value, ValueCodec<T> codec) {
+        if (value == null) {
+            throw new NullPointerException("Value cannot be null");
+        }
+        this.value = ValueCodecs.encode(codec, value);
+        this.offset = 0;
+        this.length = this.value.length;
+    }
+
+    /**
+     * Encodes the value with the codec into the caller's buffer and creates a view of the encoded bytes, so
+     * that nothing is allocated beyond the value itself. The buffer must not be modified while the value is
+     * in use.
+     */
+    public <T> Value(T value, ValueCodec<T> codec, byte[] buffer, int offset) {
+        if (value == null) {
+            throw new NullPointerException("Value cannot be null");
+        }
+        this.value = buffer;
+        this.offset = offset;
+        this.length = ValueCodecs.encode(codec, value, buffer, offset);
+    }
+
+    @SuppressWarnings("unchecked")
     private byte[] toBytes(Object value) {
         if (value == null) {
             return null;
         }
 
         if (value instanceof String) {
-            return stringToBytes((String) value);
+            return ValueCodecs.encode(ValueCodecs.UTF8_STRING, (String) value);
         }
 
         if (value instanceof Long) {
-            return longToBytes((Long) value);
+            return ValueCodecs.encode(ValueCodecs.LONG, (Long) value);
         }
 
         if (value instanceof Integer) {
-            return intToBytes((Integer) value);
+            return ValueCodecs.encode(ValueCodecs.INTEGER, (Integer) value);
         }
 
         if (value instanceof Double) {
-            return doubleToBytes((Double) value);
+            return ValueCodecs.encode(ValueCodecs.DOUBLE, (Double) value);
         }
 
         if (value instanceof byte[]) {
@@ -49,68 +100,105 @@ public class Value implements JSONString {
             return ((Value) value).toBytes();
         }
 
+        if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
         if (value instanceof JSONObject) {
-            return jsonObjectToBytes((JSONObject) value);
+            return ValueCodecs.encode(ValueCodecs.UTF8_STRING, value.toString());
+        }
+
+        ValueCodec<Object> codec = (ValueCodec<Object>) ValueCodecs.get(value.getClass());
+        if (codec != null) {
+            return ValueCodecs.encode(codec, value);
         }
 
         throw new RuntimeException("Unhandled type to convert: " + value.getClass().getName());
     }
 
-    private byte[] jsonObjectToBytes(JSONObject value) {
-        return stringToBytes(value.toString());
+    /**
+     * @return the bytes of the value, copied if the value is a view of a larger array
+     */
+    public byte[] toBytes() {
+        if (this.offset == 0 && this.length == this.value.length) {
+            return this.value;
+        }
+        return Arrays.copyOfRange(this.value, this.offset, this.offset + this.length);
     }
 
-    private byte[] doubleToBytes(Double value) {
-        return ByteBuffer.allocate(8).putDouble(value).array();
+    /**
+     * @return a read only buffer over the bytes of the value, without copying them
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(this.value, this.offset, this.length).slice().asReadOnlyBuffer();
     }
 
-    private byte[] stringToBytes(String value) {
-        return value.getBytes();
+    public int length() {
+        return this.length;
     }
 
-    private byte[] longToBytes(Long value) {
-        return ByteBuffer.allocate(8).putLong(value).array();
+    public long getLong() {
+        if (this.length != 8) {
+            throw new RuntimeException("toLong failed. Expected 8 bytes found " + this.length);
+        }
+        return Bytes.getLong(this.value, this.offset);
     }
 
-    private byte[] intToBytes(Integer value) {
-        return ByteBuffer.allocate(4).putInt(value).array();
+    public double getDouble() {
+        if (this.length != 8) {
+            throw new RuntimeException("toDouble failed. Expected 8 bytes found " + this.length);
+        }
+        return Bytes.getDouble(this.value, this.offset);
     }
 
-    public byte[] toBytes() {
-        return this.value;
+    public int getInt() {
+        if (this.length != 4) {
+            throw new RuntimeException("toInteger failed. Expected 4 bytes found " + this.length);
+        }
+        return Bytes.getInt(this.value, this.offset);
     }
 
-    public Long toLong() {
-        if (this.value.length != 8) {
-            throw new RuntimeException("toLong failed. Expected 8 bytes found " + this.value.length);
+    public boolean getBoolean() {
+        if (this.length != 1) {
+            throw new RuntimeException("toBoolean failed. Expected 1 byte found " + this.length);
         }
-        return ByteBuffer.wrap(this.value).getLong();
+        return (int)this.value[this.offset] == 1;
+    }
+
+    public Long toLong() {
+        return getLong();
     }
 
     public Double toDouble() {
-        if (this.value.length != 8) {
-            throw new RuntimeException("toDouble failed. Expected 8 bytes found " + this.value.length);
-        }
-        return ByteBuffer.wrap(this.value).getDouble();
+        return getDouble();
     }
 
     public Integer toInteger() {
-        if (this.value.length != 4) {
-            throw new RuntimeException("toInteger failed. Expected 4 bytes found " + this.value.length);
-        }
-        return ByteBuffer.wrap(this.value).getInt();
+        return getInt();
     }
 
     public Boolean toBoolean() {
-        if (this.value.length != 1) {
-            throw new RuntimeException("toBoolean failed. Expected 1 byte found " + this.value.length);
+        return getBoolean();
+    }
+
+    public <T> T to(ValueCodec<T> codec) {
+        return codec.decode(this.value, this.offset, this.length);
+    }
+
+    public <T> T to(Class<T> type) {
+        ValueCodec<T> codec = ValueCodecs.get(type);
+        if (codec == null) {
+            throw new RuntimeException("No codec registered for " + type.getName());
         }
-        return (int)this.value[0] == 1;
+        return to(codec);
     }
 
     @Override
     public String toString() {
-        return new String(this.value);
+        return Bytes.getUtf8(this.value, this.offset, this.length);
     }
 
     public static byte[] toBytes(Value value) {
@@ -120,6 +208,13 @@ public class Value implements JSONString {
         return value.toBytes();
     }
 
+    public static ByteBuffer toByteBuffer(Value value) {
+        if (value == null) {
+            return null;
+        }
+        return value.toByteBuffer();
+    }
+
     public static String toString(Value value) {
         if (value == null) {
             return null;
@@ -167,7 +262,7 @@ public class Value implements JSONString {
     public String toJSONString() {
         StringBuilder sb = new StringBuilder();
         sb.append('"');
-        for (int i = 0; i < this.value.length; i++) {
+        for (int i = this.offset; i < this.offset + this.length; i++) {
             byte b = this.value[i];
             if (b == '"') {
                 sb.append("\\\"");
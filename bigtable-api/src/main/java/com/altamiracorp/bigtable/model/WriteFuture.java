@@ -0,0 +1,66 @@
+package com.altamiracorp.bigtable.model;
+
+import java.util.concurrent.*;
+
+/**
+ * Acknowledgement of an asynchronous write. The future completes once the write has been flushed to
+ * storage, or fails with the exception that prevented the flush. Writes cannot be cancelled.
+ */
+public class WriteFuture implements Future<Void> {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Throwable failure;
+
+    /**
+     * @return a future for a write that has already been flushed
+     */
+    public static WriteFuture completed() {
+        WriteFuture future = new WriteFuture();
+        future.complete();
+        return future;
+    }
+
+    public void complete() {
+        done.countDown();
+    }
+
+    public void fail(Throwable failure) {
+        this.failure = failure;
+        done.countDown();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public Void get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    @Override
+    public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result();
+    }
+
+    private Void result() throws ExecutionException {
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return null;
+    }
+}
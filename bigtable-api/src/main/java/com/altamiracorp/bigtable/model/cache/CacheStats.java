@@ -0,0 +1,79 @@
+package com.altamiracorp.bigtable.model.cache;
+
+/**
+ * Point in time counts of a {@link CachingModelSession}'s row cache
+ */
+public class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final long invalidations;
+    private final long size;
+    private final long weight;
+
+    public CacheStats(long hits, long misses, long evictions, long expirations, long invalidations, long size, long weight) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.invalidations = invalidations;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * @return the number of rows removed to stay within the maximum weight
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of rows removed because they were older than the time to live
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * @return the number of rows removed because they were written through the session
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @return the number of cached rows
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the approximate number of bytes of the cached rows
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats [hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", expirations=" + expirations + ", invalidations=" + invalidations
+                + ", size=" + size + ", weight=" + weight + "]";
+    }
+}
@@ -0,0 +1,451 @@
+package com.altamiracorp.bigtable.model.cache;
+
+import com.altamiracorp.bigtable.model.*;
+import com.altamiracorp.bigtable.model.metrics.SessionMetrics;
+import com.altamiracorp.bigtable.model.user.ModelUserContext;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+
+/**
+ * Session that caches the rows found by {@link #findByRowKey} in front of another session, per table, row
+ * key, user and requested columns. The cache is bounded by the approximate size of the rows and by a time
+ * to live. Rows are invalidated when they are written or deleted through this session, so writes made
+ * through other sessions or processes are only seen once the cached row expires. User contexts must
+ * implement <code>equals</code> and <code>hashCode</code> for users with the same authorizations to share
+ * cached rows.
+ * <p/>
+ * Rows written without a flush may only become visible to the wrapped session later, for example when it
+ * flushes its writers in the background. Such rows are not cached until the write is known to be visible:
+ * until the future of an asynchronous save is done, and for other writes until {@link #flush()} is called.
+ * Writes with {@link FlushFlag#DEFAULT} are taken to be flushed when the session autoflushes, which like the
+ * wrapped sessions is configured with <code>bigtable.autoflush</code> and defaults to true.
+ * Once more than {@value #MAX_UNFLUSHED_ROWS} rows of a table are waiting, the session is flushed.
+ * <p/>
+ * To enable it from a configuration, set <code>bigtable.modelSession</code> to this class and
+ * <code>bigtable.cache.modelSession</code> to the session to wrap.
+ */
+public class CachingModelSession extends ModelSession {
+    public static final String CONFIG_MODEL_SESSION = "bigtable.cache.modelSession";
+    public static final String CONFIG_MAX_WEIGHT_BYTES = "bigtable.cache.maxWeightBytes";
+    public static final String CONFIG_TTL_MILLIS = "bigtable.cache.ttlMillis";
+    private static final long DEFAULT_MAX_WEIGHT_BYTES = 64 * 1024 * 1024;
+    private static final long DEFAULT_TTL_MILLIS = 60 * 1000;
+    private static final int MAX_UNFLUSHED_ROWS = 10000;
+
+    private ModelSession modelSession;
+    private RowCache cache;
+    private boolean autoflush = true;
+    private final ConcurrentMap<String, ConcurrentMap<String, UnflushedWrite>> unflushedRows = new ConcurrentHashMap<String, ConcurrentMap<String, UnflushedWrite>>();
+
+    public CachingModelSession() {
+    }
+
+    public CachingModelSession(ModelSession modelSession, long maxWeightBytes, long ttlMillis) {
+        this(modelSession, maxWeightBytes, ttlMillis, true);
+    }
+
+    /**
+     * @param autoflush whether the wrapped session flushes writes made with {@link FlushFlag#DEFAULT}
+     */
+    public CachingModelSession(ModelSession modelSession, long maxWeightBytes, long ttlMillis, boolean autoflush) {
+        this.modelSession = modelSession;
+        this.cache = new RowCache(maxWeightBytes, ttlMillis);
+        this.autoflush = autoflush;
+    }
+
+    @Override
+    public void init(Map<String, Object> properties) {
+        if (modelSession == null) {
+            modelSession = createModelSession(properties);
+            modelSession.setSessionMetrics(getSessionMetrics());
+        }
+        if (cache == null) {
+            long maxWeightBytes = DEFAULT_MAX_WEIGHT_BYTES;
+            if (properties.get(CONFIG_MAX_WEIGHT_BYTES) != null) {
+                maxWeightBytes = Long.parseLong(properties.get(CONFIG_MAX_WEIGHT_BYTES).toString());
+            }
+            long ttlMillis = DEFAULT_TTL_MILLIS;
+            if (properties.get(CONFIG_TTL_MILLIS) != null) {
+                ttlMillis = Long.parseLong(properties.get(CONFIG_TTL_MILLIS).toString());
+            }
+            cache = new RowCache(maxWeightBytes, ttlMillis);
+
+            Object autoflushObj = properties.get(CONFIG_AUTOFLUSH);
+            if (autoflushObj != null) {
+                autoflush = Boolean.parseBoolean(autoflushObj.toString());
+            }
+        }
+        modelSession.init(properties);
+    }
+
+    private static ModelSession createModelSession(Map<String, Object> properties) {
+        Object className = properties.get(CONFIG_MODEL_SESSION);
+        if (className == null) {
+            throw new IllegalStateException("Configuration property " + CONFIG_MODEL_SESSION + " missing!");
+        }
+        try {
+            return (ModelSession) Class.forName(className.toString()).newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Could not create model session: " + className, e);
+        }
+    }
+
+    @Override
+    public void setSessionMetrics(SessionMetrics sessionMetrics) {
+        super.setSessionMetrics(sessionMetrics);
+        if (modelSession != null) {
+            modelSession.setSessionMetrics(sessionMetrics);
+        }
+    }
+
+    public ModelSession getModelSession() {
+        return modelSession;
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    private void recordLookup(String tableName, boolean hit) {
+        SessionMetrics metrics = getSessionMetrics();
+        if (metrics != null) {
+            metrics.recordCacheLookup(tableName, "rowCache", hit);
+        }
+    }
+
+    /**
+     * Invalidates the row after a write. Unless the write was flushed, the row is not cached again until the
+     * write is done, or until the next flush if <code>future</code> is <code>null</code>.
+     */
+    private void invalidate(String tableName, String rowKey, FlushFlag flushFlag, Future<Void> future) {
+        if (flushFlag == FlushFlag.NO_FLUSH || (flushFlag == FlushFlag.DEFAULT && !autoflush)) {
+            addUnflushedRow(tableName, rowKey, new UnflushedWrite(future));
+        }
+        // invalidated after the row is marked as unflushed, so that a read that did not see the mark cannot cache the row
+        cache.invalidate(tableName, rowKey);
+    }
+
+    private void invalidate(String tableName, String rowKey, FlushFlag flushFlag) {
+        invalidate(tableName, rowKey, flushFlag, null);
+    }
+
+    private void addUnflushedRow(String tableName, String rowKey, UnflushedWrite write) {
+        ConcurrentMap<String, UnflushedWrite> rows = unflushedRows.get(tableName);
+        if (rows == null) {
+            rows = new ConcurrentHashMap<String, UnflushedWrite>();
+            ConcurrentMap<String, UnflushedWrite> existing = unflushedRows.putIfAbsent(tableName, rows);
+            if (existing != null) {
+                rows = existing;
+            }
+        }
+        while (true) {
+            UnflushedWrite existing = rows.putIfAbsent(rowKey, write);
+            // a write that waits for the next flush is not replaced by one that may be done earlier
+            if (existing == null || (existing.waitsForFlush() && !write.waitsForFlush()) || rows.replace(rowKey, existing, write)) {
+                break;
+            }
+        }
+        if (rows.size() > MAX_UNFLUSHED_ROWS) {
+            flush();
+        }
+    }
+
+    /**
+     * @return true if no write of the row may still become visible later. Rows whose write is done are
+     * invalidated again, which also keeps a read that raced with the write from caching the row.
+     */
+    private boolean isFlushed(String tableName, String rowKey) {
+        ConcurrentMap<String, UnflushedWrite> rows = unflushedRows.get(tableName);
+        UnflushedWrite write = rows == null ? null : rows.get(rowKey);
+        if (write == null) {
+            return true;
+        }
+        if (!write.isDone()) {
+            return false;
+        }
+        cache.invalidate(tableName, rowKey);
+        rows.remove(rowKey, write);
+        return false;
+    }
+
+    private void invalidateUnflushedRows() {
+        for (Map.Entry<String, ConcurrentMap<String, UnflushedWrite>> tableRows : unflushedRows.entrySet()) {
+            Iterator<Map.Entry<String, UnflushedWrite>> rows = tableRows.getValue().entrySet().iterator();
+            while (rows.hasNext()) {
+                cache.invalidate(tableRows.getKey(), rows.next().getKey());
+                rows.remove();
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the row that the caller may modify. Compact rows share their cells with the copy
+     * instead of being decoded.
+     */
+    private static Row copyRow(Row row) {
+        if (row == null) {
+            return null;
+        }
+        if (row instanceof CompactRow && ((CompactRow) row).isCompact()) {
+            return ((CompactRow) row).copy();
+        }
+        Row copy = new Row(row.getTableName(), row.getRowKey());
+        for (ColumnFamily columnFamily : (Collection<ColumnFamily>) row.getColumnFamilies()) {
+            ColumnFamily copyColumnFamily = new ColumnFamily(columnFamily.getColumnFamilyName());
+            for (Column column : columnFamily.getColumns()) {
+                copyColumnFamily.addColumn(new Column(column.getName(), column.getValue(), column.getVisibility()));
+            }
+            copy.addColumnFamily(copyColumnFamily);
+        }
+        copy.setDirtyBits(false);
+        return copy;
+    }
+
+    @Override
+    public void save(Row row, FlushFlag flushFlag) {
+        modelSession.save(row, flushFlag);
+        invalidate(row.getTableName(), row.getRowKey().toString(), flushFlag);
+    }
+
+    @Override
+    public void saveMany(String tableName, Collection<Row> rows) {
+        modelSession.saveMany(tableName, rows);
+        for (Row row : rows) {
+            invalidate(tableName, row.getRowKey().toString(), FlushFlag.DEFAULT);
+        }
+    }
+
+    @Override
+    public Future<Void> saveAsync(Row row) {
+        Future<Void> future = modelSession.saveAsync(row);
+        invalidate(row.getTableName(), row.getRowKey().toString(), FlushFlag.NO_FLUSH, future);
+        return future;
+    }
+
+    @Override
+    public Future<Void> saveManyAsync(String tableName, Collection<Row> rows) {
+        Future<Void> future = modelSession.saveManyAsync(tableName, rows);
+        for (Row row : rows) {
+            invalidate(tableName, row.getRowKey().toString(), FlushFlag.NO_FLUSH, future);
+        }
+        return future;
+    }
+
+    @Override
+    public Iterable<Row> findByRowKeyRange(String tableName, String keyStart, String keyEnd, ScanOptions scanOptions, ModelUserContext user) {
+        return modelSession.findByRowKeyRange(tableName, keyStart, keyEnd, scanOptions, user);
+    }
+
+    @Override
+    public Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, ScanOptions scanOptions, ModelUserContext user) {
+        return modelSession.findByRowStartsWith(tableName, rowKeyPrefix, scanOptions, user);
+    }
+
+    @Override
+    public CloseableIterable<Row> findByRowKeyRanges(String tableName, Collection<RowKeyRange> ranges, ScanOptions scanOptions, ModelUserContext user, int threads) {
+        return modelSession.findByRowKeyRanges(tableName, ranges, scanOptions, user, threads);
+    }
+
+    @Override
+    public Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, ScanOptions scanOptions, ModelUserContext user) {
+        return modelSession.findByRowKeyRegex(tableName, rowKeyRegex, scanOptions, user);
+    }
+
+    @Override
+    public Iterable<Row> findAll(String tableName, ScanOptions scanOptions, ModelUserContext user) {
+        return modelSession.findAll(tableName, scanOptions, user);
+    }
+
+    @Override
+    public long rowCount(String tableName, ModelUserContext user) {
+        return modelSession.rowCount(tableName, user);
+    }
+
+    @Override
+    public long rowCount(String tableName, RowKeyRange range, ModelUserContext user) {
+        return modelSession.rowCount(tableName, range, user);
+    }
+
+    @Override
+    public TableStats estimateStats(String tableName, RowKeyRange range) {
+        return modelSession.estimateStats(tableName, range);
+    }
+
+    @Override
+    public Row findByRowKey(String tableName, String rowKey, ModelUserContext user) {
+        return findByRowKey(tableName, rowKey, null, user);
+    }
+
+    @Override
+    public Row findByRowKey(String tableName, String rowKey, Map<String, String> columnsToReturn, ModelUserContext user) {
+        RowCache.CachedRow cachedRow = cache.get(tableName, rowKey, user, columnsToReturn);
+        recordLookup(tableName, cachedRow != null);
+        if (cachedRow != null) {
+            return copyRow(cachedRow.getRow());
+        }
+
+        long version = cache.getVersion();
+        Row row = modelSession.findByRowKey(tableName, rowKey, columnsToReturn, user);
+        if (isFlushed(tableName, rowKey)) {
+            Map<String, String> columns = columnsToReturn == null ? null : new HashMap<String, String>(columnsToReturn);
+            cache.put(tableName, rowKey, user, columns, copyRow(row), version);
+        }
+        return row;
+    }
+
+    /**
+     * Returns the cached rows and finds the others with a single call to the wrapped session
+     */
+    @Override
+    public Map<String, Row> findByRowKeys(String tableName, Collection<String> rowKeys, Map<String, String> columnsToReturn, ModelUserContext user) {
+        Map<String, Row> results = new HashMap<String, Row>();
+        List<String> missingRowKeys = new ArrayList<String>();
+        for (String rowKey : rowKeys) {
+            RowCache.CachedRow cachedRow = cache.get(tableName, rowKey, user, columnsToReturn);
+            recordLookup(tableName, cachedRow != null);
+            if (cachedRow == null) {
+                missingRowKeys.add(rowKey);
+            } else if (cachedRow.getRow() != null) {
+                results.put(rowKey, copyRow(cachedRow.getRow()));
+            }
+        }
+        if (missingRowKeys.size() == 0) {
+            return results;
+        }
+
+        long version = cache.getVersion();
+        Map<String, Row> rows = modelSession.findByRowKeys(tableName, missingRowKeys, columnsToReturn, user);
+        Map<String, String> columns = columnsToReturn == null ? null : new HashMap<String, String>(columnsToReturn);
+        for (String rowKey : missingRowKeys) {
+            Row row = rows.get(rowKey);
+            if (isFlushed(tableName, rowKey)) {
+                cache.put(tableName, rowKey, user, columns, copyRow(row), version);
+            }
+            if (row != null) {
+                results.put(rowKey, row);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void initializeTable(String tableName, ModelUserContext user) {
+        modelSession.initializeTable(tableName, user);
+        cache.invalidateRange(tableName, null, null);
+    }
+
+    @Override
+    public void deleteTable(String tableName, ModelUserContext user) {
+        modelSession.deleteTable(tableName, user);
+        cache.invalidateRange(tableName, null, null);
+    }
+
+    @Override
+    public void deleteRow(String tableName, RowKey rowKey, FlushFlag flushFlag) {
+        modelSession.deleteRow(tableName, rowKey, flushFlag);
+        invalidate(tableName, rowKey.toString(), flushFlag);
+    }
+
+    @Override
+    public void deleteRows(String tableName, Collection<RowKey> rowKeys, FlushFlag flushFlag) {
+        modelSession.deleteRows(tableName, rowKeys, flushFlag);
+        for (RowKey rowKey : rowKeys) {
+            invalidate(tableName, rowKey.toString(), flushFlag);
+        }
+    }
+
+    @Override
+    public void deleteRange(String tableName, String rowKeyStart, String rowKeyEnd) {
+        modelSession.deleteRange(tableName, rowKeyStart, rowKeyEnd);
+        cache.invalidateRange(tableName, rowKeyStart, rowKeyEnd);
+    }
+
+    @Override
+    public void deleteByPrefix(String tableName, String rowKeyPrefix) {
+        modelSession.deleteByPrefix(tableName, rowKeyPrefix);
+        cache.invalidateRange(tableName, rowKeyPrefix, followingPrefix(rowKeyPrefix));
+    }
+
+    /**
+     * @return the first string that sorts after every string starting with the prefix, or
+     * <code>null</code> if there is none
+     */
+    private static String followingPrefix(String prefix) {
+        int i = prefix.length() - 1;
+        while (i >= 0 && prefix.charAt(i) == Character.MAX_VALUE) {
+            i--;
+        }
+        if (i < 0) {
+            return null;
+        }
+        return prefix.substring(0, i) + (char) (prefix.charAt(i) + 1);
+    }
+
+    @Override
+    public void deleteColumn(Row row, String tableName, String columnFamily, String columnQualifier, String columnVisibility) {
+        modelSession.deleteColumn(row, tableName, columnFamily, columnQualifier, columnVisibility);
+        invalidate(tableName, row.getRowKey().toString(), FlushFlag.DEFAULT);
+    }
+
+    @Override
+    public List<String> getTableList(ModelUserContext user) {
+        return modelSession.getTableList(user);
+    }
+
+    @Override
+    public void close() {
+        modelSession.close();
+        cache.invalidateAll();
+        unflushedRows.clear();
+    }
+
+    @Override
+    public void flush() {
+        modelSession.flush();
+        invalidateUnflushedRows();
+    }
+
+    @Override
+    public ModelUserContext createModelUserContext(String... authorizations) {
+        return modelSession.createModelUserContext(authorizations);
+    }
+
+    @Override
+    public void alterColumnsVisibility(Row row, String matchVisibility, String newVisibility, FlushFlag flushFlag) {
+        modelSession.alterColumnsVisibility(row, matchVisibility, newVisibility, flushFlag);
+        invalidate(row.getTableName(), row.getRowKey().toString(), flushFlag);
+    }
+
+    @Override
+    public long alterColumnsVisibility(String tableName, RowKeyRange range, String matchVisibility, String newVisibility) {
+        long count = modelSession.alterColumnsVisibility(tableName, range, matchVisibility, newVisibility);
+        String end = range.isPrefix() ? followingPrefix(range.getPrefix()) : range.getEnd();
+        cache.invalidateRange(tableName, range.getStart(), end);
+        return count;
+    }
+
+    /**
+     * A write that may not be visible to the wrapped session yet
+     */
+    private static class UnflushedWrite {
+        private final Future<Void> future;
+
+        UnflushedWrite(Future<Void> future) {
+            this.future = future;
+        }
+
+        /**
+         * @return true if the write is only known to be visible after the next flush
+         */
+        boolean waitsForFlush() {
+            return future == null;
+        }
+
+        boolean isDone() {
+            return future != null && future.isDone();
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.altamiracorp.bigtable.model.cache;
+
+import com.altamiracorp.bigtable.model.Column;
+import com.altamiracorp.bigtable.model.ColumnFamily;
+import com.altamiracorp.bigtable.model.CompactRow;
+import com.altamiracorp.bigtable.model.Row;
+import com.altamiracorp.bigtable.model.user.ModelUserContext;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least recently used cache of the rows found by row key, bounded by the approximate size of the rows and
+ * by a time to live. The variants of a row read by different users or with different columns are cached
+ * and invalidated together. Rows that were not found are cached as <code>null</code>.
+ * <p/>
+ * The rows are split by row key over {@link #SEGMENTS} segments, each with its own lock, its own least
+ * recently used order and an equal share of the maximum weight, so that concurrent lookups of different
+ * rows rarely wait for each other.
+ * <p/>
+ * Every invalidation increments a version and is stamped with it in the segments it covers. A reader takes
+ * the version before reading the row from the session and the row is only cached if neither the row nor a
+ * range containing it was invalidated in the meantime, so a read that races with a write cannot cache the
+ * row from before the write while writes to other rows do not keep it out of the cache. Each segment only
+ * remembers a bounded number of stamps; older ones are folded into a single stamp that covers every row
+ * of the segment.
+ */
+class RowCache {
+    static final int SEGMENTS = 16;
+    private static final long ENTRY_OVERHEAD = 64;
+    private static final int MAX_INVALIDATED_ROWS = 1024;
+    private static final int MAX_INVALIDATED_RANGES = 64;
+
+    private final long ttlNanos;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicLong version = new AtomicLong();
+
+    RowCache(long maxWeight, long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1000000L;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(maxWeight / SEGMENTS);
+        }
+    }
+
+    private Segment getSegment(RowId rowId) {
+        int hash = rowId.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+
+    /**
+     * @return the cached row or <code>null</code> if the row is not cached
+     */
+    CachedRow get(String tableName, String rowKey, ModelUserContext user, Map<String, String> columnsToReturn) {
+        RowId rowId = new RowId(tableName, rowKey);
+        return getSegment(rowId).get(rowId, new Variant(user, columnsToReturn), ttlNanos);
+    }
+
+    long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Caches the row unless the row or a range containing it was invalidated since the version was taken
+     *
+     * @param row the row, or <code>null</code> if the row was not found
+     */
+    void put(String tableName, String rowKey, ModelUserContext user, Map<String, String> columnsToReturn, Row row, long version) {
+        CachedRow cachedRow = new CachedRow(row, System.nanoTime(), ENTRY_OVERHEAD + rowKey.length() + (row == null ? 0 : getRowWeight(row)));
+        RowId rowId = new RowId(tableName, rowKey);
+        getSegment(rowId).put(rowId, new Variant(user, columnsToReturn), cachedRow, version);
+    }
+
+    void invalidate(String tableName, String rowKey) {
+        long stamp = version.incrementAndGet();
+        RowId rowId = new RowId(tableName, rowKey);
+        getSegment(rowId).invalidate(rowId, stamp);
+    }
+
+    /**
+     * @param start first row key (inclusive) or <code>null</code>
+     * @param end   last row key (exclusive) or <code>null</code>
+     */
+    void invalidateRange(String tableName, String start, String end) {
+        long stamp = version.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.invalidateRange(new RowRange(tableName, start, end), stamp);
+        }
+    }
+
+    void invalidateAll() {
+        long stamp = version.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.invalidateRange(new RowRange(null, null, null), stamp);
+        }
+    }
+
+    CacheStats getStats() {
+        long[] totals = new long[7];
+        for (Segment segment : segments) {
+            segment.addStats(totals);
+        }
+        return new CacheStats(totals[0], totals[1], totals[2], totals[3], totals[4], totals[5], totals[6]);
+    }
+
+    private static long getRowWeight(Row row) {
+        if (row instanceof CompactRow && ((CompactRow) row).isCompact()) {
+            return ENTRY_OVERHEAD + ((CompactRow) row).getEncodedSize();
+        }
+        long rowWeight = 0;
+        for (ColumnFamily columnFamily : (Collection<ColumnFamily>) row.getColumnFamilies()) {
+            rowWeight += ENTRY_OVERHEAD + columnFamily.getColumnFamilyName().length();
+            for (Column column : columnFamily.getColumns()) {
+                rowWeight += ENTRY_OVERHEAD + column.getName().length();
+                if (column.getValue() != null) {
+                    rowWeight += column.getValue().length();
+                }
+                if (column.getVisibility() != null) {
+                    rowWeight += column.getVisibility().length();
+                }
+            }
+        }
+        return rowWeight;
+    }
+
+    private static class Segment {
+        private final long maxWeight;
+        private final LinkedHashMap<RowId, CachedRows> rows = new LinkedHashMap<RowId, CachedRows>(16, 0.75f, true);
+        // versions at which rows and ranges of this segment were last invalidated
+        private final Map<RowId, Long> invalidatedRows = new HashMap<RowId, Long>();
+        private final Map<RowRange, Long> invalidatedRanges = new HashMap<RowRange, Long>();
+        // version of the latest invalidation that is no longer remembered row by row or range by range
+        private long invalidatedAll;
+        private long weight;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long expirations;
+        private long invalidations;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        synchronized CachedRow get(RowId rowId, Variant variant, long ttlNanos) {
+            CachedRows cachedRows = rows.get(rowId);
+            CachedRow cachedRow = cachedRows == null ? null : cachedRows.variants.get(variant);
+            if (cachedRow == null) {
+                misses++;
+                return null;
+            }
+            if (System.nanoTime() - cachedRow.cachedAt > ttlNanos) {
+                cachedRows.variants.remove(variant);
+                cachedRows.weight -= cachedRow.weight;
+                weight -= cachedRow.weight;
+                if (cachedRows.variants.size() == 0) {
+                    rows.remove(rowId);
+                }
+                expirations++;
+                misses++;
+                return null;
+            }
+            hits++;
+            return cachedRow;
+        }
+
+        synchronized void put(RowId rowId, Variant variant, CachedRow cachedRow, long version) {
+            if (isInvalidatedSince(rowId, version) || cachedRow.weight > maxWeight) {
+                return;
+            }
+            CachedRows cachedRows = rows.get(rowId);
+            if (cachedRows == null) {
+                cachedRows = new CachedRows();
+                rows.put(rowId, cachedRows);
+            }
+            CachedRow previous = cachedRows.variants.put(variant, cachedRow);
+            long delta = cachedRow.weight - (previous == null ? 0 : previous.weight);
+            cachedRows.weight += delta;
+            weight += delta;
+
+            Iterator<Map.Entry<RowId, CachedRows>> eldest = rows.entrySet().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                Map.Entry<RowId, CachedRows> entry = eldest.next();
+                if (entry.getValue() == cachedRows) {
+                    continue;
+                }
+                weight -= entry.getValue().weight;
+                evictions += entry.getValue().variants.size();
+                eldest.remove();
+            }
+        }
+
+        private boolean isInvalidatedSince(RowId rowId, long version) {
+            if (invalidatedAll > version) {
+                return true;
+            }
+            Long rowStamp = invalidatedRows.get(rowId);
+            if (rowStamp != null && rowStamp > version) {
+                return true;
+            }
+            for (Map.Entry<RowRange, Long> range : invalidatedRanges.entrySet()) {
+                if (range.getValue() > version && range.getKey().contains(rowId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized void invalidate(RowId rowId, long stamp) {
+            remove(rows.remove(rowId));
+            if (invalidatedRows.size() >= MAX_INVALIDATED_ROWS && !invalidatedRows.containsKey(rowId)) {
+                invalidatedAll = Math.max(invalidatedAll, Collections.max(invalidatedRows.values()));
+                invalidatedRows.clear();
+            }
+            invalidatedRows.put(rowId, stamp);
+        }
+
+        synchronized void invalidateRange(RowRange range, long stamp) {
+            Iterator<Map.Entry<RowId, CachedRows>> entries = rows.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<RowId, CachedRows> entry = entries.next();
+                if (range.contains(entry.getKey())) {
+                    remove(entry.getValue());
+                    entries.remove();
+                }
+            }
+            if (range.tableName == null) {
+                invalidatedAll = stamp;
+                invalidatedRows.clear();
+                invalidatedRanges.clear();
+                return;
+            }
+            if (invalidatedRanges.size() >= MAX_INVALIDATED_RANGES && !invalidatedRanges.containsKey(range)) {
+                invalidatedAll = Math.max(invalidatedAll, Collections.max(invalidatedRanges.values()));
+                invalidatedRanges.clear();
+            }
+            invalidatedRanges.put(range, stamp);
+        }
+
+        private void remove(CachedRows cachedRows) {
+            if (cachedRows != null) {
+                weight -= cachedRows.weight;
+                invalidations += cachedRows.variants.size();
+            }
+        }
+
+        /**
+         * Adds the hits, misses, evictions, expirations, invalidations, size and weight of the segment to the totals
+         */
+        synchronized void addStats(long[] totals) {
+            totals[0] += hits;
+            totals[1] += misses;
+            totals[2] += evictions;
+            totals[3] += expirations;
+            totals[4] += invalidations;
+            for (CachedRows cachedRows : rows.values()) {
+                totals[5] += cachedRows.variants.size();
+            }
+            totals[6] += weight;
+        }
+    }
+
+    static class CachedRow {
+        private final Row row;
+        private final long cachedAt;
+        private final long weight;
+
+        CachedRow(Row row, long cachedAt, long weight) {
+            this.row = row;
+            this.cachedAt = cachedAt;
+            this.weight = weight;
+        }
+
+        /**
+         * @return the cached row, which must not be modified, or <code>null</code> if the row was not found
+         */
+        Row getRow() {
+            return row;
+        }
+    }
+
+    private static class CachedRows {
+        private final Map<Variant, CachedRow> variants = new HashMap<Variant, CachedRow>(4);
+        private long weight;
+    }
+
+    private static class RowId {
+        private final String tableName;
+        private final String rowKey;
+
+        RowId(String tableName, String rowKey) {
+            this.tableName = tableName;
+            this.rowKey = rowKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RowId)) {
+                return false;
+            }
+            RowId other = (RowId) obj;
+            return tableName.equals(other.tableName) && rowKey.equals(other.rowKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tableName.hashCode() + rowKey.hashCode();
+        }
+    }
+
+    /**
+     * Row keys from start (inclusive) to end (exclusive) of a table; <code>null</code> bounds are open and a
+     * <code>null</code> table covers every table
+     */
+    private static class RowRange {
+        private final String tableName;
+        private final String start;
+        private final String end;
+
+        RowRange(String tableName, String start, String end) {
+            this.tableName = tableName;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean contains(RowId rowId) {
+            return (tableName == null || rowId.tableName.equals(tableName))
+                    && (start == null || rowId.rowKey.compareTo(start) >= 0)
+                    && (end == null || rowId.rowKey.compareTo(end) < 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RowRange)) {
+                return false;
+            }
+            RowRange other = (RowRange) obj;
+            return (tableName == null ? other.tableName == null : tableName.equals(other.tableName))
+                    && (start == null ? other.start == null : start.equals(other.start))
+                    && (end == null ? other.end == null : end.equals(other.end));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = tableName == null ? 0 : tableName.hashCode();
+            hash = 31 * hash + (start == null ? 0 : start.hashCode());
+            return 31 * hash + (end == null ? 0 : end.hashCode());
+        }
+    }
+
+    private static class Variant {
+        private final ModelUserContext user;
+        private final Map<String, String> columnsToReturn;
+
+        Variant(ModelUserContext user, Map<String, String> columnsToReturn) {
+            this.user = user;
+            this.columnsToReturn = columnsToReturn;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Variant)) {
+                return false;
+            }
+            Variant other = (Variant) obj;
+            return (user == null ? other.user == null : user.equals(other.user))
+                    && (columnsToReturn == null ? other.columnsToReturn == null : columnsToReturn.equals(other.columnsToReturn));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (user == null ? 0 : user.hashCode()) + (columnsToReturn == null ? 0 : columnsToReturn.hashCode());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.altamiracorp.bigtable.model.codec;
+
+import java.nio.charset.Charset;
+
+/**
+ * Reads and writes primitives in byte arrays without allocating. Numbers are big endian, the encoding used
+ * by {@link java.nio.ByteBuffer} and so by the values already stored. The sortable encodings order the same
+ * way as the numbers when compared as unsigned bytes, which is how the server sorts keys and values.
+ */
+public final class Bytes {
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Bytes() {
+    }
+
+    public static void putLong(byte[] buffer, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            buffer[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    public static long getLong(byte[] buffer, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    public static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    public static int getInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xff) << 24)
+                | ((buffer[offset + 1] & 0xff) << 16)
+                | ((buffer[offset + 2] & 0xff) << 8)
+                | (buffer[offset + 3] & 0xff);
+    }
+
+    public static void putDouble(byte[] buffer, int offset, double value) {
+        putLong(buffer, offset, Double.doubleToLongBits(value));
+    }
+
+    public static double getDouble(byte[] buffer, int offset) {
+        return Double.longBitsToDouble(getLong(buffer, offset));
+    }
+
+    /**
+     * Writes the long with its sign bit flipped so that negative numbers sort before positive ones
+     */
+    public static void putSortableLong(byte[] buffer, int offset, long value) {
+        putLong(buffer, offset, value ^ Long.MIN_VALUE);
+    }
+
+    public static long getSortableLong(byte[] buffer, int offset) {
+        return getLong(buffer, offset) ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Writes the bits of the double with the sign bit flipped for positive numbers and every bit flipped for
+     * negative numbers, so that the bytes sort in numeric order
+     */
+    public static void putSortableDouble(byte[] buffer, int offset, double value) {
+        long bits = Double.doubleToLongBits(value);
+        putLong(buffer, offset, bits < 0 ? ~bits : bits ^ Long.MIN_VALUE);
+    }
+
+    public static double getSortableDouble(byte[] buffer, int offset) {
+        long bits = getLong(buffer, offset);
+        return Double.longBitsToDouble(bits < 0 ? bits ^ Long.MIN_VALUE : ~bits);
+    }
+
+    /**
+     * @return the number of bytes {@link #putVarLong(byte[], int, long)} writes for the value
+     */
+    public static int varLongSize(long value) {
+        long zigZag = (value << 1) ^ (value >> 63);
+        int size = 1;
+        while ((zigZag & ~0x7fL) != 0) {
+            zigZag >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the long zig-zag encoded in groups of 7 bits, so that numbers close to 0 take few bytes
+     *
+     * @return the number of bytes written
+     */
+    public static int putVarLong(byte[] buffer, int offset, long value) {
+        long zigZag = (value << 1) ^ (value >> 63);
+        int position = offset;
+        while ((zigZag & ~0x7fL) != 0) {
+            buffer[position++] = (byte) ((zigZag & 0x7f) | 0x80);
+            zigZag >>>= 7;
+        }
+        buffer[position++] = (byte) zigZag;
+        return position - offset;
+    }
+
+    public static long getVarLong(byte[] buffer, int offset, int length) {
+        long zigZag = 0;
+        int shift = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[offset + i];
+            zigZag |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+            shift += 7;
+            if (shift > 63) {
+                break;
+            }
+        }
+        throw new RuntimeException("Invalid variable length long of " + length + " bytes");
+    }
+
+    /**
+     * @return the number of bytes of the string encoded as UTF-8
+     */
+    public static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (isSurrogate(c)) {
+                if (isSurrogatePair(value, i)) {
+                    length += 4;
+                    i++;
+                } else {
+                    length++;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the string as UTF-8. Unpaired surrogates are written as '?', as {@link String#getBytes(Charset)}
+     * does.
+     *
+     * @return the number of bytes written
+     */
+    public static int putUtf8(byte[] buffer, int offset, String value) {
+        int position = offset;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (isSurrogate(c)) {
+                if (isSurrogatePair(value, i)) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    buffer[position++] = (byte) '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return position - offset;
+    }
+
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index))
+                && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+
+    public static String getUtf8(byte[] buffer, int offset, int length) {
+        return new String(buffer, offset, length, UTF_8);
+    }
+}
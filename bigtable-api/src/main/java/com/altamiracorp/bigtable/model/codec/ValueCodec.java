@@ -0,0 +1,23 @@
+package com.altamiracorp.bigtable.model.codec;
+
+/**
+ * Converts values of a type to and from bytes. Codecs encode into a buffer supplied by the caller so that
+ * encoding does not have to allocate anything beyond the buffer.
+ *
+ * @see ValueCodecs
+ */
+public interface ValueCodec<T> {
+    /**
+     * @return the number of bytes {@link #encode(Object, byte[], int)} writes for the value
+     */
+    int size(T value);
+
+    /**
+     * Writes the value to the buffer, which must have room for {@link #size(Object)} bytes after the offset
+     *
+     * @return the number of bytes written
+     */
+    int encode(T value, byte[] buffer, int offset);
+
+    T decode(byte[] buffer, int offset, int length);
+}
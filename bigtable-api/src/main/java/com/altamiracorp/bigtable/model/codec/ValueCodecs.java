@@ -0,0 +1,274 @@
+package com.altamiracorp.bigtable.model.codec;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The built in codecs and a registry of the codec to use for each type. {@link com.altamiracorp.bigtable.model.Value}
+ * uses the registry to encode objects of types it does not know about, so applications can store their own
+ * types by registering a codec once at startup.
+ * <p/>
+ * The default codecs of {@link Long}, {@link Integer}, {@link Double} and {@link Boolean} produce the same
+ * bytes as {@link com.altamiracorp.bigtable.model.Value} always has. Value encodes and decodes these types,
+ * {@link String} and <code>byte[]</code> itself, so their codecs cannot be replaced. The sortable and
+ * variable length codecs are not registered for any type and must be used explicitly.
+ */
+public final class ValueCodecs {
+    public static final ValueCodec<Long> LONG = new ValueCodec<Long>() {
+        @Override
+        public int size(Long value) {
+            return 8;
+        }
+
+        @Override
+        public int encode(Long value, byte[] buffer, int offset) {
+            Bytes.putLong(buffer, offset, value);
+            return 8;
+        }
+
+        @Override
+        public Long decode(byte[] buffer, int offset, int length) {
+            checkLength("Long", 8, length);
+            return Bytes.getLong(buffer, offset);
+        }
+    };
+
+    public static final ValueCodec<Integer> INTEGER = new ValueCodec<Integer>() {
+        @Override
+        public int size(Integer value) {
+            return 4;
+        }
+
+        @Override
+        public int encode(Integer value, byte[] buffer, int offset) {
+            Bytes.putInt(buffer, offset, value);
+            return 4;
+        }
+
+        @Override
+        public Integer decode(byte[] buffer, int offset, int length) {
+            checkLength("Integer", 4, length);
+            return Bytes.getInt(buffer, offset);
+        }
+    };
+
+    public static final ValueCodec<Double> DOUBLE = new ValueCodec<Double>() {
+        @Override
+        public int size(Double value) {
+            return 8;
+        }
+
+        @Override
+        public int encode(Double value, byte[] buffer, int offset) {
+            Bytes.putDouble(buffer, offset, value);
+            return 8;
+        }
+
+        @Override
+        public Double decode(byte[] buffer, int offset, int length) {
+            checkLength("Double", 8, length);
+            return Bytes.getDouble(buffer, offset);
+        }
+    };
+
+    public static final ValueCodec<Boolean> BOOLEAN = new ValueCodec<Boolean>() {
+        @Override
+        public int size(Boolean value) {
+            return 1;
+        }
+
+        @Override
+        public int encode(Boolean value, byte[] buffer, int offset) {
+            buffer[offset] = (byte) (value ? 1 : 0);
+            return 1;
+        }
+
+        @Override
+        public Boolean decode(byte[] buffer, int offset, int length) {
+            checkLength("Boolean", 1, length);
+            return buffer[offset] == 1;
+        }
+    };
+
+    public static final ValueCodec<String> UTF8_STRING = new ValueCodec<String>() {
+        @Override
+        public int size(String value) {
+            return Bytes.utf8Length(value);
+        }
+
+        @Override
+        public int encode(String value, byte[] buffer, int offset) {
+            return Bytes.putUtf8(buffer, offset, value);
+        }
+
+        @Override
+        public String decode(byte[] buffer, int offset, int length) {
+            return Bytes.getUtf8(buffer, offset, length);
+        }
+    };
+
+    public static final ValueCodec<byte[]> BYTES = new ValueCodec<byte[]>() {
+        @Override
+        public int size(byte[] value) {
+            return value.length;
+        }
+
+        @Override
+        public int encode(byte[] value, byte[] buffer, int offset) {
+            System.arraycopy(value, 0, buffer, offset, value.length);
+            return value.length;
+        }
+
+        @Override
+        public byte[] decode(byte[] buffer, int offset, int length) {
+            return Arrays.copyOfRange(buffer, offset, offset + length);
+        }
+    };
+
+    /**
+     * Longs that sort in numeric order, negative numbers first
+     */
+    public static final ValueCodec<Long> SORTABLE_LONG = new ValueCodec<Long>() {
+        @Override
+        public int size(Long value) {
+            return 8;
+        }
+
+        @Override
+        public int encode(Long value, byte[] buffer, int offset) {
+            Bytes.putSortableLong(buffer, offset, value);
+            return 8;
+        }
+
+        @Override
+        public Long decode(byte[] buffer, int offset, int length) {
+            checkLength("Long", 8, length);
+            return Bytes.getSortableLong(buffer, offset);
+        }
+    };
+
+    /**
+     * Doubles that sort in numeric order, negative numbers first
+     */
+    public static final ValueCodec<Double> SORTABLE_DOUBLE = new ValueCodec<Double>() {
+        @Override
+        public int size(Double value) {
+            return 8;
+        }
+
+        @Override
+        public int encode(Double value, byte[] buffer, int offset) {
+            Bytes.putSortableDouble(buffer, offset, value);
+            return 8;
+        }
+
+        @Override
+        public Double decode(byte[] buffer, int offset, int length) {
+            checkLength("Double", 8, length);
+            return Bytes.getSortableDouble(buffer, offset);
+        }
+    };
+
+    /**
+     * Longs in 1 to 10 bytes depending on their magnitude, for counters and other small numbers
+     */
+    public static final ValueCodec<Long> VAR_LONG = new ValueCodec<Long>() {
+        @Override
+        public int size(Long value) {
+            return Bytes.varLongSize(value);
+        }
+
+        @Override
+        public int encode(Long value, byte[] buffer, int offset) {
+            return Bytes.putVarLong(buffer, offset, value);
+        }
+
+        @Override
+        public Long decode(byte[] buffer, int offset, int length) {
+            return Bytes.getVarLong(buffer, offset, length);
+        }
+    };
+
+    private static final Map<Class<?>, ValueCodec<?>> codecs = new ConcurrentHashMap<Class<?>, ValueCodec<?>>();
+    private static final Set<Class<?>> builtInTypes = new HashSet<Class<?>>();
+
+    static {
+        codecs.put(Long.class, LONG);
+        codecs.put(Integer.class, INTEGER);
+        codecs.put(Double.class, DOUBLE);
+        codecs.put(Boolean.class, BOOLEAN);
+        codecs.put(String.class, UTF8_STRING);
+        codecs.put(byte[].class, BYTES);
+        builtInTypes.addAll(codecs.keySet());
+    }
+
+    private ValueCodecs() {
+    }
+
+    /**
+     * Sets the codec used for values of exactly the type, replacing any codec registered before
+     */
+    public static <T> void register(Class<T> type, ValueCodec<T> codec) {
+        checkNotBuiltIn(type);
+        if (codec == null) {
+            throw new NullPointerException("codec cannot be null");
+        }
+        codecs.put(type, codec);
+    }
+
+    /**
+     * Removes the codec registered for the type, if any
+     */
+    public static void unregister(Class<?> type) {
+        checkNotBuiltIn(type);
+        codecs.remove(type);
+    }
+
+    private static void checkNotBuiltIn(Class<?> type) {
+        if (type == null) {
+            throw new NullPointerException("type cannot be null");
+        }
+        if (builtInTypes.contains(type)) {
+            throw new RuntimeException("The codec of built in type " + type.getName() + " cannot be replaced");
+        }
+    }
+
+    /**
+     * @return the codec registered for the type, or <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ValueCodec<T> get(Class<T> type) {
+        return (ValueCodec<T>) codecs.get(type);
+    }
+
+    /**
+     * Encodes the value into a new array of exactly its size
+     */
+    public static <T> byte[] encode(ValueCodec<T> codec, T value) {
+        byte[] bytes = new byte[codec.size(value)];
+        codec.encode(value, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Encodes the value into the caller's buffer, so that values can be encoded without allocating
+     *
+     * @return the number of bytes written
+     */
+    public static <T> int encode(ValueCodec<T> codec, T value, byte[] buffer, int offset) {
+        int size = codec.size(value);
+        if (offset < 0 || offset + size > buffer.length) {
+            throw new IndexOutOfBoundsException("No room for " + size + " bytes at " + offset + " of " + buffer.length + " bytes");
+        }
+        return codec.encode(value, buffer, offset);
+    }
+
+    private static void checkLength(String type, int expected, int length) {
+        if (length != expected) {
+            throw new RuntimeException("Decoding " + type + " failed. Expected " + expected + " bytes found " + length);
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.altamiracorp.bigtable.model.metrics;
+
+import com.altamiracorp.bigtable.model.*;
+import com.altamiracorp.bigtable.model.user.ModelUserContext;
+
+import java.util.*;
+import java.util.concurrent.Future;
+
+/**
+ * Session that records the latency, errors and rows and bytes read or written of every operation of
+ * another session in a {@link SessionMetrics}. To enable it from a configuration, set
+ * <code>bigtable.modelSession</code> to this class and <code>bigtable.metrics.modelSession</code> to the
+ * session to wrap; set <code>bigtable.metrics.jmxName</code> to also publish the metrics through JMX.
+ * <p/>
+ * The rows returned by the finders are read lazily and callers may stop reading them at any point, so the
+ * latency of a finder is the time spent in the call itself, recorded when it returns, and its rows and bytes
+ * are counted as they are read. Errors raised while iterating the rows are counted without a latency.
+ */
+public class MetricsModelSession extends ModelSession {
+    public static final String CONFIG_MODEL_SESSION = "bigtable.metrics.modelSession";
+    public static final String CONFIG_JMX_NAME = "bigtable.metrics.jmxName";
+
+    private ModelSession modelSession;
+    private final SessionMetrics metrics;
+
+    public MetricsModelSession() {
+        this.metrics = new SessionMetrics();
+    }
+
+    public MetricsModelSession(ModelSession modelSession, SessionMetrics metrics) {
+        this.modelSession = modelSession;
+        this.metrics = metrics;
+        modelSession.setSessionMetrics(metrics);
+    }
+
+    @Override
+    public void init(Map<String, Object> properties) {
+        if (modelSession == null) {
+            modelSession = createModelSession(properties);
+            modelSession.setSessionMetrics(metrics);
+        }
+        modelSession.init(properties);
+        if (properties.get(CONFIG_JMX_NAME) != null) {
+            metrics.registerMBeans(properties.get(CONFIG_JMX_NAME).toString());
+        }
+    }
+
+    private static ModelSession createModelSession(Map<String, Object> properties) {
+        Object className = properties.get(CONFIG_MODEL_SESSION);
+        if (className == null) {
+            throw new IllegalStateException("Configuration property " + CONFIG_MODEL_SESSION + " missing!");
+        }
+        try {
+            return (ModelSession) Class.forName(className.toString()).newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Could not create model session: " + className, e);
+        }
+    }
+
+    @Override
+    public SessionMetrics getSessionMetrics() {
+        return metrics;
+    }
+
+    public ModelSession getModelSession() {
+        return modelSession;
+    }
+
+    private void record(String tableName, String operation, long startNanos, long rows, long bytes, boolean error) {
+        metrics.record(tableName, operation, System.nanoTime() - startNanos, error ? 0 : rows, error ? 0 : bytes, error);
+    }
+
+    private static long getRowsSize(Collection<Row> rows) {
+        long size = 0;
+        for (Row row : rows) {
+            size += SessionMetrics.getRowSize(row);
+        }
+        return size;
+    }
+
+    @Override
+    public void save(Row row, FlushFlag flushFlag) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.save(row, flushFlag);
+            error = false;
+        } finally {
+            record(row.getTableName(), "save", start, 1, SessionMetrics.getRowSize(row), error);
+        }
+    }
+
+    @Override
+    public void saveMany(String tableName, Collection<Row> rows) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.saveMany(tableName, rows);
+            error = false;
+        } finally {
+            record(tableName, "saveMany", start, rows.size(), getRowsSize(rows), error);
+        }
+    }
+
+    /**
+     * Records the time taken to submit the row, not the time until the write is acknowledged
+     */
+    @Override
+    public Future<Void> saveAsync(Row row) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            Future<Void> future = modelSession.saveAsync(row);
+            error = false;
+            return future;
+        } finally {
+            record(row.getTableName(), "saveAsync", start, 1, SessionMetrics.getRowSize(row), error);
+        }
+    }
+
+    @Override
+    public Future<Void> saveManyAsync(String tableName, Collection<Row> rows) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            Future<Void> future = modelSession.saveManyAsync(tableName, rows);
+            error = false;
+            return future;
+        } finally {
+            record(tableName, "saveManyAsync", start, rows.size(), getRowsSize(rows), error);
+        }
+    }
+
+    @Override
+    public Iterable<Row> findByRowKeyRange(String tableName, String keyStart, String keyEnd, ScanOptions scanOptions, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            Iterable<Row> rows = modelSession.findByRowKeyRange(tableName, keyStart, keyEnd, scanOptions, user);
+            error = false;
+            return measureRows(tableName, "findByRowKeyRange", start, rows);
+        } finally {
+            if (error) {
+                record(tableName, "findByRowKeyRange", start, 0, 0, true);
+            }
+        }
+    }
+
+    @Override
+    public Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, ScanOptions scanOptions, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            Iterable<Row> rows = modelSession.findByRowStartsWith(tableName, rowKeyPrefix, scanOptions, user);
+            error = false;
+            return measureRows(tableName, "findByRowStartsWith", start, rows);
+        } finally {
+            if (error) {
+                record(tableName, "findByRowStartsWith", start, 0, 0, true);
+            }
+        }
+    }
+
+    @Override
+    public CloseableIterable<Row> findByRowKeyRanges(String tableName, Collection<RowKeyRange> ranges, ScanOptions scanOptions, ModelUserContext user, int threads) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            CloseableIterable<Row> rows = modelSession.findByRowKeyRanges(tableName, ranges, scanOptions, user, threads);
+            error = false;
+            return measureCloseableRows(tableName, "findByRowKeyRanges", start, rows);
+        } finally {
+            if (error) {
+                record(tableName, "findByRowKeyRanges", start, 0, 0, true);
+            }
+        }
+    }
+
+    @Override
+    public Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, ScanOptions scanOptions, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            Iterable<Row> rows = modelSession.findByRowKeyRegex(tableName, rowKeyRegex, scanOptions, user);
+            error = false;
+            return measureRows(tableName, "findByRowKeyRegex", start, rows);
+        } finally {
+            if (error) {
+                record(tableName, "findByRowKeyRegex", start, 0, 0, true);
+            }
+        }
+    }
+
+    @Override
+    public Iterable<Row> findAll(String tableName, ScanOptions scanOptions, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            Iterable<Row> rows = modelSession.findAll(tableName, scanOptions, user);
+            error = false;
+            return measureRows(tableName, "findAll", start, rows);
+        } finally {
+            if (error) {
+                record(tableName, "findAll", start, 0, 0, true);
+            }
+        }
+    }
+
+    /**
+     * Records the latency of the finder call and wraps the rows so that they are counted as they are read.
+     * Rows that must be closed stay closeable.
+     */
+    private Iterable<Row> measureRows(String tableName, String operation, long startNanos, Iterable<Row> rows) {
+        if (rows instanceof CloseableIterable) {
+            return measureCloseableRows(tableName, operation, startNanos, (CloseableIterable<Row>) rows);
+        }
+        record(tableName, operation, startNanos, 0, 0, false);
+        return measuredRows(tableName, operation, rows);
+    }
+
+    private CloseableIterable<Row> measureCloseableRows(String tableName, String operation, long startNanos, final CloseableIterable<Row> rows) {
+        record(tableName, operation, startNanos, 0, 0, false);
+        final Iterable<Row> measuredRows = measuredRows(tableName, operation, rows);
+        return new CloseableIterable<Row>() {
+            @Override
+            public Iterator<Row> iterator() {
+                return measuredRows.iterator();
+            }
+
+            @Override
+            public void close() {
+                rows.close();
+            }
+        };
+    }
+
+    private Iterable<Row> measuredRows(final String tableName, final String operation, final Iterable<Row> rows) {
+        return new Iterable<Row>() {
+            @Override
+            public Iterator<Row> iterator() {
+                final Iterator<Row> iterator;
+                try {
+                    iterator = rows.iterator();
+                } catch (RuntimeException e) {
+                    metrics.recordError(tableName, operation);
+                    throw e;
+                }
+                return new Iterator<Row>() {
+                    @Override
+                    public boolean hasNext() {
+                        try {
+                            return iterator.hasNext();
+                        } catch (RuntimeException e) {
+                            metrics.recordError(tableName, operation);
+                            throw e;
+                        }
+                    }
+
+                    @Override
+                    public Row next() {
+                        Row row;
+                        try {
+                            row = iterator.next();
+                        } catch (RuntimeException e) {
+                            metrics.recordError(tableName, operation);
+                            throw e;
+                        }
+                        metrics.recordRows(tableName, operation, 1, SessionMetrics.getRowSize(row));
+                        return row;
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public long rowCount(String tableName, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        long count = 0;
+        try {
+            count = modelSession.rowCount(tableName, user);
+            error = false;
+            return count;
+        } finally {
+            record(tableName, "rowCount", start, count, 0, error);
+        }
+    }
+
+    @Override
+    public long rowCount(String tableName, RowKeyRange range, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        long count = 0;
+        try {
+            count = modelSession.rowCount(tableName, range, user);
+            error = false;
+            return count;
+        } finally {
+            record(tableName, "rowCount", start, count, 0, error);
+        }
+    }
+
+    @Override
+    public TableStats estimateStats(String tableName, RowKeyRange range) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            TableStats tableStats = modelSession.estimateStats(tableName, range);
+            error = false;
+            return tableStats;
+        } finally {
+            record(tableName, "estimateStats", start, 0, 0, error);
+        }
+    }
+
+    @Override
+    public Row findByRowKey(String tableName, String rowKey, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        Row row = null;
+        try {
+            row = modelSession.findByRowKey(tableName, rowKey, user);
+            error = false;
+            return row;
+        } finally {
+            record(tableName, "findByRowKey", start, row == null ? 0 : 1, row == null ? 0 : SessionMetrics.getRowSize(row), error);
+        }
+    }
+
+    @Override
+    public Row findByRowKey(String tableName, String rowKey, Map<String, String> columnsToReturn, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        Row row = null;
+        try {
+            row = modelSession.findByRowKey(tableName, rowKey, columnsToReturn, user);
+            error = false;
+            return row;
+        } finally {
+            record(tableName, "findByRowKey", start, row == null ? 0 : 1, row == null ? 0 : SessionMetrics.getRowSize(row), error);
+        }
+    }
+
+    @Override
+    public Map<String, Row> findByRowKeys(String tableName, Collection<String> rowKeys, Map<String, String> columnsToReturn, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        Map<String, Row> rows = null;
+        try {
+            rows = modelSession.findByRowKeys(tableName, rowKeys, columnsToReturn, user);
+            error = false;
+            return rows;
+        } finally {
+            record(tableName, "findByRowKeys", start, rows == null ? 0 : rows.size(), rows == null ? 0 : getRowsSize(rows.values()), error);
+        }
+    }
+
+    @Override
+    public void initializeTable(String tableName, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.initializeTable(tableName, user);
+            error = false;
+        } finally {
+            record(tableName, "initializeTable", start, 0, 0, error);
+        }
+    }
+
+    @Override
+    public void deleteTable(String tableName, ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.deleteTable(tableName, user);
+            error = false;
+        } finally {
+            record(tableName, "deleteTable", start, 0, 0, error);
+        }
+    }
+
+    @Override
+    public void deleteRow(String tableName, RowKey rowKey, FlushFlag flushFlag) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.deleteRow(tableName, rowKey, flushFlag);
+            error = false;
+        } finally {
+            record(tableName, "deleteRow", start, 1, 0, error);
+        }
+    }
+
+    @Override
+    public void deleteRows(String tableName, Collection<RowKey> rowKeys, FlushFlag flushFlag) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.deleteRows(tableName, rowKeys, flushFlag);
+            error = false;
+        } finally {
+            record(tableName, "deleteRows", start, rowKeys.size(), 0, error);
+        }
+    }
+
+    @Override
+    public void deleteRange(String tableName, String rowKeyStart, String rowKeyEnd) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.deleteRange(tableName, rowKeyStart, rowKeyEnd);
+            error = false;
+        } finally {
+            record(tableName, "deleteRange", start, 0, 0, error);
+        }
+    }
+
+    @Override
+    public void deleteByPrefix(String tableName, String rowKeyPrefix) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.deleteByPrefix(tableName, rowKeyPrefix);
+            error = false;
+        } finally {
+            record(tableName, "deleteByPrefix", start, 0, 0, error);
+        }
+    }
+
+    @Override
+    public void deleteColumn(Row row, String tableName, String columnFamily, String columnQualifier, String columnVisibility) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.deleteColumn(row, tableName, columnFamily, columnQualifier, columnVisibility);
+            error = false;
+        } finally {
+            record(tableName, "deleteColumn", start, 0, 0, error);
+        }
+    }
+
+    @Override
+    public List<String> getTableList(ModelUserContext user) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            List<String> tableList = modelSession.getTableList(user);
+            error = false;
+            return tableList;
+        } finally {
+            record(null, "getTableList", start, 0, 0, error);
+        }
+    }
+
+    @Override
+    public void close() {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.close();
+            error = false;
+        } finally {
+            record(null, "close", start, 0, 0, error);
+            metrics.unregisterMBeans();
+        }
+    }
+
+    @Override
+    public void flush() {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.flush();
+            error = false;
+        } finally {
+            record(null, "flush", start, 0, 0, error);
+        }
+    }
+
+    @Override
+    public ModelUserContext createModelUserContext(String... authorizations) {
+        return modelSession.createModelUserContext(authorizations);
+    }
+
+    @Override
+    public void alterColumnsVisibility(Row row, String matchVisibility, String newVisibility, FlushFlag flushFlag) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            modelSession.alterColumnsVisibility(row, matchVisibility, newVisibility, flushFlag);
+            error = false;
+        } finally {
+            record(row.getTableName(), "alterColumnsVisibility", start, 1, 0, error);
+        }
+    }
+
+    @Override
+    public long alterColumnsVisibility(String tableName, RowKeyRange range, String matchVisibility, String newVisibility) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            long count = modelSession.alterColumnsVisibility(tableName, range, matchVisibility, newVisibility);
+            error = false;
+            return count;
+        } finally {
+            record(tableName, "alterColumnsVisibilityRange", start, 0, 0, error);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.altamiracorp.bigtable.model.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, error, row and byte counts of one operation on one table. Events that have no latency of their
+ * own, like scanner batches, cache lookups and the rows read lazily from a scan, are only counted so that
+ * they do not skew the latency histogram.
+ */
+public class OperationStats implements OperationStatsMBean {
+    private final String tableName;
+    private final String operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    public OperationStats(String tableName, String operation) {
+        this.tableName = tableName;
+        this.operation = operation;
+    }
+
+    public void record(long nanos, long rows, long bytes, boolean error) {
+        latency.record(nanos);
+        if (error) {
+            errors.incrementAndGet();
+        }
+        if (rows != 0) {
+            this.rows.addAndGet(rows);
+        }
+        if (bytes != 0) {
+            this.bytes.addAndGet(bytes);
+        }
+    }
+
+    public void recordRows(long rows, long bytes) {
+        this.rows.addAndGet(rows);
+        this.bytes.addAndGet(bytes);
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    public void recordBatches(long batches) {
+        this.batches.addAndGet(batches);
+    }
+
+    public void recordCacheLookup(boolean hit) {
+        if (hit) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.get();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.get();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMeanMicros();
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latency.getMaxMicros();
+    }
+
+    @Override
+    public long get50thPercentileMicros() {
+        return latency.getPercentileMicros(50);
+    }
+
+    @Override
+    public long get99thPercentileMicros() {
+        return latency.getPercentileMicros(99);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(tableName).append(" ").append(operation)
+                .append(" count=").append(getCount())
+                .append(" errors=").append(getErrors())
+                .append(" rows=").append(getRows())
+                .append(" bytes=").append(getBytes())
+                .append(" meanMicros=").append(String.format("%.1f", getMeanMicros()))
+                .append(" p50Micros=").append(get50thPercentileMicros())
+                .append(" p99Micros=").append(get99thPercentileMicros())
+                .append(" maxMicros=").append(getMaxMicros());
+        if (getBatches() != 0) {
+            result.append(" batches=").append(getBatches());
+        }
+        if (getCacheHits() != 0 || getCacheMisses() != 0) {
+            result.append(" cacheHits=").append(getCacheHits())
+                    .append(" cacheMisses=").append(getCacheMisses());
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package com.altamiracorp.bigtable.model.metrics;
+
+/**
+ * JMX view of the {@link OperationStats} of one operation on one table
+ */
+public interface OperationStatsMBean {
+    String getTableName();
+
+    String getOperation();
+
+    long getCount();
+
+    long getErrors();
+
+    long getRows();
+
+    long getBytes();
+
+    long getBatches();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getMeanMicros();
+
+    long getMaxMicros();
+
+    long get50thPercentileMicros();
+
+    long get99thPercentileMicros();
+}
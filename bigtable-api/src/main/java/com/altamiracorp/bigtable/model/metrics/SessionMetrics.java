@@ -0,0 +1,181 @@
+package com.altamiracorp.bigtable.model.metrics;
+
+import com.altamiracorp.bigtable.model.Column;
+import com.altamiracorp.bigtable.model.ColumnFamily;
+import com.altamiracorp.bigtable.model.CompactRow;
+import com.altamiracorp.bigtable.model.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the {@link OperationStats} of a model session, keyed by table and operation. Operations
+ * that do not belong to a table, like <code>flush</code>, are recorded against {@link #ALL_TABLES}.
+ * Once {@link #registerMBeans(String)} has been called every operation is also published through JMX
+ * as <code>com.altamiracorp.bigtable:type=ModelSession,name=&lt;name&gt;,table=&lt;table&gt;,operation=&lt;operation&gt;</code>.
+ */
+public class SessionMetrics {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionMetrics.class);
+    public static final String ALL_TABLES = "*";
+    public static final String JMX_DOMAIN = "com.altamiracorp.bigtable";
+
+    private final ConcurrentMap<String, OperationStats> operationStats = new ConcurrentHashMap<String, OperationStats>();
+    private volatile String jmxName;
+
+    public void record(String tableName, String operation, long nanos) {
+        record(tableName, operation, nanos, 0, 0, false);
+    }
+
+    public void record(String tableName, String operation, long nanos, long rows, long bytes, boolean error) {
+        getOperationStats(tableName, operation).record(nanos, rows, bytes, error);
+    }
+
+    /**
+     * Counts rows and bytes read after the operation's latency has been recorded
+     */
+    public void recordRows(String tableName, String operation, long rows, long bytes) {
+        getOperationStats(tableName, operation).recordRows(rows, bytes);
+    }
+
+    /**
+     * Counts an error raised after the operation's latency has been recorded
+     */
+    public void recordError(String tableName, String operation) {
+        getOperationStats(tableName, operation).recordError();
+    }
+
+    /**
+     * Counts batches fetched by a scan without recording a latency
+     */
+    public void recordBatches(String tableName, String operation, long batches) {
+        getOperationStats(tableName, operation).recordBatches(batches);
+    }
+
+    /**
+     * Counts a cache hit or miss without recording a latency
+     */
+    public void recordCacheLookup(String tableName, String operation, boolean hit) {
+        getOperationStats(tableName, operation).recordCacheLookup(hit);
+    }
+
+    public OperationStats getOperationStats(String tableName, String operation) {
+        if (tableName == null) {
+            tableName = ALL_TABLES;
+        }
+        String key = tableName + "\u0000" + operation;
+        OperationStats stats = operationStats.get(key);
+        if (stats == null) {
+            stats = new OperationStats(tableName, operation);
+            OperationStats existing = operationStats.putIfAbsent(key, stats);
+            if (existing != null) {
+                return existing;
+            }
+            String name = jmxName;
+            if (name != null) {
+                registerMBean(name, stats);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return the stats of every recorded operation sorted by table and operation
+     */
+    public List<OperationStats> getOperationStats() {
+        List<OperationStats> results = new ArrayList<OperationStats>(operationStats.values());
+        Collections.sort(results, new Comparator<OperationStats>() {
+            @Override
+            public int compare(OperationStats o1, OperationStats o2) {
+                int result = o1.getTableName().compareTo(o2.getTableName());
+                return result != 0 ? result : o1.getOperation().compareTo(o2.getOperation());
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Writes one line per operation in the format of {@link OperationStats#toString()}
+     */
+    public void writeText(Appendable out) throws IOException {
+        for (OperationStats stats : getOperationStats()) {
+            out.append(stats.toString()).append('\n');
+        }
+    }
+
+    public synchronized void registerMBeans(String name) {
+        if (jmxName != null) {
+            throw new IllegalStateException("MBeans are already registered as " + jmxName);
+        }
+        jmxName = name;
+        for (OperationStats stats : operationStats.values()) {
+            registerMBean(name, stats);
+        }
+    }
+
+    public synchronized void unregisterMBeans() {
+        String name = jmxName;
+        if (name == null) {
+            return;
+        }
+        jmxName = null;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationStats stats : operationStats.values()) {
+            try {
+                ObjectName objectName = createObjectName(name, stats);
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Could not unregister MBean for " + stats.getTableName() + " " + stats.getOperation(), e);
+            }
+        }
+    }
+
+    private static void registerMBean(String name, OperationStats stats) {
+        try {
+            ObjectName objectName = createObjectName(name, stats);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(stats, objectName);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Could not register MBean for " + stats.getTableName() + " " + stats.getOperation(), e);
+        }
+    }
+
+    private static ObjectName createObjectName(String name, OperationStats stats) throws Exception {
+        return new ObjectName(JMX_DOMAIN + ":type=ModelSession"
+                + ",name=" + ObjectName.quote(name)
+                + ",table=" + ObjectName.quote(stats.getTableName())
+                + ",operation=" + ObjectName.quote(stats.getOperation()));
+    }
+
+    /**
+     * @return the approximate size of the row: the lengths of its row key, column names and values. The size
+     * of a {@link CompactRow} is taken from its buffer, which also holds the visibilities, so that its column
+     * families are not decoded.
+     */
+    public static long getRowSize(Row row) {
+        long size = row.getRowKey() == null ? 0 : row.getRowKey().toString().length();
+        if (row instanceof CompactRow && ((CompactRow) row).isCompact()) {
+            return size + ((CompactRow) row).getEncodedSize();
+        }
+        for (ColumnFamily columnFamily : (Collection<ColumnFamily>) row.getColumnFamilies()) {
+            size += columnFamily.getColumnFamilyName().length();
+            for (Column column : columnFamily.getColumns()) {
+                size += column.getName().length();
+                if (column.getValue() != null) {
+                    size += column.getValue().length();
+                }
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,71 @@
+package com.altamiracorp.bigtable.model.user;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns user contexts by their authorizations, so that every caller asking for the same authorizations gets
+ * the same context instance. Authorizations are canonicalised first: surrounding whitespace and empty entries
+ * are dropped, duplicates are removed and the rest are sorted, so <code>"b,a"</code>, <code>"a, b"</code> and
+ * <code>"a,b,a"</code> all share one context. Caches keyed on the context then find it with an identity check.
+ * <p/>
+ * The registry is bounded: once it holds {@link #MAX_SIZE} contexts it is cleared and refills with the
+ * authorizations still in use. Contexts must be immutable as they are shared between threads.
+ *
+ * @param <T> the context type of the session
+ */
+public abstract class ModelUserContextRegistry<T extends ModelUserContext> {
+    public static final int MAX_SIZE = 1000;
+
+    private final ConcurrentMap<List<String>, T> userContexts = new ConcurrentHashMap<List<String>, T>();
+
+    /**
+     * @param authorizations authorizations of the user, which may be unsorted and contain duplicates or empty
+     *                       entries
+     * @return the context shared by every user with the same authorizations
+     */
+    public T get(String... authorizations) {
+        List<String> key = Arrays.asList(canonicalize(authorizations));
+        T userContext = userContexts.get(key);
+        if (userContext != null) {
+            return userContext;
+        }
+        if (userContexts.size() >= MAX_SIZE) {
+            userContexts.clear();
+        }
+        userContext = create(key.toArray(new String[key.size()]));
+        T existingUserContext = userContexts.putIfAbsent(key, userContext);
+        return existingUserContext == null ? userContext : existingUserContext;
+    }
+
+    public int size() {
+        return userContexts.size();
+    }
+
+    /**
+     * Creates the context of the authorizations, which are already canonical and may be empty
+     */
+    protected abstract T create(String[] authorizations);
+
+    /**
+     * @return the authorizations trimmed, without empty entries or duplicates and sorted
+     */
+    public static String[] canonicalize(String... authorizations) {
+        TreeSet<String> canonical = new TreeSet<String>();
+        if (authorizations != null) {
+            for (String authorization : authorizations) {
+                if (authorization == null) {
+                    continue;
+                }
+                authorization = authorization.trim();
+                if (authorization.length() > 0) {
+                    canonical.add(authorization);
+                }
+            }
+        }
+        return canonical.toArray(new String[canonical.size()]);
+    }
+}
@@ -0,0 +1,52 @@
+package com.altamiracorp.bigtable.model;
+
+import com.altamiracorp.bigtable.model.metrics.SessionMetrics;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompactRowTest {
+    private static CompactRow createRow() {
+        return (CompactRow) new CompactRow.Builder("testTable", new RowKey("row1"))
+                .add("cf1", "column1", "A", "value1".getBytes())
+                .add("cf1", "column2", "", "value2".getBytes())
+                .add("cf2", "column1", "B", "value3".getBytes())
+                .build();
+    }
+
+    @Test
+    public void testEncodedSize() {
+        CompactRow row = createRow();
+        assertEquals(3 + 3 + 7 + 1 + 6 + 7 + 6 + 7 + 1 + 6, row.getEncodedSize());
+        assertEquals(4 + row.getEncodedSize(), SessionMetrics.getRowSize(row));
+        assertTrue(row.isCompact());
+
+        assertEquals("value1", row.<ColumnFamily>get("cf1").get("column1").toString());
+        assertTrue(row.isCompact());
+
+        row.<ColumnFamily>get("cf1").set("column3", "value4");
+        assertFalse(row.isCompact());
+        assertEquals(-1, row.getEncodedSize());
+        assertEquals(4 + 3 + 7 + 6 + 7 + 6 + 7 + 6 + 3 + 7 + 6, SessionMetrics.getRowSize(row));
+    }
+
+    @Test
+    public void testCopy() {
+        CompactRow row = createRow();
+        CompactRow copy = row.copy();
+        copy.<ColumnFamily>get("cf1").set("column1", "modified");
+        copy.addColumnFamily(new ColumnFamily("cf3").set("column1", "value5"));
+
+        assertEquals("modified", copy.<ColumnFamily>get("cf1").get("column1").toString());
+        assertEquals("value1", row.<ColumnFamily>get("cf1").get("column1").toString());
+        assertNull(row.get("cf3"));
+        assertTrue(row.isCompact());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCopyModifiedRow() {
+        CompactRow row = createRow();
+        row.addColumnFamily(new ColumnFamily("cf3").set("column1", "value5"));
+        row.copy();
+    }
+}
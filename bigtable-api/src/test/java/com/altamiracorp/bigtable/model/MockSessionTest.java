@@ -0,0 +1,123 @@
+package com.altamiracorp.bigtable.model;
+
+import com.altamiracorp.bigtable.model.user.ModelUserContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MockSessionTest {
+    private static final String TEST_TABLE_NAME = "testTable";
+    private static final String TEST_COLUMN_FAMILY_NAME = "testColumnFamily";
+    private MockSession session;
+    private ModelUserContext queryUser;
+
+    @Before
+    public void before() {
+        session = new MockSession();
+        queryUser = session.createModelUserContext();
+        session.initializeTable(TEST_TABLE_NAME, queryUser);
+    }
+
+    private void saveRow(String rowKey, String columnName, String value) {
+        Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey(rowKey));
+        row.addColumnFamily(new ColumnFamily(TEST_COLUMN_FAMILY_NAME).set(columnName, value));
+        session.save(row);
+    }
+
+    private List<String> rowKeys(Iterable<Row> rows) {
+        List<String> rowKeys = new ArrayList<String>();
+        for (Row row : rows) {
+            rowKeys.add(row.getRowKey().toString());
+        }
+        return rowKeys;
+    }
+
+    @Test
+    public void testSaveMergesIntoStoredRow() {
+        saveRow("row1", "column1", "value1");
+        saveRow("row1", "column2", "value2");
+        saveRow("row1", "column1", "value1b");
+
+        Row row = session.findByRowKey(TEST_TABLE_NAME, "row1", queryUser);
+        ColumnFamily columnFamily = row.get(TEST_COLUMN_FAMILY_NAME);
+        assertEquals(2, columnFamily.getColumns().size());
+        assertEquals("value1b", columnFamily.get("column1").toString());
+        assertEquals("value2", columnFamily.get("column2").toString());
+        assertEquals(1, session.rowCount(TEST_TABLE_NAME, queryUser));
+    }
+
+    @Test
+    public void testSaveOnlyWritesDirtyColumns() {
+        saveRow("row1", "column1", "value1");
+
+        Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("row1"));
+        row.addColumnFamily(new ColumnFamily(TEST_COLUMN_FAMILY_NAME).set("column1", "stale").set("column2", "value2"));
+        row.<ColumnFamily>get(TEST_COLUMN_FAMILY_NAME).getColumn("column1").setDirty(false);
+        session.save(row);
+
+        ColumnFamily columnFamily = session.findByRowKey(TEST_TABLE_NAME, "row1", queryUser).get(TEST_COLUMN_FAMILY_NAME);
+        assertEquals("value1", columnFamily.get("column1").toString());
+        assertEquals("value2", columnFamily.get("column2").toString());
+    }
+
+    @Test
+    public void testDeleteColumn() {
+        saveRow("row1", "column1", "value1");
+        saveRow("row1", "column2", "value2");
+
+        Row row = session.findByRowKey(TEST_TABLE_NAME, "row1", queryUser);
+        session.deleteColumn(row, TEST_TABLE_NAME, TEST_COLUMN_FAMILY_NAME, "column1", "");
+        ColumnFamily columnFamily = session.findByRowKey(TEST_TABLE_NAME, "row1", queryUser).get(TEST_COLUMN_FAMILY_NAME);
+        assertNull(columnFamily.get("column1"));
+        assertEquals("value2", columnFamily.get("column2").toString());
+
+        session.deleteColumn(row, TEST_TABLE_NAME, TEST_COLUMN_FAMILY_NAME, "column2", "");
+        assertNull(session.findByRowKey(TEST_TABLE_NAME, "row1", queryUser));
+    }
+
+    @Test
+    public void testFindByRowKeyRegex() {
+        saveRow("abc", "column1", "value1");
+        saveRow("abd", "column1", "value1");
+        saveRow("xabc", "column1", "value1");
+
+        assertEquals(Arrays.asList("abc", "abd"), rowKeys(session.findByRowKeyRegex(TEST_TABLE_NAME, "ab.", queryUser)));
+        assertEquals(Arrays.asList("xabc"), rowKeys(session.findByRowKeyRegex(TEST_TABLE_NAME, "x.*", queryUser)));
+        assertEquals(new ArrayList<String>(), rowKeys(session.findByRowKeyRegex(TEST_TABLE_NAME, "b.*", queryUser)));
+    }
+
+    @Test
+    public void testFindByRowKeyRangeIsStartInclusiveEndExclusive() {
+        saveRow("row1", "column1", "value1");
+        saveRow("row2", "column1", "value1");
+        saveRow("row3", "column1", "value1");
+        saveRow("row4", "column1", "value1");
+
+        assertEquals(Arrays.asList("row2", "row3"), rowKeys(session.findByRowKeyRange(TEST_TABLE_NAME, "row2", "row4", queryUser)));
+        assertEquals(Arrays.asList("row1", "row2"), rowKeys(session.findByRowKeyRange(TEST_TABLE_NAME, null, "row3", queryUser)));
+        assertEquals(Arrays.asList("row3", "row4"), rowKeys(session.findByRowKeyRange(TEST_TABLE_NAME, "row3", null, queryUser)));
+        assertEquals(new ArrayList<String>(), rowKeys(session.findByRowKeyRange(TEST_TABLE_NAME, "row3", "row3", queryUser)));
+        assertEquals(Arrays.asList("row1", "row2"), rowKeys(session.findByRowStartsWith(TEST_TABLE_NAME, "row", new ScanOptions().setLimit(2), queryUser)));
+    }
+
+    @Test
+    public void testReturnedRowsAreCopies() {
+        saveRow("row1", "column1", "value1");
+
+        Row row = session.findByRowKey(TEST_TABLE_NAME, "row1", queryUser);
+        row.<ColumnFamily>get(TEST_COLUMN_FAMILY_NAME).set("column1", "modified");
+        row.addColumnFamily(new ColumnFamily("otherColumnFamily").set("column2", "value2"));
+        for (Row foundRow : session.findAll(TEST_TABLE_NAME, queryUser)) {
+            foundRow.<ColumnFamily>get(TEST_COLUMN_FAMILY_NAME).set("column1", "modified");
+        }
+
+        Row storedRow = session.findByRowKey(TEST_TABLE_NAME, "row1", queryUser);
+        assertEquals("value1", storedRow.<ColumnFamily>get(TEST_COLUMN_FAMILY_NAME).get("column1").toString());
+        assertNull(storedRow.get("otherColumnFamily"));
+    }
+}
@@ -0,0 +1,124 @@
+package com.altamiracorp.bigtable.model;
+
+import com.altamiracorp.bigtable.model.codec.Bytes;
+import com.altamiracorp.bigtable.model.codec.ValueCodec;
+import com.altamiracorp.bigtable.model.codec.ValueCodecs;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ValueTest {
+    @After
+    public void after() {
+        ValueCodecs.unregister(Point.class);
+    }
+
+    @Test
+    public void testToStringIsUtf8() {
+        String string = "\u00e9t\u00e9 \u65e5\u672c \ud83d\ude00";
+        assertEquals(string, new Value(string).toString());
+        assertEquals(string, new Value(string.getBytes(Bytes.UTF_8)).toString());
+
+        byte[] bytes = ("xx" + string + "yy").getBytes(Bytes.UTF_8);
+        assertEquals(string, new Value(bytes, 2, bytes.length - 4).toString());
+    }
+
+    @Test
+    public void testBuiltInTypes() {
+        assertEquals(42L, new Value(42L).getLong());
+        assertEquals(42, new Value(42).getInt());
+        assertEquals(4.2, new Value(4.2).getDouble(), 0.0);
+        assertTrue(new Value(true).getBoolean());
+        assertEquals(Long.valueOf(-7L), new Value(-7L, ValueCodecs.VAR_LONG).to(ValueCodecs.VAR_LONG));
+    }
+
+    @Test
+    public void testEncodeIntoBuffer() {
+        byte[] buffer = new byte[16];
+        Value first = new Value(42L, ValueCodecs.LONG, buffer, 0);
+        Value second = new Value(-7L, ValueCodecs.VAR_LONG, buffer, first.length());
+        assertEquals(42L, first.getLong());
+        assertEquals(Long.valueOf(-7L), second.to(ValueCodecs.VAR_LONG));
+        assertEquals(ValueCodecs.VAR_LONG.size(-7L), second.length());
+
+        try {
+            new Value(42L, ValueCodecs.LONG, buffer, 12);
+            fail("no room");
+        } catch (IndexOutOfBoundsException e) {
+            assertEquals(0, Bytes.getInt(buffer, 12));
+        }
+    }
+
+    @Test
+    public void testRegisteredCodec() {
+        try {
+            new Value(new Point(1, 2));
+            fail("unregistered type");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(Point.class.getName()));
+        }
+
+        ValueCodecs.register(Point.class, Point.CODEC);
+        Value value = new Value(new Point(1, -2));
+        assertEquals(Point.CODEC, ValueCodecs.get(Point.class));
+        assertEquals(new Point(1, -2), value.to(Point.class));
+        assertEquals(new Point(1, -2), new Value(value.toBytes()).to(Point.CODEC));
+    }
+
+    @Test
+    public void testBuiltInCodecsCannotBeReplaced() {
+        try {
+            ValueCodecs.register(Long.class, ValueCodecs.SORTABLE_LONG);
+            fail("built in type");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(Long.class.getName()));
+        }
+        assertEquals(ValueCodecs.LONG, ValueCodecs.get(Long.class));
+        assertEquals(Long.valueOf(5L), new Value(5L).to(Long.class));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testToUnregisteredType() {
+        new Value(1L).to(StringBuilder.class);
+    }
+
+    private static class Point {
+        static final ValueCodec<Point> CODEC = new ValueCodec<Point>() {
+            @Override
+            public int size(Point value) {
+                return 8;
+            }
+
+            @Override
+            public int encode(Point value, byte[] buffer, int offset) {
+                Bytes.putInt(buffer, offset, value.x);
+                Bytes.putInt(buffer, offset + 4, value.y);
+                return 8;
+            }
+
+            @Override
+            public Point decode(byte[] buffer, int offset, int length) {
+                return new Point(Bytes.getInt(buffer, offset), Bytes.getInt(buffer, offset + 4));
+            }
+        };
+
+        private final int x;
+        private final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Point && ((Point) obj).x == x && ((Point) obj).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.altamiracorp.bigtable.model.cache;
+
+import com.altamiracorp.bigtable.model.*;
+import com.altamiracorp.bigtable.model.user.ModelUserContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.*;
+
+public class CachingModelSessionTest {
+    private static final String TEST_TABLE_NAME = "testTable";
+    private DelayedWriteSession session;
+    private CachingModelSession cachingSession;
+    private ModelUserContext queryUser;
+
+    @Before
+    public void before() {
+        session = new DelayedWriteSession();
+        cachingSession = new CachingModelSession(session, 1000000L, 60000L);
+        queryUser = cachingSession.createModelUserContext();
+        cachingSession.initializeTable(TEST_TABLE_NAME, queryUser);
+    }
+
+    private static Row createRow(String value) {
+        return createRow("testRowKey1", value);
+    }
+
+    private static Row createRow(String rowKey, String value) {
+        Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey(rowKey));
+        row.addColumnFamily(new ColumnFamily("testColumnFamily1").set("testColumn1", value));
+        return row;
+    }
+
+    private String findValue() {
+        Row row = cachingSession.findByRowKey(TEST_TABLE_NAME, "testRowKey1", queryUser);
+        return row.<ColumnFamily>get("testColumnFamily1").get("testColumn1").toString();
+    }
+
+    @Test
+    public void testSaveAsyncIsNotCachedBeforeTheWriteIsDone() {
+        cachingSession.save(createRow("value1"), FlushFlag.FLUSH);
+        assertEquals("value1", findValue());
+
+        Future<Void> future = cachingSession.saveAsync(createRow("value2"));
+        assertEquals("value1", findValue());
+        assertEquals("value1", findValue());
+
+        session.completeWrites();
+        assertTrue(future.isDone());
+        assertEquals("value2", findValue());
+        assertEquals("value2", findValue());
+        long hits = cachingSession.getCacheStats().getHits();
+        assertEquals("value2", findValue());
+        assertEquals(hits + 1, cachingSession.getCacheStats().getHits());
+    }
+
+    @Test
+    public void testUnflushedSaveIsNotCachedBeforeFlush() {
+        cachingSession.save(createRow("value1"), FlushFlag.NO_FLUSH);
+        assertEquals("value1", findValue());
+        assertEquals("value1", findValue());
+        assertEquals(0, cachingSession.getCacheStats().getHits());
+
+        cachingSession.flush();
+        assertEquals("value1", findValue());
+        assertEquals("value1", findValue());
+        assertEquals(1, cachingSession.getCacheStats().getHits());
+    }
+
+    @Test
+    public void testWritesToOtherRowsDuringReadDoNotStopCaching() {
+        cachingSession.save(createRow("value1"), FlushFlag.FLUSH);
+        session.duringRead = new Runnable() {
+            @Override
+            public void run() {
+                cachingSession.save(createRow("testRowKey2", "value2"), FlushFlag.FLUSH);
+                cachingSession.deleteRange(TEST_TABLE_NAME, "testRowKey3", "testRowKey4");
+            }
+        };
+        assertEquals("value1", findValue());
+        session.duringRead = null;
+
+        assertEquals("value1", findValue());
+        assertEquals(1, cachingSession.getCacheStats().getHits());
+    }
+
+    @Test
+    public void testWriteToTheRowDuringReadStopsCaching() {
+        cachingSession.save(createRow("value1"), FlushFlag.FLUSH);
+        session.duringRead = new Runnable() {
+            @Override
+            public void run() {
+                session.duringRead = null;
+                cachingSession.save(createRow("value2"), FlushFlag.FLUSH);
+            }
+        };
+        assertEquals("value1", findValue());
+
+        assertEquals("value2", findValue());
+        assertEquals(0, cachingSession.getCacheStats().getHits());
+    }
+
+    /**
+     * Session whose asynchronous saves are only written once {@link #completeWrites()} is called
+     */
+    private static class DelayedWriteSession extends MockSession {
+        private final List<FutureTask<Void>> writes = new ArrayList<FutureTask<Void>>();
+        // run by every read after the row is read, standing in for a concurrent writer
+        private Runnable duringRead;
+
+        @Override
+        public Row findByRowKey(String tableName, String rowKey, Map<String, String> columnsToReturn, ModelUserContext user) {
+            Row row = super.findByRowKey(tableName, rowKey, columnsToReturn, user);
+            if (duringRead != null) {
+                duringRead.run();
+            }
+            return row;
+        }
+
+        @Override
+        public Future<Void> saveAsync(final Row row) {
+            FutureTask<Void> write = new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    save(row);
+                    return null;
+                }
+            });
+            writes.add(write);
+            return write;
+        }
+
+        void completeWrites() {
+            for (FutureTask<Void> write : writes) {
+                write.run();
+            }
+            writes.clear();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.altamiracorp.bigtable.model.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BytesTest {
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int result = (a[i] & 0xff) - (b[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    @Test
+    public void testSortableLong() {
+        long[] values = {Long.MIN_VALUE, -1000000L, -1L, 0L, 1L, 1000000L, Long.MAX_VALUE};
+        byte[] previous = null;
+        for (long value : values) {
+            byte[] bytes = ValueCodecs.encode(ValueCodecs.SORTABLE_LONG, value);
+            assertEquals(value, (long) ValueCodecs.SORTABLE_LONG.decode(bytes, 0, bytes.length));
+            if (previous != null) {
+                assertTrue("" + value, compareUnsigned(previous, bytes) < 0);
+            }
+            previous = bytes;
+        }
+    }
+
+    @Test
+    public void testSortableDouble() {
+        double[] values = {Double.NEGATIVE_INFINITY, -Double.MAX_VALUE, -1.5, -Double.MIN_VALUE, -0.0, 0.0,
+                Double.MIN_VALUE, 1.5, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NaN};
+        byte[] previous = null;
+        for (double value : values) {
+            byte[] bytes = ValueCodecs.encode(ValueCodecs.SORTABLE_DOUBLE, value);
+            double decoded = ValueCodecs.SORTABLE_DOUBLE.decode(bytes, 0, bytes.length);
+            assertEquals(Double.doubleToLongBits(value), Double.doubleToLongBits(decoded));
+            if (previous != null) {
+                assertTrue("" + value, compareUnsigned(previous, bytes) < 0);
+            }
+            previous = bytes;
+        }
+    }
+
+    @Test
+    public void testVarLong() {
+        long[] values = {0L, 1L, -1L, 63L, -64L, 64L, 1000000L, -1000000L, Long.MAX_VALUE, Long.MIN_VALUE};
+        int[] sizes = {1, 1, 1, 1, 1, 2, 3, 3, 10, 10};
+        for (int i = 0; i < values.length; i++) {
+            byte[] bytes = ValueCodecs.encode(ValueCodecs.VAR_LONG, values[i]);
+            assertEquals("" + values[i], sizes[i], bytes.length);
+            assertEquals(values[i], (long) ValueCodecs.VAR_LONG.decode(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testVarLongLongerThanTenBytes() {
+        byte[] bytes = new byte[11];
+        for (int i = 0; i < 10; i++) {
+            bytes[i] = (byte) 0x80;
+        }
+        Bytes.getVarLong(bytes, 0, bytes.length);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testVarLongTruncated() {
+        byte[] bytes = ValueCodecs.encode(ValueCodecs.VAR_LONG, Long.MAX_VALUE);
+        Bytes.getVarLong(bytes, 0, bytes.length - 1);
+    }
+
+    @Test
+    public void testUtf8MatchesStringGetBytes() {
+        String[] values = {"", "abc", "\u00e9t\u00e9", "\u65e5\u672c\u8a9e", "\ud83d\ude00", "a\ud83d\ude00b",
+                "\ud800", "\udc00", "a\ud800b", "a\udc00\ud800b", "\ud83d", "x\ud83d", "\uffff\u0000"};
+        for (String value : values) {
+            byte[] expected = value.getBytes(Bytes.UTF_8);
+            assertEquals(value, expected.length, Bytes.utf8Length(value));
+            byte[] bytes = new byte[expected.length + 2];
+            assertEquals(value, expected.length, Bytes.putUtf8(bytes, 1, value));
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(value, expected[i], bytes[i + 1]);
+            }
+            assertEquals(new String(expected, Bytes.UTF_8), Bytes.getUtf8(bytes, 1, expected.length));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.altamiracorp.bigtable.model.metrics;
+
+import com.altamiracorp.bigtable.model.*;
+import com.altamiracorp.bigtable.model.user.ModelUserContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class MetricsModelSessionTest {
+    private static final String TEST_TABLE_NAME = "testTable";
+    private MetricsModelSession session;
+    private SessionMetrics metrics;
+    private ModelUserContext queryUser;
+
+    @Before
+    public void before() {
+        metrics = new SessionMetrics();
+        session = new MetricsModelSession(new MockSession(), metrics);
+        queryUser = session.createModelUserContext();
+        session.initializeTable(TEST_TABLE_NAME, queryUser);
+        for (int i = 0; i < 3; i++) {
+            Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey("row" + i));
+            row.addColumnFamily(new ColumnFamily("testColumnFamily").set("testColumn", "value" + i));
+            session.save(row);
+        }
+    }
+
+    @Test
+    public void testFinderIsRecordedWhenRowsAreNotRead() {
+        session.findAll(TEST_TABLE_NAME, queryUser);
+
+        OperationStats stats = metrics.getOperationStats(TEST_TABLE_NAME, "findAll");
+        assertEquals(1, stats.getCount());
+        assertEquals(0, stats.getRows());
+    }
+
+    @Test
+    public void testRowsAreCountedWhenReadingStopsEarly() {
+        Iterator<Row> rows = session.findAll(TEST_TABLE_NAME, queryUser).iterator();
+        Row row = rows.next();
+
+        OperationStats stats = metrics.getOperationStats(TEST_TABLE_NAME, "findAll");
+        assertEquals(1, stats.getCount());
+        assertEquals(1, stats.getRows());
+        assertEquals(SessionMetrics.getRowSize(row), stats.getBytes());
+
+        while (rows.hasNext()) {
+            rows.next();
+        }
+        assertEquals(1, stats.getCount());
+        assertEquals(3, stats.getRows());
+        assertEquals(0, stats.getErrors());
+    }
+}
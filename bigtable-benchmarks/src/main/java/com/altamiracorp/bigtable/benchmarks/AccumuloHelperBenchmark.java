@@ -0,0 +1,108 @@
+package com.altamiracorp.bigtable.benchmarks;
+
+import com.altamiracorp.bigtable.model.Column;
+import com.altamiracorp.bigtable.model.ColumnFamily;
+import com.altamiracorp.bigtable.model.Row;
+import com.altamiracorp.bigtable.model.accumulo.AccumuloHelper;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of rows to mutations and of scanned key/values back to rows, without any I/O
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccumuloHelperBenchmark {
+    @Param({"1", "10", "100"})
+    public int rowWidth;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private Row row;
+    private List<Map.Entry<Key, Value>> accumuloRow;
+    private List<Column> columns;
+    private CountingBatchWriter writer;
+
+    @Setup
+    public void setup() {
+        row = BenchmarkData.createRow(BenchmarkData.rowKey(0), rowWidth, valueSize, BenchmarkData.createRandom());
+        SortedMap<Key, Value> sortedRow = new TreeMap<Key, Value>();
+        columns = new ArrayList<Column>();
+        Text rowKey = new Text(row.getRowKey().toString());
+        for (ColumnFamily columnFamily : (Collection<ColumnFamily>) row.getColumnFamilies()) {
+            Text columnFamilyName = new Text(columnFamily.getColumnFamilyName());
+            for (Column column : columnFamily.getColumns()) {
+                Key key = new Key(rowKey, columnFamilyName, new Text(column.getName()), new Text(column.getVisibility()), 0L);
+                sortedRow.put(key, new Value(column.getValue().toBytes()));
+                columns.add(column);
+            }
+        }
+        accumuloRow = new ArrayList<Map.Entry<Key, Value>>(sortedRow.entrySet());
+        writer = new CountingBatchWriter();
+    }
+
+    @Benchmark
+    public boolean addRowToWriter() throws MutationsRejectedException {
+        return AccumuloHelper.addRowToWriter(writer, row);
+    }
+
+    @Benchmark
+    public Row accumuloRowToRow() {
+        return AccumuloHelper.accumuloRowToRow(BenchmarkData.TABLE_NAME, accumuloRow.iterator());
+    }
+
+    /**
+     * Decodes the row and reads every value by column name, as a full table scan would
+     */
+    @Benchmark
+    public long accumuloRowToRowReadValues() {
+        Row scannedRow = AccumuloHelper.accumuloRowToRow(BenchmarkData.TABLE_NAME, accumuloRow.iterator());
+        ColumnFamily columnFamily = scannedRow.get(BenchmarkData.COLUMN_FAMILY_NAME);
+        long bytes = 0;
+        for (Column column : columns) {
+            bytes += columnFamily.get(column.getName()).toByteBuffer().remaining();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writer that only counts the bytes of the mutations added to it, so the benchmark measures the
+     * conversion and not a server
+     */
+    private static class CountingBatchWriter implements BatchWriter {
+        private long bytes;
+
+        @Override
+        public void addMutation(Mutation mutation) {
+            bytes += mutation.numBytes();
+        }
+
+        @Override
+        public void addMutations(Iterable<Mutation> mutations) {
+            for (Mutation mutation : mutations) {
+                addMutation(mutation);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.altamiracorp.bigtable.benchmarks;
+
+import com.altamiracorp.bigtable.model.ColumnFamily;
+import com.altamiracorp.bigtable.model.Row;
+import com.altamiracorp.bigtable.model.RowKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the rows used by the benchmarks. The data is generated from a fixed seed so every run of a
+ * parameter set works on the same rows.
+ */
+public class BenchmarkData {
+    public static final String TABLE_NAME = "benchmark";
+    public static final String COLUMN_FAMILY_NAME = "data";
+    public static final String VISIBILITY = "";
+    private static final long SEED = 42L;
+    private static final char[] VALUE_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+    public static Random createRandom() {
+        return new Random(SEED);
+    }
+
+    public static String rowKey(long i) {
+        return String.format("row%012d", i);
+    }
+
+    public static String columnName(int i) {
+        return "column" + i;
+    }
+
+    public static String createValue(Random random, int valueSize) {
+        char[] value = new char[valueSize];
+        for (int i = 0; i < valueSize; i++) {
+            value[i] = VALUE_CHARS[random.nextInt(VALUE_CHARS.length)];
+        }
+        return new String(value);
+    }
+
+    /**
+     * @param rowWidth  number of columns in the row's single column family
+     * @param valueSize number of bytes in each column value
+     */
+    public static Row createRow(String rowKey, int rowWidth, int valueSize, Random random) {
+        return createRow(TABLE_NAME, rowKey, rowWidth, valueSize, random);
+    }
+
+    public static Row createRow(String tableName, String rowKey, int rowWidth, int valueSize, Random random) {
+        Row row = new Row<RowKey>(tableName, new RowKey(rowKey));
+        ColumnFamily columnFamily = new ColumnFamily(COLUMN_FAMILY_NAME);
+        for (int i = 0; i < rowWidth; i++) {
+            columnFamily.set(columnName(i), createValue(random, valueSize), VISIBILITY);
+        }
+        row.addColumnFamily(columnFamily);
+        return row;
+    }
+
+    public static List<Row> createRows(int rowCount, int rowWidth, int valueSize) {
+        Random random = createRandom();
+        List<Row> rows = new ArrayList<Row>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(createRow(rowKey(i), rowWidth, valueSize, random));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,40 @@
+package com.altamiracorp.bigtable.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the standard benchmark parameter sets: the single threaded model and conversion benchmarks,
+ * then the {@link SessionBenchmark} once for every thread count. Any arguments are passed to the JMH
+ * command line instead, e.g. <code>java -jar target/benchmarks.jar SessionBenchmark -t 8 -p session=mock</code>.
+ */
+public class BenchmarkRunner {
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            Main.main(args);
+            return;
+        }
+
+        Options options = new OptionsBuilder()
+                .include(ValueBenchmark.class.getSimpleName())
+                .include(RowBenchmark.class.getSimpleName())
+                .include(AccumuloHelperBenchmark.class.getSimpleName())
+                .include(ColumnVisibilityBenchmark.class.getSimpleName())
+                .include(RepositoryBenchmark.class.getSimpleName())
+                .threads(1)
+                .build();
+        new Runner(options).run();
+
+        for (int threads : THREAD_COUNTS) {
+            options = new OptionsBuilder()
+                    .include(SessionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.altamiracorp.bigtable.benchmarks;
+
+import com.altamiracorp.bigtable.model.accumulo.ColumnVisibilityCache;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per cell cost of adding a column with a visibility to a mutation, parsing the visibility for every cell
+ * as writers used to and looking it up in the {@link ColumnVisibilityCache}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnVisibilityBenchmark {
+    private static final int CELLS = 100;
+
+    @Param({"", "public", "(admin|audit)&(us|uk)&pii"})
+    public String visibility;
+
+    private Value value;
+
+    @Setup
+    public void setup() {
+        value = new Value(BenchmarkData.createValue(BenchmarkData.createRandom(), 16).getBytes());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public long parsePerCell() {
+        Mutation mutation = new Mutation(BenchmarkData.rowKey(0));
+        for (int i = 0; i < CELLS; i++) {
+            mutation.put(BenchmarkData.COLUMN_FAMILY_NAME, BenchmarkData.columnName(i), new ColumnVisibility(visibility), value);
+        }
+        return mutation.numBytes();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public long cachedPerCell() {
+        Mutation mutation = new Mutation(BenchmarkData.rowKey(0));
+        for (int i = 0; i < CELLS; i++) {
+            mutation.put(BenchmarkData.COLUMN_FAMILY_NAME, BenchmarkData.columnName(i), ColumnVisibilityCache.get(visibility), value);
+        }
+        return mutation.numBytes();
+    }
+}
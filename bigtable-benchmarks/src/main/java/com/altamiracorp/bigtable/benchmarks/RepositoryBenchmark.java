@@ -0,0 +1,72 @@
+package com.altamiracorp.bigtable.benchmarks;
+
+import com.altamiracorp.bigtable.model.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of scanned rows to model objects through {@link Repository#fromRows(Iterable)}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+    @Param({"1000"})
+    public int rowCount;
+
+    @Param({"1", "10", "100"})
+    public int rowWidth;
+
+    private List<Row> rows;
+    private BenchmarkRepository repository;
+
+    @Setup
+    public void setup() {
+        rows = BenchmarkData.createRows(rowCount, rowWidth, 16);
+        repository = new BenchmarkRepository(new MockSession());
+    }
+
+    @Benchmark
+    public void fromRows(Blackhole blackhole) {
+        for (BenchmarkRow row : repository.fromRows(rows)) {
+            blackhole.consume(row);
+        }
+    }
+
+    public static class BenchmarkRow extends Row<RowKey> {
+        public BenchmarkRow(RowKey rowKey) {
+            super(BenchmarkData.TABLE_NAME, rowKey);
+        }
+    }
+
+    public static class BenchmarkRepository extends Repository<BenchmarkRow> {
+        public BenchmarkRepository(ModelSession modelSession) {
+            super(modelSession);
+        }
+
+        @Override
+        public BenchmarkRow fromRow(Row row) {
+            BenchmarkRow benchmarkRow = new BenchmarkRow(row.getRowKey());
+            for (ColumnFamily columnFamily : (Iterable<ColumnFamily>) row.getColumnFamilies()) {
+                benchmarkRow.addColumnFamily(new ColumnFamily(columnFamily.getColumnFamilyName()).addColumns(columnFamily.getColumns()));
+            }
+            return benchmarkRow;
+        }
+
+        @Override
+        public Row toRow(BenchmarkRow row) {
+            return row;
+        }
+
+        @Override
+        public String getTableName() {
+            return BenchmarkData.TABLE_NAME;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.altamiracorp.bigtable.benchmarks;
+
+import com.altamiracorp.bigtable.model.ColumnFamily;
+import com.altamiracorp.bigtable.model.Row;
+import com.altamiracorp.bigtable.model.RowKey;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of rows and column families and reading their columns back by name
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowBenchmark {
+    @Param({"1", "10", "100"})
+    public int rowWidth;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private String[] columnNames;
+    private String[] values;
+    private Row row;
+
+    @Setup
+    public void setup() {
+        Random random = BenchmarkData.createRandom();
+        columnNames = new String[rowWidth];
+        values = new String[rowWidth];
+        for (int i = 0; i < rowWidth; i++) {
+            columnNames[i] = BenchmarkData.columnName(i);
+            values[i] = BenchmarkData.createValue(random, valueSize);
+        }
+        row = BenchmarkData.createRow(BenchmarkData.rowKey(0), rowWidth, valueSize, random);
+    }
+
+    @Benchmark
+    public Row createRow() {
+        Row row = new Row<RowKey>(BenchmarkData.TABLE_NAME, new RowKey(BenchmarkData.rowKey(0)));
+        ColumnFamily columnFamily = new ColumnFamily(BenchmarkData.COLUMN_FAMILY_NAME);
+        for (int i = 0; i < rowWidth; i++) {
+            columnFamily.set(columnNames[i], values[i]);
+        }
+        row.addColumnFamily(columnFamily);
+        return row;
+    }
+
+    @Benchmark
+    public void getColumns(Blackhole blackhole) {
+        ColumnFamily columnFamily = row.get(BenchmarkData.COLUMN_FAMILY_NAME);
+        for (int i = 0; i < rowWidth; i++) {
+            blackhole.consume(columnFamily.get(columnNames[i]));
+        }
+    }
+}
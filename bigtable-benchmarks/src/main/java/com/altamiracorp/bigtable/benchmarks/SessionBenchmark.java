@@ -0,0 +1,134 @@
+package com.altamiracorp.bigtable.benchmarks;
+
+import com.altamiracorp.bigtable.model.*;
+import com.altamiracorp.bigtable.model.accumulo.AccumuloSession;
+import com.altamiracorp.bigtable.model.user.ModelUserContext;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End to end save and scan throughput of a {@link ModelSession}, either the {@link MockSession} or an
+ * {@link AccumuloSession} on a {@link MockInstance}. Run with <code>-t</code> (or through
+ * {@link BenchmarkRunner}) to measure contention between writer threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark {
+    private static final int SCAN_ROW_COUNT = 1000;
+    private static final int SAVE_ROWS_PER_THREAD = 1000;
+    private static final String SCAN_TABLE_NAME = BenchmarkData.TABLE_NAME + "Scan";
+
+    @Param({"mock", "accumulo"})
+    public String session;
+
+    @Param({"1", "10"})
+    public int rowWidth;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private ModelSession modelSession;
+    private ModelUserContext user;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Setup
+    public void setup() throws Exception {
+        if ("mock".equals(session)) {
+            modelSession = new MockSession();
+        } else if ("accumulo".equals(session)) {
+            UserGroupInformation.setLoginUser(UserGroupInformation.createUserForTesting("benchmark", new String[0]));
+            Connector connector = new MockInstance("benchmark").getConnector("root", new PasswordToken(new byte[0]));
+            modelSession = new AccumuloSession(connector, false);
+        } else {
+            throw new IllegalArgumentException("Unknown session: " + session);
+        }
+        user = modelSession.createModelUserContext("");
+        modelSession.initializeTable(BenchmarkData.TABLE_NAME, user);
+        modelSession.initializeTable(SCAN_TABLE_NAME, user);
+
+        Random random = BenchmarkData.createRandom();
+        List<Row> rows = new ArrayList<Row>(SCAN_ROW_COUNT);
+        for (int i = 0; i < SCAN_ROW_COUNT; i++) {
+            rows.add(BenchmarkData.createRow(SCAN_TABLE_NAME, BenchmarkData.rowKey(i), rowWidth, valueSize, random));
+        }
+        modelSession.saveMany(SCAN_TABLE_NAME, rows);
+        modelSession.flush();
+    }
+
+    @TearDown
+    public void tearDown() {
+        modelSession.deleteTable(BenchmarkData.TABLE_NAME, user);
+        modelSession.deleteTable(SCAN_TABLE_NAME, user);
+        modelSession.close();
+    }
+
+    /**
+     * Rows saved by a single benchmark thread. Each thread cycles through its own key space so the
+     * table stays the same size however long the benchmark runs.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        private Row[] rows;
+        private int next;
+
+        @Setup
+        public void setup(SessionBenchmark benchmark) {
+            int thread = benchmark.threadCount.getAndIncrement();
+            Random random = new Random(thread);
+            rows = new Row[SAVE_ROWS_PER_THREAD];
+            for (int i = 0; i < rows.length; i++) {
+                String rowKey = BenchmarkData.rowKey(thread * (long) SAVE_ROWS_PER_THREAD + i);
+                rows[i] = BenchmarkData.createRow(rowKey, benchmark.rowWidth, benchmark.valueSize, random);
+            }
+        }
+
+        Row nextRow() {
+            Row row = rows[next];
+            next = (next + 1) % rows.length;
+            return row;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+        private int next;
+
+        String nextRowKey() {
+            String rowKey = BenchmarkData.rowKey(next);
+            next = (next + 1) % SCAN_ROW_COUNT;
+            return rowKey;
+        }
+    }
+
+    @Benchmark
+    public void save(Writer writer) {
+        modelSession.save(writer.nextRow(), FlushFlag.NO_FLUSH);
+    }
+
+    @Benchmark
+    public Row findByRowKey(Reader reader) {
+        return modelSession.findByRowKey(SCAN_TABLE_NAME, reader.nextRowKey(), user);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCAN_ROW_COUNT)
+    public void scan(Blackhole blackhole) {
+        for (Row row : modelSession.findAll(SCAN_TABLE_NAME, user)) {
+            blackhole.consume(row);
+        }
+    }
+}
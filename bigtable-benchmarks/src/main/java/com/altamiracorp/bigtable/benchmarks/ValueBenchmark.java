@@ -0,0 +1,85 @@
+package com.altamiracorp.bigtable.benchmarks;
+
+import com.altamiracorp.bigtable.model.Value;
+import com.altamiracorp.bigtable.model.codec.Bytes;
+import com.altamiracorp.bigtable.model.codec.ValueCodecs;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of values to bytes and decoding them back to their types
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueBenchmark {
+    @Param({"16", "256", "4096"})
+    public int valueSize;
+
+    private String string;
+    private Value stringValue;
+    private Value longValue;
+    private Value doubleValue;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() {
+        string = BenchmarkData.createValue(BenchmarkData.createRandom(), valueSize);
+        stringValue = new Value(string);
+        longValue = new Value(Long.MAX_VALUE);
+        doubleValue = new Value(Math.PI);
+        buffer = new byte[valueSize * 4];
+    }
+
+    @Benchmark
+    public Value encodeString() {
+        return new Value(string);
+    }
+
+    @Benchmark
+    public String decodeString() {
+        return stringValue.toString();
+    }
+
+    /**
+     * Encodes the string into a reused buffer, without allocating
+     */
+    @Benchmark
+    public int encodeStringIntoBuffer() {
+        return ValueCodecs.UTF8_STRING.encode(string, buffer, 0);
+    }
+
+    @Benchmark
+    public Value encodeLong() {
+        return new Value(Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public Long decodeLong() {
+        return longValue.toLong();
+    }
+
+    @Benchmark
+    public long decodePrimitiveLong() {
+        return longValue.getLong();
+    }
+
+    @Benchmark
+    public int encodeVarLongIntoBuffer() {
+        return Bytes.putVarLong(buffer, 0, valueSize);
+    }
+
+    @Benchmark
+    public Value encodeDouble() {
+        return new Value(Math.PI);
+    }
+
+    @Benchmark
+    public Double decodeDouble() {
+        return doubleValue.toDouble();
+    }
+}
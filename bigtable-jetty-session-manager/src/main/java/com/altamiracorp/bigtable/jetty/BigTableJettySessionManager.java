@@ -2,29 +2,80 @@ package com.altamiracorp.bigtable.jetty;
 
 import com.altamiracorp.bigtable.jetty.model.*;
 import com.altamiracorp.bigtable.model.Column;
+import com.altamiracorp.bigtable.model.ColumnFamily;
 import com.altamiracorp.bigtable.model.FlushFlag;
 import com.altamiracorp.bigtable.model.ModelSession;
 import com.altamiracorp.bigtable.model.user.ModelUserContext;
 import com.google.common.base.Optional;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.cache.*;
 import org.eclipse.jetty.nosql.NoSqlSession;
 import org.eclipse.jetty.nosql.NoSqlSessionManager;
 import org.eclipse.jetty.server.SessionManager;
-
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores Jetty sessions in a big table. By default every save is written and flushed before the request
+ * completes. With a write-behind interval set, saves are coalesced per session and written by a background
+ * thread every interval, or as soon as the number of sessions waiting to be written reaches the batch size;
+ * only the attributes that changed since the last write are sent, and writes that fail are retried a few times
+ * before they are dropped. A refresh that only updates the accessed time writes just that metadata column in
+ * either mode.
+ * <p/>
+ * Sessions are cached, bounded either by their number or by the bytes of their attributes, and the sizes,
+ * expiry and refresh of the cache can be set before the manager is started. Ids that are not found are not
+ * cached as sessions; they can be remembered for a short time so that repeated lookups of unknown ids do
+ * not each go to the table, but only when every request for a session goes to the same node, as a session
+ * created on another node would be reported as unknown until the entry expires.
+ */
 public class BigTableJettySessionManager extends NoSqlSessionManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BigTableJettySessionManager.class);
     public static final Class TYPE = SessionManager.class;
-    private static final int CACHE_MAX_SIZE = 50;
-    private static final int CACHE_EXPIRE_MINUTES = 10;
+    public static final int DEFAULT_WRITE_BEHIND_BATCH_SIZE = 100;
+    public static final int DEFAULT_WRITE_BEHIND_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_CACHE_MAX_SIZE = 50;
+    public static final long DEFAULT_CACHE_EXPIRE_AFTER_WRITE_MILLIS = 10 * 60 * 1000;
+    public static final long DEFAULT_UNKNOWN_SESSION_CACHE_MAX_SIZE = 10000;
 
     private final ModelSession modelSession;
     private final JettySessionRepository jettySessionRepository;
     private final ModelUserContext modelUserContext;
-    private final LoadingCache<String, Optional<JettySessionRow>> cache;
+    private volatile LoadingCache<String, JettySessionRow> cache;
+    private volatile Cache<String, Boolean> unknownSessionCache;
+    private long cacheMaxSize = DEFAULT_CACHE_MAX_SIZE;
+    private long cacheMaxWeightBytes;
+    private long cacheExpireAfterWriteMillis = DEFAULT_CACHE_EXPIRE_AFTER_WRITE_MILLIS;
+    private long cacheExpireAfterAccessMillis;
+    private long cacheRefreshAfterWriteMillis;
+    // 0 keeps Guava's default; the cache's maximum weight is divided between its segments
+    private int cacheConcurrencyLevel;
+    private long unknownSessionCacheMaxSize = DEFAULT_UNKNOWN_SESSION_CACHE_MAX_SIZE;
+    private long unknownSessionExpireMillis;
+    private long writeBehindIntervalMillis;
+    private int writeBehindBatchSize = DEFAULT_WRITE_BEHIND_BATCH_SIZE;
+    private int writeBehindMaxAttempts = DEFAULT_WRITE_BEHIND_MAX_ATTEMPTS;
+    private volatile ScheduledExecutorService writeBehindFlusher;
+    // changed columns waiting to be written, by cluster id; guarded by itself
+    private final Map<String, PendingWrite> pendingWrites = new HashMap<String, PendingWrite>();
+    // set while a flush for a full batch is waiting for the flusher thread
+    private final AtomicBoolean batchFlushQueued = new AtomicBoolean();
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            batchFlushQueued.set(false);
+            try {
+                flushPendingWrites();
+            } catch (Throwable e) {
+                LOGGER.error("Could not write sessions", e);
+            }
+        }
+    };
+    // held while pending writes are written or a session is deleted, so a delete is never followed by a late write
+    private final Object writeLock = new Object();
 
     public BigTableJettySessionManager(ModelSession modelSession) {
         this(modelSession, modelSession.createModelUserContext());
@@ -37,20 +88,130 @@ public class BigTableJettySessionManager extends NoSqlSessionManager {
 
         getModelSession().initializeTable(JettySessionRow.TABLE_NAME, getModelUserContext());
 
-        this.cache = CacheBuilder.newBuilder()
-                .maximumSize(CACHE_MAX_SIZE)
-                .expireAfterWrite(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
-                .build(new CacheLoader<String, Optional<JettySessionRow>>() {
+        createCaches();
+    }
+
+    /**
+     * Replaces the caches with empty caches using the current settings
+     */
+    void createCaches() {
+        final boolean weighed = cacheMaxWeightBytes > 0;
+        CacheBuilder<String, JettySessionRow> builder = CacheBuilder.newBuilder()
+                .recordStats()
+                .maximumWeight(weighed ? cacheMaxWeightBytes : cacheMaxSize)
+                .weigher(new Weigher<String, JettySessionRow>() {
                     @Override
-                    public Optional<JettySessionRow> load(String clusterId) throws Exception {
-                        return Optional.fromNullable(BigTableJettySessionManager.this.jettySessionRepository.findByRowKey(clusterId, getModelUserContext()));
+                    public int weigh(String clusterId, JettySessionRow row) {
+                        return weighed ? sessionWeight(row) : 1;
                     }
                 });
+        if (cacheConcurrencyLevel > 0) {
+            builder.concurrencyLevel(cacheConcurrencyLevel);
+        }
+        if (cacheExpireAfterWriteMillis > 0) {
+            builder.expireAfterWrite(cacheExpireAfterWriteMillis, TimeUnit.MILLISECONDS);
+        }
+        if (cacheExpireAfterAccessMillis > 0) {
+            builder.expireAfterAccess(cacheExpireAfterAccessMillis, TimeUnit.MILLISECONDS);
+        }
+        if (cacheRefreshAfterWriteMillis > 0) {
+            builder.refreshAfterWrite(cacheRefreshAfterWriteMillis, TimeUnit.MILLISECONDS);
+        }
+        this.cache = builder.build(new CacheLoader<String, JettySessionRow>() {
+            @Override
+            public JettySessionRow load(String clusterId) throws Exception {
+                flushPendingWrite(clusterId);
+                // null is not cached, getUnchecked throws InvalidCacheLoadException instead
+                return BigTableJettySessionManager.this.jettySessionRepository.findByRowKey(clusterId, getModelUserContext());
+            }
+        });
+
+        if (unknownSessionExpireMillis > 0) {
+            this.unknownSessionCache = CacheBuilder.newBuilder()
+                    .recordStats()
+                    .maximumSize(unknownSessionCacheMaxSize)
+                    .expireAfterWrite(unknownSessionExpireMillis, TimeUnit.MILLISECONDS)
+                    .build();
+        } else {
+            this.unknownSessionCache = null;
+        }
+    }
+
+    /**
+     * @return the number of bytes of the names and values of the session's columns
+     */
+    private static int sessionWeight(JettySessionRow row) {
+        int weight = row.getRowKey().toString().length();
+        for (ColumnFamily columnFamily : row.getColumnFamilies()) {
+            for (Column column : columnFamily.getColumns()) {
+                weight += column.getName().length() + (column.getValue() == null ? 0 : column.getValue().length());
+            }
+        }
+        return weight;
+    }
+
+    private Optional<JettySessionRow> findRow(String clusterId) {
+        Cache<String, Boolean> unknownSessionCache = this.unknownSessionCache;
+        if (unknownSessionCache != null && unknownSessionCache.getIfPresent(clusterId) != null) {
+            return Optional.absent();
+        }
+        try {
+            return Optional.of(cache.getUnchecked(clusterId));
+        } catch (CacheLoader.InvalidCacheLoadException e) {
+            if (unknownSessionCache != null) {
+                unknownSessionCache.put(clusterId, Boolean.TRUE);
+            }
+            return Optional.absent();
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        createCaches();
+        super.doStart();
+        if (writeBehindIntervalMillis > 0) {
+            startWriteBehindFlusher();
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        try {
+            super.doStop();
+        } finally {
+            stopWriteBehindFlusher();
+        }
+    }
+
+    void startWriteBehindFlusher() {
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bigtable-jetty-session-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(flushTask, writeBehindIntervalMillis, writeBehindIntervalMillis, TimeUnit.MILLISECONDS);
+        writeBehindFlusher = flusher;
+    }
+
+    /**
+     * Stops the background writes and writes the sessions still waiting to be written
+     */
+    void stopWriteBehindFlusher() throws InterruptedException {
+        ScheduledExecutorService flusher = writeBehindFlusher;
+        writeBehindFlusher = null;
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher.awaitTermination(writeBehindIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        flushPendingWrites();
     }
 
     @Override
     protected NoSqlSession loadSession(String clusterId) {
-        Optional<JettySessionRow> row = cache.getUnchecked(clusterId);
+        Optional<JettySessionRow> row = findRow(clusterId);
         if (!row.isPresent()) {
             return null;
         }
@@ -72,13 +233,12 @@ public class BigTableJettySessionManager extends NoSqlSessionManager {
             JettySessionRow row;
             JettySessionMetadata metadata;
 
-            Optional<JettySessionRow> optionalRow = cache.getUnchecked(session.getClusterId());
+            Optional<JettySessionRow> optionalRow = findRow(session.getClusterId());
 
             if (!optionalRow.isPresent()) {
                 // new session
                 isNew = true;
                 row = new JettySessionRow(new JettySessionRowKey(session.getClusterId()));
-                cache.put(session.getClusterId(), Optional.of(row));
                 metadata = row.getMetadata();
                 metadata.setCreated(session.getCreationTime());
                 metadata.setClusterId(session.getClusterId());
@@ -101,10 +261,19 @@ public class BigTableJettySessionManager extends NoSqlSessionManager {
                 data.setObject(name, session.getAttribute(name));
             }
 
-            jettySessionRepository.save(row, FlushFlag.FLUSH);
+            if (isWriteBehind()) {
+                writeBehind(takeDirtyColumns(row));
+            } else {
+                jettySessionRepository.save(row, FlushFlag.FLUSH);
+            }
+            // the cache only weighs a row and restarts its expiry when it is put, so put it once its attributes are set
+            cache.put(session.getClusterId(), row);
+            if (isNew && unknownSessionCache != null) {
+                unknownSessionCache.invalidate(session.getClusterId());
+            }
         } else {
             // invalid session
-            jettySessionRepository.delete(new JettySessionRowKey(session.getClusterId()));
+            delete(new JettySessionRowKey(session.getClusterId()));
             cache.invalidate(session.getClusterId());
         }
 
@@ -117,7 +286,7 @@ public class BigTableJettySessionManager extends NoSqlSessionManager {
 
     @Override
     protected Object refresh(NoSqlSession session, Object version) {
-        Optional<JettySessionRow> optRow = cache.getUnchecked(session.getClusterId());
+        Optional<JettySessionRow> optRow = findRow(session.getClusterId());
 
         if (version != null) {
             if (optRow.isPresent()) {
@@ -140,8 +309,15 @@ public class BigTableJettySessionManager extends NoSqlSessionManager {
         session.clearAttributes();
         setData(session, row.getData());
 
-        row.getMetadata().setAccessed(System.currentTimeMillis());
-        jettySessionRepository.save(row);
+        long accessed = System.currentTimeMillis();
+        row.getMetadata().setAccessed(accessed);
+        JettySessionRow accessedRow = new JettySessionRow(row.getRowKey());
+        accessedRow.getMetadata().setAccessed(accessed);
+        if (isWriteBehind()) {
+            writeBehind(accessedRow);
+        } else {
+            jettySessionRepository.save(accessedRow);
+        }
 
         session.didActivate();
 
@@ -150,10 +326,10 @@ public class BigTableJettySessionManager extends NoSqlSessionManager {
 
     @Override
     protected boolean remove(NoSqlSession session) {
-        Optional<JettySessionRow> optRow = cache.getUnchecked(session.getClusterId());
+        Optional<JettySessionRow> optRow = findRow(session.getClusterId());
 
         if (optRow.isPresent()) {
-            jettySessionRepository.delete(optRow.get().getRowKey());
+            delete(optRow.get().getRowKey());
             cache.invalidate(session.getClusterId());
             return true;
         } else {
@@ -166,6 +342,133 @@ public class BigTableJettySessionManager extends NoSqlSessionManager {
         // TODO
     }
 
+    private boolean isWriteBehind() {
+        return writeBehindFlusher != null;
+    }
+
+    /**
+     * Copies the changed columns of the row into a new row and marks them as written
+     */
+    JettySessionRow takeDirtyColumns(JettySessionRow row) {
+        JettySessionRow changes = new JettySessionRow(row.getRowKey());
+        for (ColumnFamily columnFamily : row.getColumnFamilies()) {
+            ColumnFamily changedColumnFamily = columnFamily.getColumnFamilyName().equals(JettySessionData.COLUMN_FAMILY_NAME)
+                    ? changes.getData() : changes.getMetadata();
+            for (Column column : columnFamily.getColumns()) {
+                if (column.isDirty()) {
+                    changedColumnFamily.set(column.getName(), column.getValue(), column.getVisibility());
+                    column.setDirty(false);
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Merges the changes into the changes already waiting to be written for the session, later values winning.
+     * A full batch is handed to the flusher thread so the request never waits for the write.
+     */
+    void writeBehind(JettySessionRow changes) {
+        int pendingWriteCount;
+        synchronized (pendingWrites) {
+            String clusterId = changes.getRowKey().toString();
+            PendingWrite pendingWrite = pendingWrites.get(clusterId);
+            if (pendingWrite == null) {
+                pendingWrites.put(clusterId, new PendingWrite(changes));
+            } else {
+                pendingWrite.changes.update(changes);
+            }
+            pendingWriteCount = pendingWrites.size();
+        }
+        if (pendingWriteCount >= writeBehindBatchSize && batchFlushQueued.compareAndSet(false, true)) {
+            ScheduledExecutorService flusher = writeBehindFlusher;
+            try {
+                if (flusher == null) {
+                    // stopping, the pending writes are written when the flusher has stopped
+                    batchFlushQueued.set(false);
+                } else {
+                    flusher.execute(flushTask);
+                }
+            } catch (RejectedExecutionException e) {
+                batchFlushQueued.set(false);
+            }
+        }
+    }
+
+    private void flushPendingWrite(String clusterId) {
+        boolean pending;
+        synchronized (pendingWrites) {
+            pending = pendingWrites.containsKey(clusterId);
+        }
+        if (pending) {
+            flushPendingWrites();
+        }
+    }
+
+    /**
+     * Writes every session waiting to be written and waits for them to be flushed. Sessions that could not be
+     * written are put back to be retried with the next flush, and dropped once they failed
+     * {@link #getWriteBehindMaxAttempts()} times.
+     */
+    public void flushPendingWrites() {
+        synchronized (writeLock) {
+            List<PendingWrite> writes;
+            synchronized (pendingWrites) {
+                if (pendingWrites.isEmpty()) {
+                    return;
+                }
+                writes = new ArrayList<PendingWrite>(pendingWrites.values());
+                pendingWrites.clear();
+            }
+            List<JettySessionRow> rows = new ArrayList<JettySessionRow>(writes.size());
+            for (PendingWrite write : writes) {
+                rows.add(write.changes);
+            }
+            try {
+                jettySessionRepository.saveManyAsync(rows).get();
+            } catch (Exception e) {
+                LOGGER.error("Could not write " + rows.size() + " sessions, retrying with the next flush", e);
+                synchronized (pendingWrites) {
+                    for (PendingWrite write : writes) {
+                        String clusterId = write.changes.getRowKey().toString();
+                        write.failedAttempts++;
+                        if (write.failedAttempts >= writeBehindMaxAttempts) {
+                            // changes saved since this flush started stay pending on their own
+                            LOGGER.error("Dropping changes to session " + clusterId + " after " + write.failedAttempts + " failed writes");
+                            continue;
+                        }
+                        PendingWrite newerWrite = pendingWrites.get(clusterId);
+                        if (newerWrite != null) {
+                            write.changes.update(newerWrite.changes);
+                        }
+                        pendingWrites.put(clusterId, write);
+                    }
+                }
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    void delete(JettySessionRowKey rowKey) {
+        synchronized (writeLock) {
+            synchronized (pendingWrites) {
+                pendingWrites.remove(rowKey.toString());
+            }
+            jettySessionRepository.delete(rowKey);
+        }
+    }
+
+    /**
+     * @return the number of sessions with changes waiting to be written
+     */
+    public int getPendingWriteCount() {
+        synchronized (pendingWrites) {
+            return pendingWrites.size();
+        }
+    }
+
     private void setData(NoSqlSession session, JettySessionData data) {
         for (Column col : data.getColumns()) {
             String name = col.getName();
@@ -187,4 +490,158 @@ public class BigTableJettySessionManager extends NoSqlSessionManager {
     public JettySessionRepository getJettySessionRepository() {
         return jettySessionRepository;
     }
+
+    /**
+     * @return hit, miss, load and eviction counts of the session cache since it was created
+     */
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    void setCacheConcurrencyLevel(int cacheConcurrencyLevel) {
+        this.cacheConcurrencyLevel = cacheConcurrencyLevel;
+    }
+
+    public long getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * @return hit and miss counts of the unknown session id cache, or <code>null</code> if unknown ids are not cached
+     */
+    public CacheStats getUnknownSessionCacheStats() {
+        Cache<String, Boolean> unknownSessionCache = this.unknownSessionCache;
+        return unknownSessionCache == null ? null : unknownSessionCache.stats();
+    }
+
+    public long getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    /**
+     * Sets the maximum number of cached sessions, used when no maximum weight is set
+     */
+    public BigTableJettySessionManager setCacheMaxSize(long cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+        return this;
+    }
+
+    public long getCacheMaxWeightBytes() {
+        return cacheMaxWeightBytes;
+    }
+
+    /**
+     * Bounds the cache by the bytes of the cached sessions' attribute names and serialized values instead of by
+     * their number. 0, the default, bounds it by {@link #getCacheMaxSize()}. The bound is divided between the
+     * segments of the cache, so it should be many times the size of the largest session.
+     */
+    public BigTableJettySessionManager setCacheMaxWeightBytes(long cacheMaxWeightBytes) {
+        this.cacheMaxWeightBytes = cacheMaxWeightBytes;
+        return this;
+    }
+
+    public long getCacheExpireAfterWriteMillis() {
+        return cacheExpireAfterWriteMillis;
+    }
+
+    /**
+     * Sets how long a session stays cached after it was loaded or saved, 0 for no limit
+     */
+    public BigTableJettySessionManager setCacheExpireAfterWriteMillis(long cacheExpireAfterWriteMillis) {
+        this.cacheExpireAfterWriteMillis = cacheExpireAfterWriteMillis;
+        return this;
+    }
+
+    public long getCacheExpireAfterAccessMillis() {
+        return cacheExpireAfterAccessMillis;
+    }
+
+    /**
+     * Sets how long a session stays cached after it was last used, 0 for no limit
+     */
+    public BigTableJettySessionManager setCacheExpireAfterAccessMillis(long cacheExpireAfterAccessMillis) {
+        this.cacheExpireAfterAccessMillis = cacheExpireAfterAccessMillis;
+        return this;
+    }
+
+    public long getCacheRefreshAfterWriteMillis() {
+        return cacheRefreshAfterWriteMillis;
+    }
+
+    /**
+     * Sets how long after it was loaded or saved a cached session is reloaded from the table the next time it is
+     * used, to pick up changes made by other nodes. 0, the default, never reloads it.
+     */
+    public BigTableJettySessionManager setCacheRefreshAfterWriteMillis(long cacheRefreshAfterWriteMillis) {
+        this.cacheRefreshAfterWriteMillis = cacheRefreshAfterWriteMillis;
+        return this;
+    }
+
+    public long getUnknownSessionCacheMaxSize() {
+        return unknownSessionCacheMaxSize;
+    }
+
+    public BigTableJettySessionManager setUnknownSessionCacheMaxSize(long unknownSessionCacheMaxSize) {
+        this.unknownSessionCacheMaxSize = unknownSessionCacheMaxSize;
+        return this;
+    }
+
+    public long getUnknownSessionExpireMillis() {
+        return unknownSessionExpireMillis;
+    }
+
+    /**
+     * Sets how long an id that was not found is reported as unknown without looking it up again. 0, the default,
+     * looks up unknown ids every time.
+     */
+    public BigTableJettySessionManager setUnknownSessionExpireMillis(long unknownSessionExpireMillis) {
+        this.unknownSessionExpireMillis = unknownSessionExpireMillis;
+        return this;
+    }
+
+    public long getWriteBehindIntervalMillis() {
+        return writeBehindIntervalMillis;
+    }
+
+    /**
+     * Sets how often saved sessions are written in the background. 0, the default, writes every save before the
+     * request completes. Takes effect when the manager is started.
+     */
+    public BigTableJettySessionManager setWriteBehindIntervalMillis(long writeBehindIntervalMillis) {
+        this.writeBehindIntervalMillis = writeBehindIntervalMillis;
+        return this;
+    }
+
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    /**
+     * Sets the number of sessions waiting to be written at which they are written without waiting for the interval
+     */
+    public BigTableJettySessionManager setWriteBehindBatchSize(int writeBehindBatchSize) {
+        this.writeBehindBatchSize = writeBehindBatchSize;
+        return this;
+    }
+
+    public int getWriteBehindMaxAttempts() {
+        return writeBehindMaxAttempts;
+    }
+
+    /**
+     * Sets the number of failed writes after which the changes to a session are dropped instead of retried
+     */
+    public BigTableJettySessionManager setWriteBehindMaxAttempts(int writeBehindMaxAttempts) {
+        this.writeBehindMaxAttempts = writeBehindMaxAttempts;
+        return this;
+    }
+
+    private static class PendingWrite {
+        private final JettySessionRow changes;
+        private int failedAttempts;
+
+        private PendingWrite(JettySessionRow changes) {
+            this.changes = changes;
+        }
+    }
 }
@@ -0,0 +1,219 @@
+package com.altamiracorp.bigtable.jetty;
+
+import com.altamiracorp.bigtable.jetty.model.JettySessionData;
+import com.altamiracorp.bigtable.jetty.model.JettySessionRow;
+import com.altamiracorp.bigtable.jetty.model.JettySessionRowKey;
+import com.altamiracorp.bigtable.model.ColumnFamily;
+import com.altamiracorp.bigtable.model.MockSession;
+import com.altamiracorp.bigtable.model.Row;
+import org.eclipse.jetty.nosql.NoSqlSession;
+import org.eclipse.jetty.server.session.HashSessionIdManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BigTableJettySessionManagerTest {
+    private RecordingSession session;
+    private BigTableJettySessionManager manager;
+
+    @Before
+    public void before() {
+        session = new RecordingSession();
+        manager = new BigTableJettySessionManager(session);
+        manager.setSessionIdManager(new HashSessionIdManager());
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        session.failWrites = false;
+        manager.stopWriteBehindFlusher();
+    }
+
+    private static JettySessionRow createChanges(String clusterId, String name, String value) {
+        JettySessionRow row = new JettySessionRow(new JettySessionRowKey(clusterId));
+        row.getData().set(name, value);
+        return row;
+    }
+
+    private NoSqlSession createSession(String clusterId, String name, Object value) {
+        long now = System.currentTimeMillis();
+        NoSqlSession session = new NoSqlSession(manager, now, now, clusterId, null);
+        session.setAttribute(name, value);
+        return session;
+    }
+
+    private String findValue(String clusterId, String name) {
+        Row row = session.findByRowKey(JettySessionRow.TABLE_NAME, clusterId, manager.getModelUserContext());
+        if (row == null) {
+            return null;
+        }
+        ColumnFamily data = row.get(JettySessionData.COLUMN_FAMILY_NAME);
+        return data == null || data.get(name) == null ? null : data.get(name).toString();
+    }
+
+    @Test
+    public void testChangesAreCoalesced() {
+        manager.writeBehind(createChanges("session1", "attr1", "value1"));
+        manager.writeBehind(createChanges("session1", "attr1", "value2"));
+        manager.writeBehind(createChanges("session1", "attr2", "value3"));
+        assertEquals(1, manager.getPendingWriteCount());
+        assertTrue(session.batches.isEmpty());
+
+        manager.flushPendingWrites();
+        assertEquals(1, session.batches.size());
+        assertEquals(Collections.singletonList("session1"), session.batches.get(0));
+        assertEquals("value2", findValue("session1", "attr1"));
+        assertEquals("value3", findValue("session1", "attr2"));
+        assertEquals(0, manager.getPendingWriteCount());
+    }
+
+    @Test
+    public void testOnlyDirtyColumnsAreTaken() {
+        JettySessionRow row = createChanges("session1", "attr1", "value1");
+        row.getMetadata().setAccessed(1L);
+        row.setDirtyBits(false);
+        row.getData().set("attr2", "value2");
+
+        JettySessionRow changes = manager.takeDirtyColumns(row);
+        assertEquals(0, changes.getMetadata().getColumns().size());
+        assertEquals(1, changes.getData().getColumns().size());
+        assertEquals("value2", changes.getData().get("attr2").toString());
+
+        assertEquals(0, manager.takeDirtyColumns(row).getData().getColumns().size());
+    }
+
+    @Test
+    public void testFullBatchIsWrittenByTheFlusher() throws InterruptedException {
+        manager.setWriteBehindIntervalMillis(60 * 60 * 1000).setWriteBehindBatchSize(2);
+        manager.startWriteBehindFlusher();
+
+        manager.writeBehind(createChanges("session1", "attr1", "value1"));
+        assertEquals(1, manager.getPendingWriteCount());
+        assertTrue(session.batches.isEmpty());
+
+        manager.writeBehind(createChanges("session2", "attr1", "value1"));
+        assertTrue(session.written.await(10, TimeUnit.SECONDS));
+        assertEquals(1, session.batches.size());
+        assertEquals(2, session.batches.get(0).size());
+        assertFalse(Thread.currentThread().getName().equals(session.threadNames.get(0)));
+        assertEquals("value1", findValue("session2", "attr1"));
+    }
+
+    @Test
+    public void testDeleteDropsPendingWrite() {
+        session.saveMany(JettySessionRow.TABLE_NAME, Collections.<Row>singletonList(createChanges("session1", "attr1", "value1")));
+        session.batches.clear();
+
+        manager.writeBehind(createChanges("session1", "attr1", "value2"));
+        manager.delete(new JettySessionRowKey("session1"));
+        manager.flushPendingWrites();
+
+        assertTrue(session.batches.isEmpty());
+        assertNull(findValue("session1", "attr1"));
+    }
+
+    @Test
+    public void testFailedWritesAreDroppedAfterMaxAttempts() {
+        manager.setWriteBehindMaxAttempts(2);
+        session.failWrites = true;
+        manager.writeBehind(createChanges("session1", "attr1", "value1"));
+
+        manager.flushPendingWrites();
+        assertEquals(1, manager.getPendingWriteCount());
+
+        manager.writeBehind(createChanges("session1", "attr2", "value2"));
+        manager.flushPendingWrites();
+        assertEquals(0, manager.getPendingWriteCount());
+
+        session.failWrites = false;
+        manager.flushPendingWrites();
+        assertTrue(session.batches.isEmpty());
+        assertNull(findValue("session1", "attr1"));
+    }
+
+    @Test
+    public void testPendingWritesAreWrittenOnStop() throws InterruptedException {
+        manager.setWriteBehindIntervalMillis(60 * 60 * 1000);
+        manager.startWriteBehindFlusher();
+        manager.writeBehind(createChanges("session1", "attr1", "value1"));
+        assertNull(findValue("session1", "attr1"));
+
+        manager.stopWriteBehindFlusher();
+        assertEquals("value1", findValue("session1", "attr1"));
+        assertEquals(0, manager.getPendingWriteCount());
+    }
+
+    @Test
+    public void testUnknownSessionsAreNotLookedUpAgain() {
+        manager.setUnknownSessionExpireMillis(60000);
+        manager.createCaches();
+
+        assertNull(manager.loadSession("unknown"));
+        assertNull(manager.loadSession("unknown"));
+        assertEquals(1, manager.getCacheStats().loadCount());
+        assertEquals(1, manager.getUnknownSessionCacheStats().hitCount());
+    }
+
+    @Test
+    public void testCreatedSessionIsNoLongerUnknown() {
+        manager.setUnknownSessionExpireMillis(60000);
+        manager.createCaches();
+        assertNull(manager.loadSession("session1"));
+
+        manager.save(createSession("session1", "attr1", "value1"), null, false);
+        NoSqlSession loaded = manager.loadSession("session1");
+        assertNotNull(loaded);
+        assertEquals("value1", loaded.getAttribute("attr1"));
+    }
+
+    @Test
+    public void testCacheIsBoundedBySessionWeight() {
+        // a single segment, so that the whole weight is shared by the sessions; each weighs more than its
+        // 4000 characters, so no more than 9 fit
+        manager.setCacheMaxWeightBytes(40000);
+        manager.setCacheConcurrencyLevel(1);
+        manager.createCaches();
+        char[] chars = new char[4000];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+
+        for (int i = 0; i < 20; i++) {
+            manager.save(createSession("session" + i, "attr1", value), null, false);
+        }
+        assertTrue(manager.getCacheSize() <= 9);
+        assertEquals(20, manager.getCacheSize() + manager.getCacheStats().evictionCount());
+        assertEquals(value, manager.loadSession("session0").getAttribute("attr1"));
+    }
+
+    private static class RecordingSession extends MockSession {
+        private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+        private final List<String> threadNames = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch written = new CountDownLatch(1);
+        private volatile boolean failWrites;
+
+        @Override
+        public void saveMany(String tableName, Collection<Row> rows) {
+            if (failWrites) {
+                throw new RuntimeException("write failed");
+            }
+            List<String> rowKeys = new ArrayList<String>();
+            for (Row row : rows) {
+                rowKeys.add(row.getRowKey().toString());
+            }
+            threadNames.add(Thread.currentThread().getName());
+            batches.add(rowKeys);
+            super.saveMany(tableName, rows);
+            written.countDown();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.altamiracorp.bigtable.model.local;
+
+import com.altamiracorp.bigtable.model.Column;
+import com.altamiracorp.bigtable.model.ColumnFamily;
+import com.altamiracorp.bigtable.model.Row;
+import com.altamiracorp.bigtable.model.RowKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * The stored form of a row: the cells written to it, keyed by column family and column qualifier, and
+ * whether the row was deleted. A deleted row hides every older version of the row, but not the cells
+ * written with or after the delete. Instances are immutable; writes are combined with {@link #merge}.
+ */
+class LocalRow {
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String rowKey;
+    private final boolean deleted;
+    private final SortedMap<String, SortedMap<String, Cell>> columnFamilies;
+
+    LocalRow(String rowKey, boolean deleted, SortedMap<String, SortedMap<String, Cell>> columnFamilies) {
+        this.rowKey = rowKey;
+        this.deleted = deleted;
+        this.columnFamilies = columnFamilies;
+    }
+
+    static LocalRow deletedRow(String rowKey) {
+        return new LocalRow(rowKey, true, new TreeMap<String, SortedMap<String, Cell>>());
+    }
+
+    /**
+     * Creates the cells Accumulo would write for the row: the dirty columns and the column deletes.
+     *
+     * @return the row or <code>null</code> if there is nothing to write
+     */
+    static LocalRow fromRow(Row row) {
+        SortedMap<String, SortedMap<String, Cell>> columnFamilies = new TreeMap<String, SortedMap<String, Cell>>();
+        for (ColumnFamily columnFamily : (Collection<ColumnFamily>) row.getColumnFamilies()) {
+            SortedMap<String, Cell> cells = new TreeMap<String, Cell>();
+            for (Column column : columnFamily.getColumns()) {
+                if (column.isDelete()) {
+                    cells.put(column.getName(), new Cell(column.getVisibility(), null, true));
+                } else if (column.isDirty()) {
+                    cells.put(column.getName(), new Cell(column.getVisibility(), column.getValue().toBytes(), false));
+                }
+            }
+            if (cells.size() > 0) {
+                columnFamilies.put(columnFamily.getColumnFamilyName(), cells);
+            }
+        }
+        if (columnFamilies.size() == 0) {
+            return null;
+        }
+        return new LocalRow(row.getRowKey().toString(), false, columnFamilies);
+    }
+
+    /**
+     * Combines two versions of the same row
+     *
+     * @param newer
+     * @param older
+     * @return the row as seen after writing newer on top of older
+     */
+    static LocalRow merge(LocalRow newer, LocalRow older) {
+        if (newer.deleted) {
+            return newer;
+        }
+        SortedMap<String, SortedMap<String, Cell>> columnFamilies = new TreeMap<String, SortedMap<String, Cell>>();
+        for (Map.Entry<String, SortedMap<String, Cell>> columnFamily : older.columnFamilies.entrySet()) {
+            columnFamilies.put(columnFamily.getKey(), new TreeMap<String, Cell>(columnFamily.getValue()));
+        }
+        for (Map.Entry<String, SortedMap<String, Cell>> columnFamily : newer.columnFamilies.entrySet()) {
+            SortedMap<String, Cell> cells = columnFamilies.get(columnFamily.getKey());
+            if (cells == null) {
+                cells = new TreeMap<String, Cell>();
+                columnFamilies.put(columnFamily.getKey(), cells);
+            }
+            cells.putAll(columnFamily.getValue());
+        }
+        return new LocalRow(newer.rowKey, older.deleted, columnFamilies);
+    }
+
+    /**
+     * @return a copy of the row without the deletes, used once no older versions of the row remain,
+     * or <code>null</code> if nothing is left
+     */
+    LocalRow withoutDeletes() {
+        SortedMap<String, SortedMap<String, Cell>> liveColumnFamilies = new TreeMap<String, SortedMap<String, Cell>>();
+        for (Map.Entry<String, SortedMap<String, Cell>> columnFamily : columnFamilies.entrySet()) {
+            SortedMap<String, Cell> liveCells = new TreeMap<String, Cell>();
+            for (Map.Entry<String, Cell> cell : columnFamily.getValue().entrySet()) {
+                if (!cell.getValue().isDeleted()) {
+                    liveCells.put(cell.getKey(), cell.getValue());
+                }
+            }
+            if (liveCells.size() > 0) {
+                liveColumnFamilies.put(columnFamily.getKey(), liveCells);
+            }
+        }
+        if (liveColumnFamilies.size() == 0) {
+            return null;
+        }
+        return new LocalRow(rowKey, false, liveColumnFamilies);
+    }
+
+    /**
+     * Converts the row to the model, keeping only the cells the user can see and the columns requested
+     *
+     * @param tableName
+     * @param visibilityEvaluator
+     * @param columnsToReturn     columns to return or <code>null</code> to return every column
+     * @return the row or <code>null</code> if no cells remain
+     */
+    Row toRow(String tableName, VisibilityEvaluator visibilityEvaluator, Map<String, String> columnsToReturn) {
+        Row row = new Row<RowKey>(tableName, new RowKey(rowKey));
+        for (Map.Entry<String, SortedMap<String, Cell>> columnFamily : columnFamilies.entrySet()) {
+            String columnsInFamily = columnsToReturn == null ? "*" : columnsToReturn.get(columnFamily.getKey());
+            if (columnsInFamily == null) {
+                continue;
+            }
+            ColumnFamily resultColumnFamily = new ColumnFamily(columnFamily.getKey());
+            for (Map.Entry<String, Cell> cell : columnFamily.getValue().entrySet()) {
+                if (cell.getValue().isDeleted() || !visibilityEvaluator.evaluate(cell.getValue().getVisibility())) {
+                    continue;
+                }
+                if (columnsInFamily.equals("*") || columnsInFamily.equals(cell.getKey())) {
+                    resultColumnFamily.addColumn(new Column(cell.getKey(), cell.getValue().getValue(), cell.getValue().getVisibility()));
+                }
+            }
+            if (resultColumnFamily.getColumns().size() > 0) {
+                row.addColumnFamily(resultColumnFamily);
+            }
+        }
+        if (row.getColumnFamilies().size() == 0) {
+            return null;
+        }
+        row.setDirtyBits(false);
+        return row;
+    }
+
+    String getRowKey() {
+        return rowKey;
+    }
+
+    boolean isDeleted() {
+        return deleted;
+    }
+
+    SortedMap<String, SortedMap<String, Cell>> getColumnFamilies() {
+        return columnFamilies;
+    }
+
+    int getCellCount() {
+        int count = 0;
+        for (SortedMap<String, Cell> cells : columnFamilies.values()) {
+            count += cells.size();
+        }
+        return count;
+    }
+
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, rowKey);
+            out.writeBoolean(deleted);
+            out.writeInt(columnFamilies.size());
+            for (Map.Entry<String, SortedMap<String, Cell>> columnFamily : columnFamilies.entrySet()) {
+                writeString(out, columnFamily.getKey());
+                out.writeInt(columnFamily.getValue().size());
+                for (Map.Entry<String, Cell> cell : columnFamily.getValue().entrySet()) {
+                    writeString(out, cell.getKey());
+                    writeString(out, cell.getValue().getVisibility());
+                    out.writeBoolean(cell.getValue().isDeleted());
+                    if (!cell.getValue().isDeleted()) {
+                        out.writeInt(cell.getValue().getValue().length);
+                        out.write(cell.getValue().getValue());
+                    }
+                }
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static LocalRow decode(ByteBuffer buffer) {
+        String rowKey = readString(buffer);
+        boolean deleted = buffer.get() != 0;
+        int columnFamilyCount = buffer.getInt();
+        SortedMap<String, SortedMap<String, Cell>> columnFamilies = new TreeMap<String, SortedMap<String, Cell>>();
+        for (int i = 0; i < columnFamilyCount; i++) {
+            String columnFamilyName = readString(buffer);
+            int cellCount = buffer.getInt();
+            SortedMap<String, Cell> cells = new TreeMap<String, Cell>();
+            for (int j = 0; j < cellCount; j++) {
+                String columnName = readString(buffer);
+                String visibility = readString(buffer);
+                boolean cellDeleted = buffer.get() != 0;
+                byte[] value = null;
+                if (!cellDeleted) {
+                    value = new byte[buffer.getInt()];
+                    buffer.get(value);
+                }
+                cells.put(columnName, new Cell(visibility, value, cellDeleted));
+            }
+            columnFamilies.put(columnFamilyName, cells);
+        }
+        return new LocalRow(rowKey, deleted, columnFamilies);
+    }
+
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    static class Cell {
+        private final String visibility;
+        private final byte[] value;
+        private final boolean deleted;
+
+        Cell(String visibility, byte[] value, boolean deleted) {
+            this.visibility = visibility;
+            this.value = value;
+            this.deleted = deleted;
+        }
+
+        String getVisibility() {
+            return visibility;
+        }
+
+        byte[] getValue() {
+            return value;
+        }
+
+        boolean isDeleted() {
+            return deleted;
+        }
+    }
+}
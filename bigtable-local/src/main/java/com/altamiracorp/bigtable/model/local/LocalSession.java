@@ -0,0 +1,553 @@
+package com.altamiracorp.bigtable.model.local;
+
+import com.altamiracorp.bigtable.model.*;
+import com.altamiracorp.bigtable.model.exceptions.MutationsWriteException;
+import com.altamiracorp.bigtable.model.exceptions.TableDoesNotExistException;
+import com.altamiracorp.bigtable.model.user.ModelUserContext;
+import com.altamiracorp.bigtable.model.user.ModelUserContextRegistry;
+import com.altamiracorp.bigtable.model.user.local.LocalUserContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded session that stores tables on the local disk, for running without a cluster. Each table is a
+ * {@link LocalTable} in a sub-directory of <code>bigtable.local.directory</code>: a write ahead log and
+ * memtable in front of sorted, memory-mapped segment files. Column visibilities are evaluated against the
+ * authorizations of the {@link LocalUserContext} like Accumulo does.
+ */
+public class LocalSession extends ModelSession {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalSession.class);
+
+    private static final String LOCAL_DIRECTORY = "bigtable.local.directory";
+    private static final String LOCAL_MEMTABLE_MAX_BYTES = "bigtable.local.memtableMaxBytes";
+    private static final String LOCAL_MAX_SEGMENTS = "bigtable.local.maxSegments";
+    private static final long DEFAULT_MEMTABLE_MAX_BYTES = 16 * 1024 * 1024;
+    private static final int DEFAULT_MAX_SEGMENTS = 4;
+    private static final int ALTER_BATCH_SIZE = 1000;
+
+    private File directory;
+    private long memtableMaxBytes = DEFAULT_MEMTABLE_MAX_BYTES;
+    private int maxSegments = DEFAULT_MAX_SEGMENTS;
+    private boolean autoflush = true;
+    private final ConcurrentMap<String, LocalTable> tables = new ConcurrentHashMap<String, LocalTable>();
+    private final ModelUserContextRegistry<LocalUserContext> userContexts = new ModelUserContextRegistry<LocalUserContext>() {
+        @Override
+        protected LocalUserContext create(String[] authorizations) {
+            return new LocalUserContext(new HashSet<String>(Arrays.asList(authorizations)));
+        }
+    };
+
+    public LocalSession() {
+    }
+
+    public LocalSession(File directory, boolean autoflush) {
+        this.directory = directory;
+        this.autoflush = autoflush;
+        openTables();
+    }
+
+    @Override
+    public void init(Map<String, Object> properties) {
+        LOGGER.trace("init called with parameters: properties=?", properties);
+        if (properties.get(LOCAL_DIRECTORY) == null) {
+            throw new IllegalStateException("Configuration property " + LOCAL_DIRECTORY + " missing!");
+        }
+        directory = new File(properties.get(LOCAL_DIRECTORY).toString());
+        if (properties.get(LOCAL_MEMTABLE_MAX_BYTES) != null) {
+            memtableMaxBytes = Long.parseLong(properties.get(LOCAL_MEMTABLE_MAX_BYTES).toString());
+        }
+        if (properties.get(LOCAL_MAX_SEGMENTS) != null) {
+            maxSegments = Integer.parseInt(properties.get(LOCAL_MAX_SEGMENTS).toString());
+        }
+        if (properties.get(CONFIG_AUTOFLUSH) != null) {
+            autoflush = Boolean.parseBoolean(properties.get(CONFIG_AUTOFLUSH).toString());
+        }
+        openTables();
+    }
+
+    private void openTables() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Could not create directory: " + directory);
+        }
+        File[] tableDirectories = directory.listFiles();
+        for (File tableDirectory : tableDirectories == null ? new File[0] : tableDirectories) {
+            if (tableDirectory.isDirectory()) {
+                String tableName = decodeTableName(tableDirectory.getName());
+                try {
+                    tables.put(tableName, LocalTable.open(tableName, tableDirectory, memtableMaxBytes, maxSegments));
+                } catch (IOException e) {
+                    throw new RuntimeException("Could not open table: " + tableName, e);
+                }
+            }
+        }
+    }
+
+    private LocalTable getTable(String tableName) {
+        LocalTable table = tables.get(tableName);
+        if (table == null) {
+            throw new TableDoesNotExistException("Could not find table: " + tableName, null);
+        }
+        return table;
+    }
+
+    private boolean isSync(FlushFlag flushFlag) {
+        switch (flushFlag) {
+            case DEFAULT:
+                return autoflush;
+            case FLUSH:
+                return true;
+            case NO_FLUSH:
+                return false;
+            default:
+                throw new RuntimeException("Unexpected flush flag: " + flushFlag);
+        }
+    }
+
+    /**
+     * Writes the rows; with no rows only forces the write ahead log to disk if the flag asks for it, for the
+     * last of several batches
+     */
+    private void write(String tableName, List<LocalRow> rows, FlushFlag flushFlag) {
+        boolean sync = isSync(flushFlag);
+        if (rows.size() == 0 && !sync) {
+            return;
+        }
+        try {
+            getTable(tableName).write(rows, sync);
+        } catch (IOException e) {
+            throw new MutationsWriteException("Could not write to table: " + tableName, e);
+        }
+    }
+
+    @Override
+    public void save(Row row, FlushFlag flushFlag) {
+        LOGGER.trace("save called with parameters: row=?, flushFlag=?", row, flushFlag);
+        LocalRow localRow = LocalRow.fromRow(row);
+        if (localRow != null) {
+            write(row.getTableName(), Collections.singletonList(localRow), flushFlag);
+        }
+    }
+
+    @Override
+    public void saveMany(String tableName, Collection<Row> rows) {
+        LOGGER.trace("saveMany called with parameters: tableName=?, rows=?", tableName, rows);
+        List<LocalRow> localRows = new ArrayList<LocalRow>(rows.size());
+        for (Row row : rows) {
+            LocalRow localRow = LocalRow.fromRow(row);
+            if (localRow != null) {
+                localRows.add(localRow);
+            }
+        }
+        write(tableName, localRows, FlushFlag.DEFAULT);
+    }
+
+    /**
+     * Scans the ranges in order, converting the stored rows to rows the user can see as they are read. Nothing
+     * is read until the returned rows are iterated, and every iteration scans the table again.
+     */
+    private Iterable<Row> scan(final String tableName, final Collection<RowKeyRange> ranges, final Pattern rowKeyPattern, ScanOptions scanOptions, final ModelUserContext user) {
+        final LocalTable table = getTable(tableName);
+        final long limit = scanOptions.getLimit();
+        final Map<String, String> columnsToReturn = scanOptions.getColumnsToReturn();
+        return new Iterable<Row>() {
+            @Override
+            public Iterator<Row> iterator() {
+                return new ScanIterator(tableName, table, ranges.iterator(), rowKeyPattern, limit, columnsToReturn, createVisibilityEvaluator(user));
+            }
+        };
+    }
+
+    private VisibilityEvaluator createVisibilityEvaluator(ModelUserContext user) {
+        if (user instanceof LocalUserContext) {
+            return new VisibilityEvaluator(((LocalUserContext) user).getAuthorizations());
+        }
+        return new VisibilityEvaluator(Collections.<String>emptySet());
+    }
+
+    @Override
+    public Iterable<Row> findByRowKeyRange(String tableName, String keyStart, String keyEnd, ScanOptions scanOptions, ModelUserContext user) {
+        LOGGER.trace("findByRowKeyRange called with parameters: tableName=?, keyStart=?, keyEnd=?, scanOptions=?, user=?", tableName, keyStart, keyEnd, scanOptions, user);
+        return scan(tableName, Collections.singletonList(new RowKeyRange(keyStart, keyEnd)), null, scanOptions, user);
+    }
+
+    @Override
+    public Iterable<Row> findByRowStartsWith(String tableName, String rowKeyPrefix, ScanOptions scanOptions, ModelUserContext user) {
+        LOGGER.trace("findByRowStartsWith called with parameters: tableName=?, rowKeyPrefix=?, scanOptions=?, user=?", tableName, rowKeyPrefix, scanOptions, user);
+        return scan(tableName, Collections.singletonList(RowKeyRange.prefix(rowKeyPrefix)), null, scanOptions, user);
+    }
+
+    @Override
+    public CloseableIterable<Row> findByRowKeyRanges(String tableName, Collection<RowKeyRange> ranges, ScanOptions scanOptions, ModelUserContext user, int threads) {
+        LOGGER.trace("findByRowKeyRanges called with parameters: tableName=?, ranges=?, scanOptions=?, user=?, threads=?", tableName, ranges, scanOptions, user, threads);
+        return CloseableIterables.of(scan(tableName, new ArrayList<RowKeyRange>(ranges), null, scanOptions, user));
+    }
+
+    @Override
+    public Iterable<Row> findByRowKeyRegex(String tableName, String rowKeyRegex, ScanOptions scanOptions, ModelUserContext user) {
+        LOGGER.trace("findByRowKeyRegex called with parameters: tableName=?, rowKeyRegex=?, scanOptions=?, user=?", tableName, rowKeyRegex, scanOptions, user);
+        return scan(tableName, Collections.singletonList(new RowKeyRange(null, null)), Pattern.compile(rowKeyRegex), scanOptions, user);
+    }
+
+    @Override
+    public Iterable<Row> findAll(String tableName, ScanOptions scanOptions, ModelUserContext user) {
+        LOGGER.trace("findAll called with parameters: tableName=?, scanOptions=?, user=?", tableName, scanOptions, user);
+        return scan(tableName, Collections.singletonList(new RowKeyRange(null, null)), null, scanOptions, user);
+    }
+
+    /**
+     * @return the first string that sorts after every string starting with the prefix, or
+     * <code>null</code> if there is none
+     */
+    private static String followingPrefix(String prefix) {
+        int i = prefix.length() - 1;
+        while (i >= 0 && prefix.charAt(i) == Character.MAX_VALUE) {
+            i--;
+        }
+        if (i < 0) {
+            return null;
+        }
+        return prefix.substring(0, i) + (char) (prefix.charAt(i) + 1);
+    }
+
+    @Override
+    public long rowCount(String tableName, ModelUserContext user) {
+        return rowCount(tableName, new RowKeyRange(null, null), user);
+    }
+
+    @Override
+    public long rowCount(String tableName, RowKeyRange range, ModelUserContext user) {
+        LOGGER.trace("rowCount called with parameters: tableName=?, range=?, user=?", tableName, range, user);
+        String end = range.isPrefix() ? followingPrefix(range.getPrefix()) : range.getEnd();
+        Iterator<LocalRow> rows = getTable(tableName).scan(range.getStart(), end);
+        VisibilityEvaluator visibilityEvaluator = createVisibilityEvaluator(user);
+        long count = 0;
+        while (rows.hasNext()) {
+            if (rows.next().toRow(tableName, visibilityEvaluator, null) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Estimates from the segment indexes and the memtable without reading any rows. Rows that were
+     * rewritten after being written to a segment are counted once per segment.
+     */
+    @Override
+    public TableStats estimateStats(String tableName, RowKeyRange range) {
+        LOGGER.trace("estimateStats called with parameters: tableName=?, range=?", tableName, range);
+        String start = range == null ? null : range.getStart();
+        String end = range == null ? null : range.isPrefix() ? followingPrefix(range.getPrefix()) : range.getEnd();
+        long[] estimate = getTable(tableName).estimate(start, end);
+        return new TableStats(estimate[0], estimate[1], estimate[2], (int) estimate[3], false);
+    }
+
+    @Override
+    public Row findByRowKey(String tableName, String rowKey, ModelUserContext user) {
+        return findByRowKey(tableName, rowKey, null, user);
+    }
+
+    @Override
+    public Row findByRowKey(String tableName, String rowKey, Map<String, String> columnsToReturn, ModelUserContext user) {
+        LOGGER.trace("findByRowKey called with parameters: tableName=?, rowKey=?, columnsToReturn=?, user=?", tableName, rowKey, columnsToReturn, user);
+        LocalRow row = getTable(tableName).get(rowKey);
+        if (row == null) {
+            return null;
+        }
+        return row.toRow(tableName, createVisibilityEvaluator(user), columnsToReturn);
+    }
+
+    @Override
+    public Map<String, Row> findByRowKeys(String tableName, Collection<String> rowKeys, Map<String, String> columnsToReturn, ModelUserContext user) {
+        LOGGER.trace("findByRowKeys called with parameters: tableName=?, rowKeys=?, columnsToReturn=?, user=?", tableName, rowKeys, columnsToReturn, user);
+        Map<String, Row> results = new LinkedHashMap<String, Row>();
+        for (String rowKey : rowKeys) {
+            Row row = findByRowKey(tableName, rowKey, columnsToReturn, user);
+            if (row != null) {
+                results.put(rowKey, row);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void initializeTable(String tableName, ModelUserContext user) {
+        LOGGER.trace("initializeTable called with parameters: tableName=?, user=?", tableName, user);
+        synchronized (tables) {
+            if (tables.containsKey(tableName)) {
+                return;
+            }
+            try {
+                File tableDirectory = new File(directory, encodeTableName(tableName));
+                tables.put(tableName, LocalTable.open(tableName, tableDirectory, memtableMaxBytes, maxSegments));
+            } catch (IOException e) {
+                throw new RuntimeException("Could not create table: " + tableName, e);
+            }
+        }
+    }
+
+    @Override
+    public void deleteTable(String tableName, ModelUserContext user) {
+        LOGGER.trace("deleteTable called with parameters: tableName=?, user=?", tableName, user);
+        synchronized (tables) {
+            LocalTable table = tables.remove(tableName);
+            if (table == null) {
+                return;
+            }
+            try {
+                table.delete();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not delete table: " + tableName, e);
+            }
+        }
+    }
+
+    @Override
+    public void deleteRow(String tableName, RowKey rowKey, FlushFlag flushFlag) {
+        deleteRows(tableName, Collections.singletonList(rowKey), flushFlag);
+    }
+
+    @Override
+    public void deleteRows(String tableName, Collection<RowKey> rowKeys, FlushFlag flushFlag) {
+        LOGGER.trace("deleteRows called with parameters: tableName=?, rowKeys=?, flushFlag=?", tableName, rowKeys, flushFlag);
+        List<LocalRow> deletes = new ArrayList<LocalRow>(rowKeys.size());
+        for (RowKey rowKey : rowKeys) {
+            deletes.add(LocalRow.deletedRow(rowKey.toString()));
+        }
+        write(tableName, deletes, flushFlag);
+    }
+
+    /**
+     * Writes a row delete for every row in the range in batches; the rows are removed from disk by compactions.
+     */
+    @Override
+    public void deleteRange(String tableName, String rowKeyStart, String rowKeyEnd) {
+        LOGGER.trace("deleteRange called with parameters: tableName=?, rowKeyStart=?, rowKeyEnd=?", tableName, rowKeyStart, rowKeyEnd);
+        Iterator<LocalRow> rows = getTable(tableName).scan(rowKeyStart, rowKeyEnd);
+        List<LocalRow> deletes = new ArrayList<LocalRow>();
+        while (rows.hasNext()) {
+            deletes.add(LocalRow.deletedRow(rows.next().getRowKey()));
+            if (deletes.size() >= ALTER_BATCH_SIZE) {
+                write(tableName, deletes, FlushFlag.NO_FLUSH);
+                deletes = new ArrayList<LocalRow>();
+            }
+        }
+        write(tableName, deletes, FlushFlag.DEFAULT);
+    }
+
+    @Override
+    public void deleteByPrefix(String tableName, String rowKeyPrefix) {
+        deleteRange(tableName, rowKeyPrefix, followingPrefix(rowKeyPrefix));
+    }
+
+    @Override
+    public void deleteColumn(Row row, String tableName, String columnFamily, String columnQualifier, String columnVisibility) {
+        LOGGER.trace("deleteColumn called with parameters: row=?, tableName=?, columnFamily=?, columnQualifier=?", row, tableName, columnFamily, columnQualifier);
+        SortedMap<String, LocalRow.Cell> cells = new TreeMap<String, LocalRow.Cell>();
+        cells.put(columnQualifier, new LocalRow.Cell(columnVisibility, null, true));
+        SortedMap<String, SortedMap<String, LocalRow.Cell>> columnFamilies = new TreeMap<String, SortedMap<String, LocalRow.Cell>>();
+        columnFamilies.put(columnFamily, cells);
+        write(tableName, Collections.singletonList(new LocalRow(row.getRowKey().toString(), false, columnFamilies)), FlushFlag.DEFAULT);
+    }
+
+    @Override
+    public List<String> getTableList(ModelUserContext user) {
+        LOGGER.trace("getTableList called with parameters: user=?", user);
+        return new ArrayList<String>(tables.keySet());
+    }
+
+    /**
+     * Writes the memtables to segments and closes the tables
+     */
+    @Override
+    public void close() {
+        for (LocalTable table : tables.values()) {
+            try {
+                table.close();
+            } catch (IOException e) {
+                throw new MutationsWriteException("Could not close table: " + table.getTableName(), e);
+            }
+        }
+        tables.clear();
+    }
+
+    /**
+     * Forces the write ahead logs to disk
+     */
+    @Override
+    public void flush() {
+        for (LocalTable table : tables.values()) {
+            try {
+                table.sync();
+            } catch (IOException e) {
+                throw new MutationsWriteException("Could not flush table: " + table.getTableName(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the context shared by every caller with the same authorizations, in any order
+     */
+    @Override
+    public ModelUserContext createModelUserContext(String... authorizations) {
+        return userContexts.get(authorizations);
+    }
+
+    /**
+     * Rewrites the columns of the row with the matching visibility with the new visibility
+     */
+    @Override
+    public void alterColumnsVisibility(Row row, String matchVisibility, String newVisibility, FlushFlag flushFlag) {
+        LOGGER.trace("alterColumnsVisibility called with parameters: row=?, matchVisibility=?, newVisibility=?, flushFlag=?", row, matchVisibility, newVisibility, flushFlag);
+        SortedMap<String, SortedMap<String, LocalRow.Cell>> columnFamilies = new TreeMap<String, SortedMap<String, LocalRow.Cell>>();
+        for (ColumnFamily columnFamily : (Collection<ColumnFamily>) row.getColumnFamilies()) {
+            SortedMap<String, LocalRow.Cell> cells = new TreeMap<String, LocalRow.Cell>();
+            for (Column column : columnFamily.getColumns()) {
+                if (matchVisibility.equals(column.getVisibility())) {
+                    cells.put(column.getName(), new LocalRow.Cell(newVisibility, column.getValue().toBytes(), false));
+                }
+            }
+            if (cells.size() > 0) {
+                columnFamilies.put(columnFamily.getColumnFamilyName(), cells);
+            }
+        }
+        if (columnFamilies.size() > 0) {
+            write(row.getTableName(), Collections.singletonList(new LocalRow(row.getRowKey().toString(), false, columnFamilies)), flushFlag);
+        }
+    }
+
+    /**
+     * Rewrites the matching cells of the rows in the range in batches, without converting the rows to the
+     * model
+     */
+    @Override
+    public long alterColumnsVisibility(String tableName, RowKeyRange range, String matchVisibility, String newVisibility) {
+        LOGGER.trace("alterColumnsVisibility called with parameters: tableName=?, range=?, matchVisibility=?, newVisibility=?", tableName, range, matchVisibility, newVisibility);
+        String end = range.isPrefix() ? followingPrefix(range.getPrefix()) : range.getEnd();
+        Iterator<LocalRow> rows = getTable(tableName).scan(range.getStart(), end);
+        List<LocalRow> alteredRows = new ArrayList<LocalRow>();
+        long count = 0;
+        while (rows.hasNext()) {
+            LocalRow row = rows.next();
+            SortedMap<String, SortedMap<String, LocalRow.Cell>> columnFamilies = new TreeMap<String, SortedMap<String, LocalRow.Cell>>();
+            for (Map.Entry<String, SortedMap<String, LocalRow.Cell>> columnFamily : row.getColumnFamilies().entrySet()) {
+                SortedMap<String, LocalRow.Cell> cells = new TreeMap<String, LocalRow.Cell>();
+                for (Map.Entry<String, LocalRow.Cell> cell : columnFamily.getValue().entrySet()) {
+                    if (!cell.getValue().isDeleted() && matchVisibility.equals(cell.getValue().getVisibility())) {
+                        cells.put(cell.getKey(), new LocalRow.Cell(newVisibility, cell.getValue().getValue(), false));
+                    }
+                }
+                if (cells.size() > 0) {
+                    columnFamilies.put(columnFamily.getKey(), cells);
+                    count += cells.size();
+                }
+            }
+            if (columnFamilies.size() > 0) {
+                alteredRows.add(new LocalRow(row.getRowKey(), false, columnFamilies));
+            }
+            if (alteredRows.size() >= ALTER_BATCH_SIZE) {
+                write(tableName, alteredRows, FlushFlag.NO_FLUSH);
+                alteredRows = new ArrayList<LocalRow>();
+            }
+        }
+        write(tableName, alteredRows, FlushFlag.FLUSH);
+        return count;
+    }
+
+    private static String encodeTableName(String tableName) {
+        try {
+            return URLEncoder.encode(tableName, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String decodeTableName(String directoryName) {
+        try {
+            return URLDecoder.decode(directoryName, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the ranges one after the other, skipping rows that do not match the pattern or that have no columns
+     * the user can see, until the limit is reached
+     */
+    private static class ScanIterator implements Iterator<Row> {
+        private final String tableName;
+        private final LocalTable table;
+        private final Iterator<RowKeyRange> ranges;
+        private final Pattern rowKeyPattern;
+        private final long limit;
+        private final Map<String, String> columnsToReturn;
+        private final VisibilityEvaluator visibilityEvaluator;
+        private Iterator<LocalRow> rows;
+        private Row next;
+        private long count;
+
+        ScanIterator(String tableName, LocalTable table, Iterator<RowKeyRange> ranges, Pattern rowKeyPattern, long limit, Map<String, String> columnsToReturn, VisibilityEvaluator visibilityEvaluator) {
+            this.tableName = tableName;
+            this.table = table;
+            this.ranges = ranges;
+            this.rowKeyPattern = rowKeyPattern;
+            this.limit = limit;
+            this.columnsToReturn = columnsToReturn;
+            this.visibilityEvaluator = visibilityEvaluator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (limit > 0 && count >= limit) {
+                return false;
+            }
+            while (true) {
+                while (rows == null || !rows.hasNext()) {
+                    if (!ranges.hasNext()) {
+                        return false;
+                    }
+                    RowKeyRange range = ranges.next();
+                    String end = range.isPrefix() ? followingPrefix(range.getPrefix()) : range.getEnd();
+                    rows = table.scan(range.getStart(), end);
+                }
+                LocalRow localRow = rows.next();
+                if (rowKeyPattern != null && !rowKeyPattern.matcher(localRow.getRowKey()).matches()) {
+                    continue;
+                }
+                next = localRow.toRow(tableName, visibilityEvaluator, columnsToReturn);
+                if (next != null) {
+                    count++;
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Row row = next;
+            next = null;
+            return row;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
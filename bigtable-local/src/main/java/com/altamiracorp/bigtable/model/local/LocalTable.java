@@ -0,0 +1,479 @@
+package com.altamiracorp.bigtable.model.local;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A log-structured table stored in its own directory. Writes are appended to a write ahead log and merged
+ * into a sorted in-memory memtable. Once the memtable is larger than <code>memtableMaxBytes</code> it is
+ * replaced by an empty memtable and a new write ahead log, and a background thread writes it to a new
+ * immutable {@link Segment} and, once there are more than <code>maxSegments</code> segments, compacts the
+ * newest ones into one. The write ahead log of a memtable is only deleted once its segment is written.
+ * <p/>
+ * Writes are serialized by the table but never wait for a segment to be written. While
+ * {@link #MAX_FLUSHING_MEMTABLES} memtables are waiting to be written the memtable keeps growing instead.
+ * Reads take a snapshot of the memtables and the segments and merge them without locking.
+ */
+class LocalTable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalTable.class);
+    private static final Pattern WAL_FILE_NAME_PATTERN = Pattern.compile("wal-(\\d+)\\.log");
+    static final int MAX_FLUSHING_MEMTABLES = 2;
+    private static final long FLUSH_RETRY_MILLIS = 1000;
+
+    private final String tableName;
+    private final File directory;
+    private final long memtableMaxBytes;
+    private final int maxSegments;
+    private final Object writeLock = new Object();
+    // held while memtables are written to segments and segments are compacted
+    private final Object flushLock = new Object();
+    private final ThreadPoolExecutor flusher;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                flushMemtables();
+            } catch (Throwable e) {
+                retryFlushAt = System.currentTimeMillis() + FLUSH_RETRY_MILLIS;
+                LOGGER.error("Could not write the memtable of " + tableName + ", retrying with the next flush", e);
+            }
+        }
+    };
+    private volatile State state;
+    private volatile long retryFlushAt;
+    private WriteAheadLog writeAheadLog;
+    private long memtableBytes;
+    private boolean closed;
+
+    private LocalTable(final String tableName, File directory, long memtableMaxBytes, int maxSegments) {
+        this.tableName = tableName;
+        this.directory = directory;
+        this.memtableMaxBytes = memtableMaxBytes;
+        this.maxSegments = maxSegments;
+        this.flusher = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bigtable-local-flush-" + tableName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.flusher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Opens the table in the directory, creating the directory if it does not exist. Any rows left in
+     * write ahead logs are written to a segment before the table is returned.
+     */
+    static LocalTable open(String tableName, File directory, long memtableMaxBytes, int maxSegments) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory: " + directory);
+        }
+        LocalTable table = new LocalTable(tableName, directory, memtableMaxBytes, maxSegments);
+        table.load();
+        return table;
+    }
+
+    private void load() throws IOException {
+        List<Segment> segments = new ArrayList<Segment>();
+        SortedMap<Long, File> writeAheadLogFiles = new TreeMap<Long, File>();
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            Matcher walMatcher = WAL_FILE_NAME_PATTERN.matcher(file.getName());
+            if (Segment.parseFileName(file.getName()) != null) {
+                segments.add(Segment.open(file));
+            } else if (walMatcher.matches()) {
+                writeAheadLogFiles.put(Long.parseLong(walMatcher.group(1)), file);
+            } else if (file.getName().endsWith(".tmp")) {
+                deleteFile(file);
+            }
+        }
+        segments = removeCompactedSegments(segments);
+
+        long lastSequence = segments.size() == 0 ? 0 : segments.get(0).getLastSequence();
+        ConcurrentNavigableMap<String, LocalRow> memtable = new ConcurrentSkipListMap<String, LocalRow>();
+        for (Map.Entry<Long, File> writeAheadLogFile : writeAheadLogFiles.entrySet()) {
+            if (writeAheadLogFile.getKey() > lastSequence) {
+                for (LocalRow row : WriteAheadLog.replay(writeAheadLogFile.getValue())) {
+                    LocalRow existingRow = memtable.get(row.getRowKey());
+                    memtable.put(row.getRowKey(), existingRow == null ? row : LocalRow.merge(row, existingRow));
+                }
+                lastSequence = writeAheadLogFile.getKey();
+            }
+        }
+
+        state = new State(memtable, new ArrayList<FlushingMemtable>(), segments);
+        synchronized (writeLock) {
+            if (memtable.size() > 0) {
+                LOGGER.info("Recovered " + memtable.size() + " rows of " + tableName + " from the write ahead log");
+            }
+            long sequence = lastSequence + 1;
+            writeAheadLog = new WriteAheadLog(new File(directory, "wal-" + sequence + ".log"));
+            replaceMemtable();
+        }
+        flushMemtables();
+        for (Map.Entry<Long, File> writeAheadLogFile : writeAheadLogFiles.entrySet()) {
+            deleteFile(writeAheadLogFile.getValue());
+        }
+    }
+
+    /**
+     * Sorts the segments newest first and removes the segments that were compacted into another segment
+     * but not deleted before a crash
+     */
+    private static List<Segment> removeCompactedSegments(List<Segment> segments) {
+        Collections.sort(segments, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment segment1, Segment segment2) {
+                if (segment1.getLastSequence() != segment2.getLastSequence()) {
+                    return segment1.getLastSequence() > segment2.getLastSequence() ? -1 : 1;
+                }
+                // the larger segment replaced the smaller one
+                return segment1.getFirstSequence() < segment2.getFirstSequence() ? -1 : 1;
+            }
+        });
+        List<Segment> results = new ArrayList<Segment>();
+        for (Segment segment : segments) {
+            Segment previous = results.size() == 0 ? null : results.get(results.size() - 1);
+            if (previous != null && segment.getLastSequence() >= previous.getFirstSequence()) {
+                deleteFile(segment.getFile());
+                continue;
+            }
+            results.add(segment);
+        }
+        return results;
+    }
+
+    /**
+     * @param rows  rows to write
+     * @param sync  whether the write ahead log should be forced to disk before returning
+     */
+    void write(List<LocalRow> rows, boolean sync) throws IOException {
+        List<byte[]> encodedRows = new ArrayList<byte[]>(rows.size());
+        for (LocalRow row : rows) {
+            encodedRows.add(row.encode());
+        }
+        synchronized (writeLock) {
+            if (closed) {
+                throw new IllegalStateException("Table is closed: " + tableName);
+            }
+            writeAheadLog.append(encodedRows);
+            if (sync) {
+                writeAheadLog.sync();
+            }
+            ConcurrentNavigableMap<String, LocalRow> memtable = state.memtable;
+            for (int i = 0; i < rows.size(); i++) {
+                LocalRow row = rows.get(i);
+                LocalRow existingRow = memtable.get(row.getRowKey());
+                memtable.put(row.getRowKey(), existingRow == null ? row : LocalRow.merge(row, existingRow));
+                memtableBytes += encodedRows.get(i).length;
+            }
+            if (memtableBytes > memtableMaxBytes) {
+                if (state.flushing.size() < MAX_FLUSHING_MEMTABLES) {
+                    replaceMemtable();
+                    flusher.execute(flushTask);
+                } else if (System.currentTimeMillis() >= retryFlushAt && flusher.getQueue().isEmpty() && flusher.getActiveCount() == 0) {
+                    // a memtable could not be written, retry while the memtable keeps growing
+                    flusher.execute(flushTask);
+                }
+            }
+        }
+    }
+
+    void sync() throws IOException {
+        synchronized (writeLock) {
+            if (!closed) {
+                writeAheadLog.sync();
+            }
+        }
+    }
+
+    /**
+     * Replaces the memtable with an empty one and starts a new write ahead log. The memtable is kept for
+     * reads until {@link #flushMemtables()} has written it to a segment. Must hold the write lock.
+     */
+    private void replaceMemtable() throws IOException {
+        State currentState = state;
+        if (currentState.memtable.size() == 0) {
+            return;
+        }
+        String walName = writeAheadLog.getFile().getName();
+        long sequence = Long.parseLong(walName.substring("wal-".length(), walName.length() - ".log".length()));
+        WriteAheadLog previousWriteAheadLog = writeAheadLog;
+        writeAheadLog = new WriteAheadLog(new File(directory, "wal-" + (sequence + 1) + ".log"));
+        previousWriteAheadLog.close();
+
+        List<FlushingMemtable> flushing = new ArrayList<FlushingMemtable>();
+        flushing.add(new FlushingMemtable(currentState.memtable, sequence, previousWriteAheadLog.getFile()));
+        flushing.addAll(currentState.flushing);
+        state = new State(new ConcurrentSkipListMap<String, LocalRow>(), flushing, currentState.segments);
+        memtableBytes = 0;
+    }
+
+    /**
+     * Writes the replaced memtables to segments, oldest first, deletes their write ahead logs and compacts the
+     * segments if there are too many. Stops at the first memtable that could not be written, so that it is
+     * retried before any newer memtable is written.
+     */
+    private void flushMemtables() throws IOException {
+        synchronized (flushLock) {
+            while (true) {
+                List<FlushingMemtable> flushing = state.flushing;
+                if (flushing.size() == 0) {
+                    break;
+                }
+                FlushingMemtable oldest = flushing.get(flushing.size() - 1);
+                Segment segment = Segment.write(directory, oldest.sequence, oldest.sequence, oldest.memtable.values().iterator());
+                synchronized (writeLock) {
+                    State currentState = state;
+                    List<FlushingMemtable> remaining = new ArrayList<FlushingMemtable>(currentState.flushing);
+                    remaining.remove(oldest);
+                    List<Segment> segments = new ArrayList<Segment>();
+                    if (segment != null) {
+                        segments.add(segment);
+                    }
+                    segments.addAll(currentState.segments);
+                    state = new State(currentState.memtable, remaining, segments);
+                }
+                deleteFile(oldest.writeAheadLogFile);
+            }
+            if (state.segments.size() > maxSegments) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Merges the newest segments that fit in a single segment. Deletes are only dropped when the oldest
+     * segment is part of the merge. Must hold the flush lock, which keeps the segments from changing while
+     * they are merged.
+     */
+    private void compact() throws IOException {
+        List<Segment> segments = state.segments;
+        int count = 0;
+        long size = 0;
+        while (count < segments.size() && size + segments.get(count).getFileSize() < Segment.MAX_SIZE) {
+            size += segments.get(count).getFileSize();
+            count++;
+        }
+        if (count < 2) {
+            LOGGER.warn("Could not compact " + tableName + ", the newest segments are too large");
+            return;
+        }
+
+        List<Segment> compactedSegments = segments.subList(0, count);
+        List<Iterator<LocalRow>> sources = new ArrayList<Iterator<LocalRow>>();
+        for (Segment segment : compactedSegments) {
+            sources.add(segment.iterator(null, null));
+        }
+        boolean dropDeletes = count == segments.size();
+        Segment segment = Segment.write(
+                directory,
+                compactedSegments.get(count - 1).getFirstSequence(),
+                compactedSegments.get(0).getLastSequence(),
+                new MergingRowIterator(sources, dropDeletes)
+        );
+        LOGGER.debug("Compacted " + count + " segments of " + tableName + " into " + segment);
+
+        List<Segment> newSegments = new ArrayList<Segment>();
+        if (segment != null) {
+            newSegments.add(segment);
+        }
+        newSegments.addAll(segments.subList(count, segments.size()));
+        synchronized (writeLock) {
+            state = new State(state.memtable, state.flushing, newSegments);
+        }
+        for (Segment compactedSegment : compactedSegments) {
+            deleteFile(compactedSegment.getFile());
+        }
+    }
+
+    /**
+     * @return the row or <code>null</code> if the row does not exist
+     */
+    LocalRow get(String rowKey) {
+        State currentState = state;
+        LocalRow row = currentState.memtable.get(rowKey);
+        for (FlushingMemtable flushing : currentState.flushing) {
+            if (row != null && row.isDeleted()) {
+                return row.withoutDeletes();
+            }
+            LocalRow flushingRow = flushing.memtable.get(rowKey);
+            if (flushingRow != null) {
+                row = row == null ? flushingRow : LocalRow.merge(row, flushingRow);
+            }
+        }
+        if (row != null && row.isDeleted()) {
+            return row.withoutDeletes();
+        }
+        for (Segment segment : currentState.segments) {
+            LocalRow segmentRow = segment.get(rowKey);
+            if (segmentRow != null) {
+                row = row == null ? segmentRow : LocalRow.merge(row, segmentRow);
+                if (row.isDeleted()) {
+                    break;
+                }
+            }
+        }
+        return row == null ? null : row.withoutDeletes();
+    }
+
+    /**
+     * @param start first row key (inclusive) or <code>null</code>
+     * @param end   last row key (exclusive) or <code>null</code>
+     * @return the rows in the range, sorted by row key
+     */
+    Iterator<LocalRow> scan(String start, String end) {
+        State currentState = state;
+        List<Iterator<LocalRow>> sources = new ArrayList<Iterator<LocalRow>>();
+        sources.add(subMap(currentState.memtable, start, end).values().iterator());
+        for (FlushingMemtable flushing : currentState.flushing) {
+            sources.add(subMap(flushing.memtable, start, end).values().iterator());
+        }
+        for (Segment segment : currentState.segments) {
+            sources.add(segment.iterator(start, end));
+        }
+        return new MergingRowIterator(sources, true);
+    }
+
+    private static Map<String, LocalRow> subMap(ConcurrentNavigableMap<String, LocalRow> map, String start, String end) {
+        if (start != null && end != null) {
+            return start.compareTo(end) < 0 ? map.subMap(start, true, end, false) : new TreeMap<String, LocalRow>();
+        }
+        if (start != null) {
+            return map.tailMap(start, true);
+        }
+        if (end != null) {
+            return map.headMap(end, false);
+        }
+        return map;
+    }
+
+    /**
+     * @return estimated rows, cells and bytes in the range. Rows that were rewritten after being written
+     * to a segment are counted more than once.
+     */
+    long[] estimate(String start, String end) {
+        State currentState = state;
+        long rows = 0;
+        long cells = 0;
+        long bytes = 0;
+        for (LocalRow row : subMap(currentState.memtable, start, end).values()) {
+            rows++;
+            cells += row.getCellCount();
+        }
+        for (FlushingMemtable flushing : currentState.flushing) {
+            for (LocalRow row : subMap(flushing.memtable, start, end).values()) {
+                rows++;
+                cells += row.getCellCount();
+            }
+        }
+        for (Segment segment : currentState.segments) {
+            rows += segment.countRows(start, end);
+            cells += segment.countCells(start, end);
+            bytes += segment.countBytes(start, end);
+        }
+        return new long[]{rows, cells, bytes, currentState.segments.size() + currentState.flushing.size() + 1};
+    }
+
+    /**
+     * Writes the memtables to segments, so the table opens without replaying the write ahead log, and
+     * closes the table
+     */
+    void close() throws IOException {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            replaceMemtable();
+            closed = true;
+        }
+        try {
+            stopFlusher();
+            flushMemtables();
+        } finally {
+            synchronized (writeLock) {
+                writeAheadLog.close();
+            }
+        }
+    }
+
+    private void stopFlusher() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the memtable of " + tableName + " to be written");
+        }
+    }
+
+    /**
+     * Closes the table without flushing the memtable and deletes its files
+     */
+    void delete() throws IOException {
+        synchronized (writeLock) {
+            if (!closed) {
+                writeAheadLog.close();
+                closed = true;
+            }
+        }
+        stopFlusher();
+        synchronized (writeLock) {
+            File[] files = directory.listFiles();
+            for (File file : files == null ? new File[0] : files) {
+                deleteFile(file);
+            }
+            deleteFile(directory);
+        }
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Could not delete " + file);
+        }
+    }
+
+    /**
+     * Snapshot of the memtable, the replaced memtables waiting to be written and the segments, each newest
+     * first, that readers work from
+     */
+    private static class State {
+        private final ConcurrentNavigableMap<String, LocalRow> memtable;
+        private final List<FlushingMemtable> flushing;
+        private final List<Segment> segments;
+
+        private State(ConcurrentNavigableMap<String, LocalRow> memtable, List<FlushingMemtable> flushing, List<Segment> segments) {
+            this.memtable = memtable;
+            this.flushing = Collections.unmodifiableList(flushing);
+            this.segments = Collections.unmodifiableList(segments);
+        }
+    }
+
+    /**
+     * A replaced memtable and the write ahead log with its rows
+     */
+    private static class FlushingMemtable {
+        private final ConcurrentNavigableMap<String, LocalRow> memtable;
+        private final long sequence;
+        private final File writeAheadLogFile;
+
+        private FlushingMemtable(ConcurrentNavigableMap<String, LocalRow> memtable, long sequence, File writeAheadLogFile) {
+            this.memtable = memtable;
+            this.sequence = sequence;
+            this.writeAheadLogFile = writeAheadLogFile;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.altamiracorp.bigtable.model.local;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges the versions of rows from several sorted sources into a single sorted stream of rows. The
+ * sources must be ordered newest first; the versions of a row are combined with {@link LocalRow#merge}.
+ * When <code>dropDeletes</code> is set the oldest data is part of the merge, so deletes are removed and
+ * rows without any remaining cells are skipped.
+ */
+class MergingRowIterator implements Iterator<LocalRow> {
+    private final Iterator<LocalRow>[] sources;
+    private final LocalRow[] heads;
+    private final boolean dropDeletes;
+    private LocalRow next;
+
+    @SuppressWarnings("unchecked")
+    MergingRowIterator(List<Iterator<LocalRow>> sources, boolean dropDeletes) {
+        this.sources = sources.toArray(new Iterator[sources.size()]);
+        this.heads = new LocalRow[sources.size()];
+        this.dropDeletes = dropDeletes;
+        for (int i = 0; i < heads.length; i++) {
+            advance(i);
+        }
+    }
+
+    private void advance(int i) {
+        heads[i] = sources[i].hasNext() ? sources[i].next() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            String rowKey = null;
+            for (LocalRow head : heads) {
+                if (head != null && (rowKey == null || head.getRowKey().compareTo(rowKey) < 0)) {
+                    rowKey = head.getRowKey();
+                }
+            }
+            if (rowKey == null) {
+                return false;
+            }
+
+            LocalRow row = null;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && heads[i].getRowKey().equals(rowKey)) {
+                    row = row == null ? heads[i] : LocalRow.merge(row, heads[i]);
+                    advance(i);
+                }
+            }
+            next = dropDeletes ? row.withoutDeletes() : row;
+        }
+        return true;
+    }
+
+    @Override
+    public LocalRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        LocalRow row = next;
+        next = null;
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Rows are read only");
+    }
+}
@@ -0,0 +1,240 @@
+package com.altamiracorp.bigtable.model.local;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable file of rows sorted by row key, memory-mapped for reads. The file holds the encoded rows,
+ * followed by an index of row key, offset and cell count for every row, followed by the offset of the
+ * index and a magic number. The index is loaded into memory when the segment is opened, so a lookup is a
+ * binary search followed by decoding a single row from the mapped file.
+ * <p/>
+ * A segment covers the write ahead logs with sequence numbers <code>firstSequence</code> to
+ * <code>lastSequence</code>, which are part of its file name.
+ */
+class Segment {
+    static final long MAX_SIZE = Integer.MAX_VALUE;
+    private static final int MAGIC = 0x42545347;
+    private static final int FOOTER_SIZE = 12;
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("segment-(\\d+)-(\\d+)\\.seg");
+
+    private final File file;
+    private final long firstSequence;
+    private final long lastSequence;
+    private final ByteBuffer buffer;
+    private final String[] rowKeys;
+    private final int[] offsets;
+    private final long[] cellCounts;
+
+    private Segment(File file, long firstSequence, long lastSequence, ByteBuffer buffer, String[] rowKeys, int[] offsets, long[] cellCounts) {
+        this.file = file;
+        this.firstSequence = firstSequence;
+        this.lastSequence = lastSequence;
+        this.buffer = buffer;
+        this.rowKeys = rowKeys;
+        this.offsets = offsets;
+        this.cellCounts = cellCounts;
+    }
+
+    static String fileName(long firstSequence, long lastSequence) {
+        return "segment-" + firstSequence + "-" + lastSequence + ".seg";
+    }
+
+    /**
+     * @return the first and last sequence numbers of a segment file name or <code>null</code> if the
+     * file is not a segment
+     */
+    static long[] parseFileName(String fileName) {
+        Matcher matcher = FILE_NAME_PATTERN.matcher(fileName);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))};
+    }
+
+    static Segment open(File file) throws IOException {
+        long[] sequences = parseFileName(file.getName());
+        if (sequences == null) {
+            throw new IOException("Not a segment file: " + file);
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        if (buffer.limit() < FOOTER_SIZE || buffer.getInt(buffer.limit() - 4) != MAGIC) {
+            throw new IOException("Corrupt segment file: " + file);
+        }
+        ByteBuffer index = buffer.duplicate();
+        index.position((int) buffer.getLong(buffer.limit() - FOOTER_SIZE));
+        int rowCount = index.getInt();
+        String[] rowKeys = new String[rowCount];
+        int[] offsets = new int[rowCount];
+        long[] cellCounts = new long[rowCount + 1];
+        for (int i = 0; i < rowCount; i++) {
+            rowKeys[i] = LocalRow.readString(index);
+            offsets[i] = index.getInt();
+            cellCounts[i + 1] = cellCounts[i] + index.getInt();
+        }
+        return new Segment(file, sequences[0], sequences[1], buffer, rowKeys, offsets, cellCounts);
+    }
+
+    /**
+     * Writes the rows, which must be sorted by row key, to a new segment in the directory
+     *
+     * @return the segment or <code>null</code> if there were no rows to write
+     */
+    static Segment write(File directory, long firstSequence, long lastSequence, Iterator<LocalRow> rows) throws IOException {
+        File file = new File(directory, fileName(firstSequence, lastSequence));
+        File tmpFile = new File(directory, file.getName() + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(tmpFile);
+        List<String> rowKeys = new ArrayList<String>();
+        List<Integer> offsets = new ArrayList<Integer>();
+        List<Integer> cellCounts = new ArrayList<Integer>();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            long offset = 0;
+            while (rows.hasNext()) {
+                LocalRow row = rows.next();
+                byte[] encodedRow = row.encode();
+                rowKeys.add(row.getRowKey());
+                offsets.add((int) offset);
+                cellCounts.add(row.getCellCount());
+                out.writeInt(encodedRow.length);
+                out.write(encodedRow);
+                offset += 4 + encodedRow.length;
+                if (offset > MAX_SIZE) {
+                    throw new IOException("Segment exceeds the maximum size of " + MAX_SIZE + " bytes: " + file);
+                }
+            }
+
+            long indexOffset = offset;
+            out.writeInt(rowKeys.size());
+            for (int i = 0; i < rowKeys.size(); i++) {
+                LocalRow.writeString(out, rowKeys.get(i));
+                out.writeInt(offsets.get(i));
+                out.writeInt(cellCounts.get(i));
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            fileOut.close();
+        }
+
+        if (rowKeys.size() == 0) {
+            tmpFile.delete();
+            return null;
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Could not rename " + tmpFile + " to " + file);
+        }
+        return open(file);
+    }
+
+    LocalRow get(String rowKey) {
+        int i = Arrays.binarySearch(rowKeys, rowKey);
+        if (i < 0) {
+            return null;
+        }
+        return readRow(i);
+    }
+
+    private LocalRow readRow(int i) {
+        ByteBuffer row = buffer.duplicate();
+        row.position(offsets[i] + 4);
+        return LocalRow.decode(row);
+    }
+
+    /**
+     * @param start first row key (inclusive) or <code>null</code>
+     * @param end   last row key (exclusive) or <code>null</code>
+     */
+    Iterator<LocalRow> iterator(String start, String end) {
+        final int startIndex = lowerBound(start);
+        final int endIndex = end == null ? rowKeys.length : lowerBound(end);
+        return new Iterator<LocalRow>() {
+            private int i = startIndex;
+
+            @Override
+            public boolean hasNext() {
+                return i < endIndex;
+            }
+
+            @Override
+            public LocalRow next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return readRow(i++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Segments are read only");
+            }
+        };
+    }
+
+    private int lowerBound(String rowKey) {
+        if (rowKey == null) {
+            return 0;
+        }
+        int i = Arrays.binarySearch(rowKeys, rowKey);
+        return i < 0 ? -(i + 1) : i;
+    }
+
+    long countRows(String start, String end) {
+        return Math.max(0, (end == null ? rowKeys.length : lowerBound(end)) - lowerBound(start));
+    }
+
+    long countCells(String start, String end) {
+        int startIndex = lowerBound(start);
+        int endIndex = end == null ? rowKeys.length : lowerBound(end);
+        return endIndex > startIndex ? cellCounts[endIndex] - cellCounts[startIndex] : 0;
+    }
+
+    long countBytes(String start, String end) {
+        int startIndex = lowerBound(start);
+        int endIndex = end == null ? rowKeys.length : lowerBound(end);
+        if (endIndex <= startIndex) {
+            return 0;
+        }
+        long endOffset = endIndex == rowKeys.length ? getDataSize() : offsets[endIndex];
+        return endOffset - offsets[startIndex];
+    }
+
+    private long getDataSize() {
+        return buffer.getLong(buffer.limit() - FOOTER_SIZE);
+    }
+
+    long getFileSize() {
+        return buffer.limit();
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return "Segment [file=" + file + ", rows=" + rowKeys.length + "]";
+    }
+}
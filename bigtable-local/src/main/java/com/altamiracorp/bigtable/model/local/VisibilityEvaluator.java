@@ -0,0 +1,109 @@
+package com.altamiracorp.bigtable.model.local;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates Accumulo style column visibility expressions, such as <code>A&amp;(B|"C D")</code>, against a
+ * set of authorizations. An empty or <code>null</code> expression is visible to everyone. The results are
+ * cached per expression, so an evaluator should be used for a single scan.
+ */
+class VisibilityEvaluator {
+    private final Set<String> authorizations;
+    private final Map<String, Boolean> cache = new HashMap<String, Boolean>();
+
+    VisibilityEvaluator(Set<String> authorizations) {
+        this.authorizations = authorizations;
+    }
+
+    boolean evaluate(String expression) {
+        if (expression == null || expression.length() == 0) {
+            return true;
+        }
+        Boolean result = cache.get(expression);
+        if (result == null) {
+            Parser parser = new Parser(expression);
+            result = parser.parseOr();
+            if (parser.position != expression.length()) {
+                throw new IllegalArgumentException("Invalid visibility expression: " + expression);
+            }
+            cache.put(expression, result);
+        }
+        return result;
+    }
+
+    private class Parser {
+        private final String expression;
+        private int position;
+
+        private Parser(String expression) {
+            this.expression = expression;
+        }
+
+        private boolean parseOr() {
+            boolean result = parseAnd();
+            while (position < expression.length() && expression.charAt(position) == '|') {
+                position++;
+                result = parseAnd() | result;
+            }
+            return result;
+        }
+
+        private boolean parseAnd() {
+            boolean result = parseTerm();
+            while (position < expression.length() && expression.charAt(position) == '&') {
+                position++;
+                result = parseTerm() & result;
+            }
+            return result;
+        }
+
+        private boolean parseTerm() {
+            if (position >= expression.length()) {
+                throw new IllegalArgumentException("Invalid visibility expression: " + expression);
+            }
+            char c = expression.charAt(position);
+            if (c == '(') {
+                position++;
+                boolean result = parseOr();
+                if (position >= expression.length() || expression.charAt(position) != ')') {
+                    throw new IllegalArgumentException("Invalid visibility expression: " + expression);
+                }
+                position++;
+                return result;
+            }
+            if (c == '"') {
+                return authorizations.contains(parseQuoted());
+            }
+            int start = position;
+            while (position < expression.length() && isAuthorizationChar(expression.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Invalid visibility expression: " + expression);
+            }
+            return authorizations.contains(expression.substring(start, position));
+        }
+
+        private String parseQuoted() {
+            StringBuilder result = new StringBuilder();
+            position++;
+            while (position < expression.length()) {
+                char c = expression.charAt(position++);
+                if (c == '"') {
+                    return result.toString();
+                }
+                if (c == '\\' && position < expression.length()) {
+                    c = expression.charAt(position++);
+                }
+                result.append(c);
+            }
+            throw new IllegalArgumentException("Invalid visibility expression: " + expression);
+        }
+    }
+
+    private static boolean isAuthorizationChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == ':' || c == '.' || c == '/';
+    }
+}
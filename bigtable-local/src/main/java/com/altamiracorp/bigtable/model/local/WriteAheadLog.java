@@ -0,0 +1,110 @@
+package com.altamiracorp.bigtable.model.local;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of the rows written to a table since its memtable was last written to a segment.
+ * Each record is the length and CRC32 of an encoded {@link LocalRow} followed by the row itself, so a
+ * record torn by a crash is detected and ignored on replay.
+ */
+class WriteAheadLog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final File file;
+    private final FileOutputStream out;
+    private final FileChannel channel;
+
+    WriteAheadLog(File file) throws IOException {
+        this.file = file;
+        this.out = new FileOutputStream(file, true);
+        this.channel = out.getChannel();
+    }
+
+    void append(List<byte[]> encodedRows) throws IOException {
+        int size = 0;
+        for (byte[] encodedRow : encodedRows) {
+            size += RECORD_HEADER_SIZE + encodedRow.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (byte[] encodedRow : encodedRows) {
+            crc.reset();
+            crc.update(encodedRow);
+            buffer.putInt(encodedRow.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(encodedRow);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Forces the appended records to disk
+     */
+    void sync() throws IOException {
+        channel.force(false);
+    }
+
+    void close() throws IOException {
+        channel.force(false);
+        out.close();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the records of a log, stopping at the first incomplete or corrupt record
+     */
+    static List<LocalRow> replay(File file) throws IOException {
+        List<LocalRow> rows = new ArrayList<LocalRow>();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    LOGGER.warn("Ignoring incomplete record at the end of " + file);
+                    break;
+                }
+                byte[] encodedRow = new byte[length];
+                buffer.get(encodedRow);
+                crc.reset();
+                crc.update(encodedRow);
+                if ((int) crc.getValue() != checksum) {
+                    LOGGER.warn("Ignoring corrupt record at the end of " + file);
+                    break;
+                }
+                rows.add(LocalRow.decode(ByteBuffer.wrap(encodedRow)));
+            }
+        } finally {
+            in.close();
+        }
+        return rows;
+    }
+}
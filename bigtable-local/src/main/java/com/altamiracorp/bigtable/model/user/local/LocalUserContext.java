@@ -0,0 +1,44 @@
+package com.altamiracorp.bigtable.model.user.local;
+
+import com.altamiracorp.bigtable.model.user.ModelUserContext;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class LocalUserContext implements ModelUserContext {
+    private final Set<String> authorizations;
+
+    public LocalUserContext() {
+        this.authorizations = Collections.emptySet();
+    }
+
+    public LocalUserContext(Set<String> authorizations) {
+        this.authorizations = Collections.unmodifiableSet(new HashSet<String>(authorizations));
+    }
+
+    public Set<String> getAuthorizations() {
+        return authorizations;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalUserContext [authorizations=" + authorizations + "]";
+    }
+
+    @Override
+    public int hashCode() {
+        return authorizations.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return authorizations.equals(((LocalUserContext) obj).authorizations);
+    }
+}
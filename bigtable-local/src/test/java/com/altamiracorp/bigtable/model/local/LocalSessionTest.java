@@ -0,0 +1,148 @@
+package com.altamiracorp.bigtable.model.local;
+
+import com.altamiracorp.bigtable.model.*;
+import com.altamiracorp.bigtable.model.user.ModelUserContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LocalSessionTest {
+    private static final String TEST_TABLE_NAME = "testTable";
+    private File directory;
+    private Map<String, Object> properties;
+    private LocalSession localSession;
+    private ModelUserContext queryUser;
+
+    @Before
+    public void before() throws IOException {
+        directory = File.createTempFile("bigtable-local", "");
+        directory.delete();
+        properties = new HashMap<String, Object>();
+        properties.put("bigtable.local.directory", directory.getPath());
+        properties.put("bigtable.local.memtableMaxBytes", "1024");
+        properties.put("bigtable.local.maxSegments", "2");
+
+        localSession = new LocalSession();
+        localSession.init(properties);
+        queryUser = localSession.createModelUserContext("A");
+        localSession.initializeTable(TEST_TABLE_NAME, queryUser);
+    }
+
+    @After
+    public void after() {
+        localSession.deleteTable(TEST_TABLE_NAME, queryUser);
+        localSession.close();
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private void saveRows(int count) {
+        for (int i = 0; i < count; i++) {
+            Row row = new Row<RowKey>(TEST_TABLE_NAME, new RowKey(String.format("row%03d", i)));
+            ColumnFamily columnFamily = new ColumnFamily("testColumnFamily");
+            columnFamily.addColumn(new Column("testColumn", "value" + i, "A"));
+            columnFamily.addColumn(new Column("hiddenColumn", "hidden" + i, "B"));
+            row.addColumnFamily(columnFamily);
+            localSession.save(row, FlushFlag.NO_FLUSH);
+        }
+    }
+
+    @Test
+    public void testSaveAndFind() {
+        saveRows(100);
+
+        Row row = localSession.findByRowKey(TEST_TABLE_NAME, "row042", queryUser);
+        assertEquals("value42", row.get("testColumnFamily").get("testColumn").toString());
+        assertNull(row.get("testColumnFamily").get("hiddenColumn"));
+        assertEquals(100, localSession.rowCount(TEST_TABLE_NAME, queryUser));
+
+        List<String> rowKeys = new ArrayList<String>();
+        for (Row foundRow : localSession.findByRowKeyRange(TEST_TABLE_NAME, "row010", "row020", new ScanOptions().setLimit(5), queryUser)) {
+            rowKeys.add(foundRow.getRowKey().toString());
+        }
+        assertEquals(Arrays.asList("row010", "row011", "row012", "row013", "row014"), rowKeys);
+    }
+
+    @Test
+    public void testScansAreLazy() {
+        saveRows(10);
+        Iterable<Row> rows = localSession.findAll(TEST_TABLE_NAME, queryUser);
+        saveRows(20);
+
+        int count = 0;
+        for (Row row : rows) {
+            count++;
+        }
+        assertEquals(20, count);
+
+        List<String> rowKeys = new ArrayList<String>();
+        List<RowKeyRange> ranges = Arrays.asList(RowKeyRange.prefix("row01"), new RowKeyRange("row005", "row007"));
+        for (Row row : localSession.findByRowKeyRanges(TEST_TABLE_NAME, ranges, new ScanOptions().setLimit(11), queryUser, 1)) {
+            rowKeys.add(row.getRowKey().toString());
+        }
+        assertEquals(11, rowKeys.size());
+        assertEquals("row019", rowKeys.get(9));
+        assertEquals("row005", rowKeys.get(10));
+    }
+
+    @Test
+    public void testDeleteRowsAndPrefix() {
+        saveRows(100);
+
+        localSession.deleteRow(TEST_TABLE_NAME, new RowKey("row000"));
+        localSession.deleteByPrefix(TEST_TABLE_NAME, "row05");
+
+        assertNull(localSession.findByRowKey(TEST_TABLE_NAME, "row000", queryUser));
+        assertNull(localSession.findByRowKey(TEST_TABLE_NAME, "row055", queryUser));
+        assertNotNull(localSession.findByRowKey(TEST_TABLE_NAME, "row060", queryUser));
+        assertEquals(89, localSession.rowCount(TEST_TABLE_NAME, queryUser));
+    }
+
+    @Test
+    public void testDeleteRangeLargerThanABatch() {
+        saveRows(2500);
+
+        localSession.deleteRange(TEST_TABLE_NAME, null, null);
+
+        assertEquals(0, localSession.rowCount(TEST_TABLE_NAME, queryUser));
+        assertNull(localSession.findByRowKey(TEST_TABLE_NAME, "row2499", queryUser));
+    }
+
+    @Test
+    public void testReopen() {
+        saveRows(100);
+        localSession.deleteRow(TEST_TABLE_NAME, new RowKey("row001"));
+        localSession.close();
+
+        localSession = new LocalSession();
+        localSession.init(properties);
+
+        assertEquals(Arrays.asList(TEST_TABLE_NAME), localSession.getTableList(queryUser));
+        assertEquals(99, localSession.rowCount(TEST_TABLE_NAME, queryUser));
+        assertNull(localSession.findByRowKey(TEST_TABLE_NAME, "row001", queryUser));
+        assertEquals("value99", localSession.findByRowKey(TEST_TABLE_NAME, "row099", queryUser).get("testColumnFamily").get("testColumn").toString());
+    }
+
+    @Test
+    public void testCreateModelUserContext() {
+        assertSame(queryUser, localSession.createModelUserContext("A"));
+        assertSame(localSession.createModelUserContext("A", "B"), localSession.createModelUserContext("B", " A", "B"));
+        assertSame(localSession.createModelUserContext(), localSession.createModelUserContext(""));
+        assertNotSame(queryUser, localSession.createModelUserContext("A", "B"));
+    }
+}
@@ -0,0 +1,150 @@
+package com.altamiracorp.bigtable.model.local;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LocalTableTest {
+    private static final String TEST_TABLE_NAME = "testTable";
+    private File directory;
+
+    @Before
+    public void before() throws IOException {
+        directory = File.createTempFile("bigtable-local", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void after() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static LocalRow createRow(String rowKey, String columnName, String value) {
+        SortedMap<String, LocalRow.Cell> cells = new TreeMap<String, LocalRow.Cell>();
+        cells.put(columnName, new LocalRow.Cell("", value == null ? null : value.getBytes(LocalRow.UTF8), value == null));
+        SortedMap<String, SortedMap<String, LocalRow.Cell>> columnFamilies = new TreeMap<String, SortedMap<String, LocalRow.Cell>>();
+        columnFamilies.put("testColumnFamily", cells);
+        return new LocalRow(rowKey, false, columnFamilies);
+    }
+
+    private static String getValue(LocalRow row, String columnName) {
+        if (row == null || row.getColumnFamilies().get("testColumnFamily") == null) {
+            return null;
+        }
+        LocalRow.Cell cell = row.getColumnFamilies().get("testColumnFamily").get(columnName);
+        return cell == null ? null : new String(cell.getValue(), LocalRow.UTF8);
+    }
+
+    private List<String> listFiles() {
+        List<String> fileNames = new ArrayList<String>(Arrays.asList(directory.list()));
+        Collections.sort(fileNames);
+        return fileNames;
+    }
+
+    private File writeLog(String... rowKeys) throws IOException {
+        File file = new File(directory, "wal-1.log");
+        WriteAheadLog writeAheadLog = new WriteAheadLog(file);
+        for (String rowKey : rowKeys) {
+            writeAheadLog.append(Collections.singletonList(createRow(rowKey, "testColumn", "value").encode()));
+        }
+        writeAheadLog.close();
+        return file;
+    }
+
+    @Test
+    public void testReplayIgnoresTornRecord() throws IOException {
+        File file = writeLog("row1", "row2", "row3");
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.setLength(file.length() - 3);
+        out.close();
+
+        List<LocalRow> rows = WriteAheadLog.replay(file);
+        assertEquals(2, rows.size());
+        assertEquals("row2", rows.get(1).getRowKey());
+    }
+
+    @Test
+    public void testReplayIgnoresCorruptRecord() throws IOException {
+        File file = writeLog("row1", "row2", "row3");
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.seek(file.length() - 1);
+        int lastByte = out.read();
+        out.seek(file.length() - 1);
+        out.write(lastByte ^ 0xff);
+        out.close();
+
+        List<LocalRow> rows = WriteAheadLog.replay(file);
+        assertEquals(2, rows.size());
+        assertEquals("row2", rows.get(1).getRowKey());
+    }
+
+    @Test
+    public void testReopenWithoutClose() throws IOException {
+        LocalTable table = LocalTable.open(TEST_TABLE_NAME, directory, 1024 * 1024, 4);
+        table.write(Collections.singletonList(createRow("row1", "testColumn", "value1")), true);
+        table.write(Collections.singletonList(createRow("row2", "testColumn", "value2")), true);
+        table.write(Collections.singletonList(createRow("row1", "testColumn", null)), true);
+
+        assertEquals(Arrays.asList("wal-1.log"), listFiles());
+
+        // the first table is never closed, as after a crash
+        LocalTable reopened = LocalTable.open(TEST_TABLE_NAME, directory, 1024 * 1024, 4);
+        assertNull(reopened.get("row1"));
+        assertEquals("value2", getValue(reopened.get("row2"), "testColumn"));
+        assertEquals(Arrays.asList("segment-2-2.seg", "wal-3.log"), listFiles());
+        reopened.close();
+    }
+
+    @Test
+    public void testOpenRemovesSegmentsLeftByInterruptedCompaction() throws IOException {
+        Segment.write(directory, 1, 1, Collections.singletonList(createRow("row1", "testColumn", "value1")).iterator());
+        Segment.write(directory, 2, 2, Collections.singletonList(createRow("row1", "testColumn", "value2")).iterator());
+        Segment.write(directory, 1, 2, Collections.singletonList(createRow("row1", "testColumn", "value2")).iterator());
+        Segment.write(directory, 3, 3, Collections.singletonList(createRow("row2", "testColumn", "value3")).iterator());
+        assertTrue(new File(directory, "segment-1-3.seg.tmp").createNewFile());
+
+        LocalTable table = LocalTable.open(TEST_TABLE_NAME, directory, 1024 * 1024, 4);
+        assertEquals(Arrays.asList("segment-1-2.seg", "segment-3-3.seg", "wal-4.log"), listFiles());
+        assertEquals("value2", getValue(table.get("row1"), "testColumn"));
+        assertEquals("value3", getValue(table.get("row2"), "testColumn"));
+        table.close();
+    }
+
+    @Test
+    public void testColumnDeleteSurvivesPartialCompaction() throws IOException {
+        Segment.write(directory, 1, 1, Collections.singletonList(createRow("row1", "testColumn", "value1")).iterator());
+        Segment newer = Segment.write(directory, 2, 2, Collections.singletonList(createRow("row1", "otherColumn", "value2")).iterator());
+        Segment newest = Segment.write(directory, 3, 3, Collections.singletonList(createRow("row1", "testColumn", null)).iterator());
+
+        // compacts the two newest segments only, as when the oldest segment is too large to be merged
+        List<Iterator<LocalRow>> sources = new ArrayList<Iterator<LocalRow>>();
+        sources.add(newest.iterator(null, null));
+        sources.add(newer.iterator(null, null));
+        Segment.write(directory, 2, 3, new MergingRowIterator(sources, false));
+        newer.getFile().delete();
+        newest.getFile().delete();
+
+        LocalTable table = LocalTable.open(TEST_TABLE_NAME, directory, 1024 * 1024, 4);
+        assertNull(getValue(table.get("row1"), "testColumn"));
+        assertEquals("value2", getValue(table.get("row1"), "otherColumn"));
+        table.close();
+    }
+}
@@ -0,0 +1,54 @@
+package com.altamiracorp.bigtable.model.local;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class VisibilityEvaluatorTest {
+    private final VisibilityEvaluator evaluator = new VisibilityEvaluator(new HashSet<String>(Arrays.asList("A", "B", "C D", "E\"F")));
+
+    @Test
+    public void testEmptyExpression() {
+        assertTrue(evaluator.evaluate(null));
+        assertTrue(evaluator.evaluate(""));
+    }
+
+    @Test
+    public void testAndOr() {
+        assertTrue(evaluator.evaluate("A"));
+        assertFalse(evaluator.evaluate("X"));
+        assertTrue(evaluator.evaluate("A&B"));
+        assertFalse(evaluator.evaluate("A&X"));
+        assertTrue(evaluator.evaluate("X|B"));
+        assertFalse(evaluator.evaluate("X|Y"));
+        assertTrue(evaluator.evaluate("X&Y|A"));
+        assertTrue(evaluator.evaluate("(X|A)&B"));
+        assertFalse(evaluator.evaluate("(X|Y)&B"));
+    }
+
+    @Test
+    public void testQuotedTerms() {
+        assertTrue(evaluator.evaluate("\"C D\""));
+        assertTrue(evaluator.evaluate("A&\"C D\""));
+        assertFalse(evaluator.evaluate("\"C\"|\"D\""));
+        assertTrue(evaluator.evaluate("\"E\\\"F\""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnbalancedParentheses() {
+        evaluator.evaluate("(A|B");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnterminatedQuote() {
+        evaluator.evaluate("\"A");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingTerm() {
+        evaluator.evaluate("A&");
+    }
+}
@@ -48,6 +48,10 @@ function onQueryTable(tableName, event) {
         authorizations: querySetting.authorizations,
         rowCount: querySetting.rowCount
     };
+    queryTable(tableName, getData);
+}
+
+function queryTable(tableName, getData) {
     console.log('query', getData);
     $.getJSON('table/' + tableName, getData)
         .done(function (json) {
@@ -59,6 +63,10 @@ function onQueryTable(tableName, event) {
             json.bytesToString = bytesToString;
             var html = queryResultsTemplate.render(json);
             $('#main-pane .query-results').html(html);
+            $('#main-pane .query-results button.query-next').on('click', function () {
+                $('#main-pane .query-results').html("Loading...");
+                queryTable(tableName, $.extend({}, getData, { continuationKey: json.continuationKey }));
+            });
         });
 }
 
@@ -2,6 +2,7 @@ package com.altamiracorp.bigtableui;
 
 import com.altamiracorp.bigtable.model.ModelSession;
 import com.altamiracorp.bigtable.model.Row;
+import com.altamiracorp.bigtable.model.ScanOptions;
 import com.altamiracorp.bigtable.model.user.ModelUserContext;
 import com.altamiracorp.bigtableui.model.Table;
 import com.google.inject.Inject;
@@ -32,8 +33,8 @@ public class BigTableRepository {
         return results;
     }
 
-    public Iterable<Row> query(String tableName, String start, String end, ModelUserContext user) {
-        LOGGER.info("query [tableName: " + tableName + ", start: " + start + ", end: " + end + "]");
-        return modelSession.findByRowKeyRange(tableName, start, end, user);
+    public Iterable<Row> query(String tableName, String start, String end, long limit, ModelUserContext user) {
+        LOGGER.info("query [tableName: " + tableName + ", start: " + start + ", end: " + end + ", limit: " + limit + "]");
+        return modelSession.findByRowKeyRange(tableName, start, end, new ScanOptions().setLimit(limit), user);
     }
 }
@@ -1,5 +1,6 @@
 package com.altamiracorp.bigtableui;
 
+import com.altamiracorp.bigtableui.routes.MetricsGet;
 import com.altamiracorp.bigtableui.routes.Query;
 import com.altamiracorp.bigtableui.routes.TableGet;
 import com.google.inject.Injector;
@@ -30,6 +31,7 @@ public class Router extends HttpServlet {
 
         app.get("/table", TableGet.class);
         app.get("/table/{tableName}", Query.class);
+        app.get("/metrics", MetricsGet.class);
     }
 
     @Override
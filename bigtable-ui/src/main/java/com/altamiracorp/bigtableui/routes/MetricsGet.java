@@ -0,0 +1,34 @@
+package com.altamiracorp.bigtableui.routes;
+
+import com.altamiracorp.bigtable.model.ModelSession;
+import com.altamiracorp.bigtable.model.metrics.SessionMetrics;
+import com.google.inject.Inject;
+import io.lumify.miniweb.HandlerChain;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Responds with the model session's metrics as plain text, one line per table and operation. Metrics are
+ * only available when the session is wrapped in a
+ * {@link com.altamiracorp.bigtable.model.metrics.MetricsModelSession}.
+ */
+public class MetricsGet extends BaseRequestHandler {
+    private final ModelSession modelSession;
+
+    @Inject
+    public MetricsGet(final ModelSession modelSession) {
+        this.modelSession = modelSession;
+    }
+
+    public void handle(HttpServletRequest request, HttpServletResponse response, HandlerChain chain) throws Exception {
+        SessionMetrics metrics = modelSession.getSessionMetrics();
+        if (metrics == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Metrics are not enabled for this model session");
+            return;
+        }
+
+        response.setContentType("text/plain");
+        metrics.writeText(response.getWriter());
+    }
+}
@@ -1,12 +1,14 @@
 package com.altamiracorp.bigtableui.routes;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.altamiracorp.bigtable.model.Column;
@@ -42,6 +44,7 @@ public class Query extends BaseRequestHandler {
         String authorizationsCommaSeparated = request.getParameter("authorizations");
         String start = request.getParameter("start");
         String end = request.getParameter("end");
+        String continuationKey = request.getParameter("continuationKey");
         String rowCountString = request.getParameter("rowCount");
 
         if (authorizationsCommaSeparated == null) {
@@ -64,28 +67,49 @@ public class Query extends BaseRequestHandler {
         start = StringEscapeUtils.unescapeCString(start);
         end = StringEscapeUtils.unescapeCString(end);
 
-        JSONObject json = new JSONObject();
-        json.put("tableName", tableName);
+        // the continuation key is the last row key of the previous page, resume with the row after it
+        if (continuationKey != null && continuationKey.length() > 0) {
+            start = continuationKey + "\u0000";
+        }
 
         String[] authorizations = authorizationsCommaSeparated.split(",");
         ModelUserContext modelUserContext = modelSession.createModelUserContext(authorizations);
-        Iterable<Row> rows = bigTableRepository.query(tableName, start, end, modelUserContext);
-        json.put("rows", rowsToJson(rows, rowCount));
+        // one extra row tells us whether there is a next page
+        Iterable<Row> rows = bigTableRepository.query(tableName, start, end, rowCount + 1, modelUserContext);
 
-        respondWithJson(response, json);
+        response.setContentType("application/json");
+        writeRows(response.getWriter(), tableName, rows, rowCount);
     }
 
-    private JSONArray rowsToJson(Iterable<Row> rows, long rowCount) {
-        JSONArray result = new JSONArray();
+    /**
+     * Writes the rows to the response as they are read from the scanner so that only a single row is held in
+     * memory, regardless of the number of rows requested.
+     */
+    private void writeRows(Writer out, String tableName, Iterable<Row> rows, long rowCount) throws IOException {
+        out.write("{\"tableName\":");
+        out.write(JSONObject.quote(tableName));
+        out.write(",\"rows\":[");
+
+        Iterator<Row> it = rows.iterator();
+        String lastRowKey = null;
         long count = 0;
-        for (Row row : rows) {
-            result.put(rowToJson(row));
-            count++;
-            if (count > rowCount) {
-                break;
+        while (count < rowCount && it.hasNext()) {
+            Row row = it.next();
+            if (count > 0) {
+                out.write(',');
             }
+            out.write(rowToJson(row).toString());
+            lastRowKey = row.getRowKey().toString();
+            count++;
         }
-        return result;
+        out.write(']');
+
+        if (lastRowKey != null && it.hasNext()) {
+            out.write(",\"continuationKey\":");
+            out.write(JSONObject.quote(lastRowKey));
+        }
+        out.write('}');
+        out.flush();
     }
 
     private JSONObject rowToJson(Row row) {